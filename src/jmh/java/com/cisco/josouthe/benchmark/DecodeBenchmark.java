@@ -0,0 +1,73 @@
+package com.cisco.josouthe.benchmark;
+
+import com.cisco.josouthe.metric.*;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+decoding a whole response body, the streaming decoder into columnar series as the controller does now, against gson
+building a MetricValue or BaselineTimeslice object per value
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class DecodeBenchmark {
+    @Param({"1", "100", "1000"})
+    public int series;
+
+    @Param({"1", "7", "90"})
+    public int days;
+
+    private byte[] metricDataJson, baselineDataJson;
+    private MetricDataStreamDecoder decoder = new MetricDataStreamDecoder();
+    private Gson gson = new GsonBuilder()
+            .registerTypeAdapter(MetricValue.class, new MetricValueTypeAdapter())
+            .registerTypeAdapter(BaselineTimeslice.class, new BaselineTimesliceTypeAdapter())
+            .registerTypeAdapter(MetricData.class, new MetricDataTypeAdapter())
+            .create();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        metricDataJson = SyntheticResponses.getMetricDataJson(series, days, 1);
+        baselineDataJson = SyntheticResponses.getBaselineDataJson(series, days, 2);
+    }
+
+    private static Reader reader( byte[] body ) {
+        return new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public MetricData[] metricDataStreamed() throws IOException {
+        MetricSeriesCollector collector = new MetricSeriesCollector();
+        decoder.decodeMetricData(reader(metricDataJson), collector);
+        return collector.getMetricData();
+    }
+
+    @Benchmark
+    public MetricData[] metricDataGson() {
+        return gson.fromJson(reader(metricDataJson), MetricData[].class);
+    }
+
+    @Benchmark
+    public BaselineData[] baselineDataStreamed() throws IOException {
+        BaselineSeriesCollector collector = new BaselineSeriesCollector();
+        decoder.decodeBaselineData(reader(baselineDataJson), collector);
+        return collector.getBaselineData();
+    }
+
+    @Benchmark
+    public BaselineData[] baselineDataGson() {
+        return gson.fromJson(reader(baselineDataJson), BaselineData[].class);
+    }
+}
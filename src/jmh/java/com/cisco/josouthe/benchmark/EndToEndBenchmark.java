@@ -0,0 +1,81 @@
+package com.cisco.josouthe.benchmark;
+
+import com.cisco.josouthe.DashControlMain;
+import com.cisco.josouthe.synthetic.SyntheticController;
+import com.cisco.josouthe.telemetry.Telemetry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/*
+whole runs of DashControlMain against an in process synthetic controller, from the token request and glob crawl to
+the last value written. the counters report values written and controller requests per second next to the run time
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class EndToEndBenchmark {
+    //a glob of 5, 20 or all 80 metrics of the default synthetic tree
+    @Param({"5", "20", "80"})
+    public int metrics;
+
+    @Param({"1", "7"})
+    public int days;
+
+    @Param({"4", "16"})
+    public int threads;
+
+    @Param({"5", "50"})
+    public int latencyMillis;
+
+    @Param({"0"})
+    public double throttleRate;
+
+    private SyntheticController syntheticController;
+    private Path config;
+    private String metricGlob;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long values, requests;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("synthetic-latency-millis", String.valueOf(latencyMillis));
+        properties.setProperty("synthetic-throttle-rate", String.valueOf(throttleRate));
+        syntheticController = new SyntheticController(properties);
+        syntheticController.start();
+        metricGlob = metrics <= 5 ? "Folder 1|Folder 1|*" : metrics <= 20 ? "Folder 1|**" : "**";
+        config = Files.createTempFile("synthetic-controller", ".properties");
+        Files.write(config, String.format("controller-url=%s\napi-key=benchmark\napi-secret=benchmark\nretry-base-millis=100\n", syntheticController.getUrl()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        syntheticController.stop();
+        Files.deleteIfExists(config);
+    }
+
+    @Benchmark
+    public int extract( Counters counters ) {
+        long values = Telemetry.get().getValuesEmitted(), requests = syntheticController.getRequests();
+        int status = DashControlMain.run(new String[]{ "-c", config.toString(), "-a", SyntheticController.APPLICATION_PREFIX +"1", "-m", metricGlob,
+                "-d", String.valueOf(days), "-t", String.valueOf(threads), "-o", "CSV", "--debug", "WARN" }, OutputStream.nullOutputStream());
+        if( status != 0 ) throw new IllegalStateException("Run against the synthetic controller failed with status "+ status);
+        counters.values += Telemetry.get().getValuesEmitted() - values;
+        counters.requests += syntheticController.getRequests() - requests;
+        return status;
+    }
+}
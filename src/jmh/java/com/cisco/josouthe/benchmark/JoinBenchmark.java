@@ -0,0 +1,80 @@
+package com.cisco.josouthe.benchmark;
+
+import com.cisco.josouthe.metric.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+lining a metric up with its baseline for one series, over the object lists gson builds and over the columnar series the
+streaming decoder builds
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class JoinBenchmark {
+    @Param({"1", "7", "90"})
+    public int days;
+
+    @Param({"list", "series"})
+    public String backing;
+
+    private MetricData metricData;
+    private BaselineData baselineData;
+    private long[] timestamps;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        MetricDataStreamDecoder decoder = new MetricDataStreamDecoder();
+        if( backing.equals("list") ) {
+            MetricDataCollector metricDataCollector = new MetricDataCollector();
+            decoder.decodeMetricData(new InputStreamReader(new ByteArrayInputStream(SyntheticResponses.getMetricDataJson(1, days, 1)), StandardCharsets.UTF_8), metricDataCollector);
+            metricData = metricDataCollector.getMetricData()[0];
+            BaselineDataCollector baselineDataCollector = new BaselineDataCollector();
+            decoder.decodeBaselineData(new InputStreamReader(new ByteArrayInputStream(SyntheticResponses.getBaselineDataJson(1, days, 2)), StandardCharsets.UTF_8), baselineDataCollector);
+            baselineData = baselineDataCollector.getBaselineData()[0];
+        } else {
+            MetricSeriesCollector metricSeriesCollector = new MetricSeriesCollector();
+            decoder.decodeMetricData(new InputStreamReader(new ByteArrayInputStream(SyntheticResponses.getMetricDataJson(1, days, 1)), StandardCharsets.UTF_8), metricSeriesCollector);
+            metricData = metricSeriesCollector.getMetricData()[0];
+            BaselineSeriesCollector baselineSeriesCollector = new BaselineSeriesCollector();
+            decoder.decodeBaselineData(new InputStreamReader(new ByteArrayInputStream(SyntheticResponses.getBaselineDataJson(1, days, 2)), StandardCharsets.UTF_8), baselineSeriesCollector);
+            baselineData = baselineSeriesCollector.getBaselineData()[0];
+        }
+        timestamps = new long[metricData.metricValues.size()];
+        for( int i=0; i < timestamps.length; i++ ) timestamps[i] = metricData.metricValues.get(i).startTimeInMillis;
+    }
+
+    //list backed data is converted to series by the join, so it is handed fresh holders of the same lists every time
+    @Benchmark
+    public long join() {
+        MetricData metric = metricData;
+        BaselineData baseline = baselineData;
+        if( backing.equals("list") ) {
+            metric = new MetricData();
+            metric.metricValues = metricData.metricValues;
+            baseline = new BaselineData();
+            baseline.dataTimeslices = baselineData.dataTimeslices;
+        }
+        MetricBaselineJoin join = new MetricBaselineJoin(metric, baseline);
+        long total = 0;
+        while( join.next() ) {
+            total += join.getValue();
+            if( join.hasBaseline() ) total += join.getBaselineValue();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public void getTimeSlice( Blackhole blackhole ) {
+        for( long timestamp : timestamps ) blackhole.consume(baselineData.getTimeSlice(timestamp));
+    }
+}
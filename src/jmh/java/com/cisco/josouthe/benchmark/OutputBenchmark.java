@@ -0,0 +1,61 @@
+package com.cisco.josouthe.benchmark;
+
+import com.cisco.josouthe.metric.*;
+import com.cisco.josouthe.output.OutputPrinter;
+import com.cisco.josouthe.output.OutputPrinterFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+writing every series with its baseline through each output format to a stream that discards the bytes, so only the
+formatting and buffering is measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class OutputBenchmark {
+    @Param({"XML", "JSON", "CSV"})
+    public String format;
+
+    @Param({"1", "100"})
+    public int series;
+
+    @Param({"1", "90"})
+    public int days;
+
+    private MetricData[] metricData;
+    private BaselineData[] baselineData;
+    private OutputPrinter outputPrinter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        MetricDataStreamDecoder decoder = new MetricDataStreamDecoder();
+        MetricSeriesCollector metricSeriesCollector = new MetricSeriesCollector();
+        decoder.decodeMetricData(new InputStreamReader(new ByteArrayInputStream(SyntheticResponses.getMetricDataJson(series, days, 1)), StandardCharsets.UTF_8), metricSeriesCollector);
+        metricData = metricSeriesCollector.getMetricData();
+        BaselineSeriesCollector baselineSeriesCollector = new BaselineSeriesCollector();
+        decoder.decodeBaselineData(new InputStreamReader(new ByteArrayInputStream(SyntheticResponses.getBaselineDataJson(series, days, 2)), StandardCharsets.UTF_8), baselineSeriesCollector);
+        baselineData = baselineSeriesCollector.getBaselineData();
+        for( MetricData metric : metricData ) {
+            metric.controllerHostname = "benchmark.saas.appdynamics.com";
+            metric.applicationName = "Benchmark";
+        }
+        outputPrinter = OutputPrinterFactory.getOutputPrinter(format);
+    }
+
+    @Benchmark
+    public void printSeries() throws IOException {
+        outputPrinter.open(OutputStream.nullOutputStream());
+        for( int i=0; i < metricData.length; i++ ) outputPrinter.printSeries(metricData[i], baselineData[i]);
+        outputPrinter.close();
+    }
+}
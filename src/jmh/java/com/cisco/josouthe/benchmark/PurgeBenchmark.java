@@ -0,0 +1,55 @@
+package com.cisco.josouthe.benchmark;
+
+import com.cisco.josouthe.metric.BaselineData;
+import com.cisco.josouthe.metric.BaselineDataCollector;
+import com.cisco.josouthe.metric.BaselineTimeslice;
+import com.cisco.josouthe.metric.MetricDataStreamDecoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+dropping the null timeslices from a baseline that came back as an object list, each call gets a fresh copy of the list
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class PurgeBenchmark {
+    @Param({"1", "7", "90"})
+    public int days;
+
+    private List<BaselineTimeslice> timeslices;
+    private BaselineData baselineData;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        //the decoder already drops nulls for its listeners, so they are put back in the way gson leaves them
+        BaselineDataCollector collector = new BaselineDataCollector();
+        new MetricDataStreamDecoder().decodeBaselineData(new InputStreamReader(new ByteArrayInputStream(SyntheticResponses.getBaselineDataJson(1, days, 2)), StandardCharsets.UTF_8), collector);
+        timeslices = new ArrayList<>();
+        for( BaselineTimeslice baselineTimeslice : collector.getBaselineData()[0].dataTimeslices ) {
+            timeslices.add(baselineTimeslice);
+            if( timeslices.size() % 50 == 0 ) timeslices.add(new BaselineTimeslice());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        baselineData = new BaselineData();
+        baselineData.dataTimeslices = new ArrayList<>(timeslices);
+    }
+
+    @Benchmark
+    public long purgeNullBaselineTimeslices() {
+        return baselineData.purgeNullBaselineTimeslices();
+    }
+}
@@ -0,0 +1,92 @@
+package com.cisco.josouthe.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/*
+metric-data and getMetricBaselineData response bodies shaped like a controller's, at the resolution a controller
+returns for the range: one minute values up to a day, ten minutes up to two weeks and hourly beyond that
+ */
+public class SyntheticResponses {
+    public static final long END_TIMESTAMP = 1700000000000L - (1700000000000L % 3600000);
+
+    public static long getResolutionMillis( int days ) {
+        if( days <= 1 ) return 60000;
+        if( days <= 14 ) return 600000;
+        return 3600000;
+    }
+
+    public static int getPoints( int days ) {
+        return (int) (days * 86400000L / getResolutionMillis(days));
+    }
+
+    public static byte[] getMetricDataJson( int series, int days, long seed ) {
+        Random random = new Random(seed);
+        long resolution = getResolutionMillis(days);
+        int points = getPoints(days);
+        long start = END_TIMESTAMP - points * resolution;
+        StringBuilder json = new StringBuilder(series * (points * 170 + 300));
+        json.append('[');
+        for( int s=0; s < series; s++ ) {
+            if( s > 0 ) json.append(',');
+            json.append("{\"metricId\":").append(1000+s)
+                    .append(",\"metricName\":\"BTM|BTs|BT:").append(2000+s).append("|Component:11|Average Response Time (ms)\"")
+                    .append(",\"metricPath\":\"Business Transaction Performance|Business Transactions|Tier").append(s % 20).append("|Transaction").append(s).append("|Average Response Time (ms)\"")
+                    .append(",\"frequency\":\"").append(resolution == 60000 ? "ONE_MIN" : resolution == 600000 ? "TEN_MIN" : "SIXTY_MIN").append('"')
+                    .append(",\"metricValues\":[");
+            for( int i=0; i < points; i++ ) {
+                if( i > 0 ) json.append(',');
+                long value = 20 + random.nextInt(200);
+                long count = 1 + random.nextInt(500);
+                json.append("{\"startTimeInMillis\":").append(start + i*resolution)
+                        .append(",\"occurrences\":0,\"current\":").append(value)
+                        .append(",\"min\":").append(value / 2)
+                        .append(",\"max\":").append(value * 3)
+                        .append(",\"useRange\":true,\"count\":").append(count)
+                        .append(",\"sum\":").append(value * count)
+                        .append(",\"value\":").append(value)
+                        .append(",\"standardDeviation\":").append(random.nextInt(1000) / 10.0)
+                        .append('}');
+            }
+            json.append("]}");
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    //about one timeslice in fifty is null, as the controller returns for hours the baseline has no data for
+    public static byte[] getBaselineDataJson( int series, int days, long seed ) {
+        Random random = new Random(seed);
+        long resolution = getResolutionMillis(days);
+        int points = getPoints(days);
+        long start = END_TIMESTAMP - points * resolution;
+        StringBuilder json = new StringBuilder(series * (points * 220 + 200));
+        json.append('[');
+        for( int s=0; s < series; s++ ) {
+            if( s > 0 ) json.append(',');
+            json.append("{\"metricId\":").append(1000+s)
+                    .append(",\"metricName\":\"BTM|BTs|BT:").append(2000+s).append("|Component:11|Average Response Time (ms)\"")
+                    .append(",\"frequency\":\"ONE_MIN\",\"dataTimeslices\":[");
+            for( int i=0; i < points; i++ ) {
+                if( i > 0 ) json.append(',');
+                long timestamp = start + i*resolution;
+                json.append("{\"startTime\":").append(timestamp).append(",\"metricValue\":");
+                if( random.nextInt(50) == 0 ) {
+                    json.append("null}");
+                    continue;
+                }
+                long value = 20 + random.nextInt(200);
+                json.append("{\"startTimeInMillis\":").append(timestamp)
+                        .append(",\"occurrences\":0,\"current\":").append(value)
+                        .append(",\"min\":").append(value / 2)
+                        .append(",\"max\":").append(value * 3)
+                        .append(",\"useRange\":true,\"count\":").append(10)
+                        .append(",\"sum\":").append(value * 10)
+                        .append(",\"value\":").append(value)
+                        .append(",\"standardDeviation\":").append(random.nextInt(1000) / 10.0)
+                        .append("}}");
+            }
+            json.append("]}");
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,426 @@
+package com.cisco.josouthe.synthetic;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+an in process stand in for a controller, for load testing without a live one. it answers the endpoints this tool calls
+with synthetic data from SyntheticMetrics: applications with tiers and nodes, a metric tree of folders, metric data,
+baselines and oauth tokens. latency, errors, 429 throttling and a limit on requests in flight can be injected.
+configured from properties, all optional:
+
+    synthetic-port=0                     # 0 picks a free port
+    synthetic-applications=3
+    synthetic-tiers=4                    # per application
+    synthetic-nodes-per-tier=2
+    synthetic-folder-depth=2             # levels of folders in the metric tree
+    synthetic-folder-fanout=4            # folders in each folder
+    synthetic-metrics-per-folder=5       # metrics in each folder of the last level
+    synthetic-resolution-minutes=0       # 0 answers at 1, 10 or 60 minutes by the length of the range, as a controller does
+    synthetic-latency-millis=20          # median, latency is log normal
+    synthetic-latency-sigma=0.5
+    synthetic-error-rate=0.0             # share of requests answered 500
+    synthetic-throttle-rate=0.0          # share of requests answered 429
+    synthetic-max-in-flight=0            # requests over this are answered 429, 0 for no limit
+    synthetic-retry-after-seconds=1
+    synthetic-token-seconds=300          # lifetime of each access token, requests with an expired one get 401
+    synthetic-seed=1                     # seed for latency and fault injection
+ */
+public class SyntheticController {
+    private static final Logger logger = LogManager.getFormatterLogger(SyntheticController.class);
+    public static final String APPLICATION_PREFIX = "Synthetic App ";
+    private static final long APPLICATION_ID_OFFSET = 100;
+
+    private int port, applications, tiers, nodesPerTier, folderDepth, folderFanout, metricsPerFolder, resolutionMinutes;
+    private int maxInFlight, retryAfterSeconds, tokenSeconds;
+    private double latencyMillis, latencySigma, errorRate, throttleRate;
+    private Random random;
+    private HttpServer httpServer;
+    private ExecutorService executorService;
+    private AtomicInteger inFlight = new AtomicInteger(), tokenCounter = new AtomicInteger();
+    private AtomicLong requests = new AtomicLong(), errors = new AtomicLong(), throttled = new AtomicLong();
+    private ConcurrentHashMap<String,Long> tokenExpirations = new ConcurrentHashMap<>();
+
+    public SyntheticController( Properties properties ) {
+        this.port = Integer.parseInt(properties.getProperty("synthetic-port", "0"));
+        this.applications = Integer.parseInt(properties.getProperty("synthetic-applications", "3"));
+        this.tiers = Integer.parseInt(properties.getProperty("synthetic-tiers", "4"));
+        this.nodesPerTier = Integer.parseInt(properties.getProperty("synthetic-nodes-per-tier", "2"));
+        this.folderDepth = Integer.parseInt(properties.getProperty("synthetic-folder-depth", "2"));
+        this.folderFanout = Integer.parseInt(properties.getProperty("synthetic-folder-fanout", "4"));
+        this.metricsPerFolder = Integer.parseInt(properties.getProperty("synthetic-metrics-per-folder", "5"));
+        this.resolutionMinutes = Integer.parseInt(properties.getProperty("synthetic-resolution-minutes", "0"));
+        this.latencyMillis = Double.parseDouble(properties.getProperty("synthetic-latency-millis", "20"));
+        this.latencySigma = Double.parseDouble(properties.getProperty("synthetic-latency-sigma", "0.5"));
+        this.errorRate = Double.parseDouble(properties.getProperty("synthetic-error-rate", "0"));
+        this.throttleRate = Double.parseDouble(properties.getProperty("synthetic-throttle-rate", "0"));
+        this.maxInFlight = Integer.parseInt(properties.getProperty("synthetic-max-in-flight", "0"));
+        this.retryAfterSeconds = Integer.parseInt(properties.getProperty("synthetic-retry-after-seconds", "1"));
+        this.tokenSeconds = Integer.parseInt(properties.getProperty("synthetic-token-seconds", "300"));
+        this.random = new Random(Long.parseLong(properties.getProperty("synthetic-seed", "1")));
+    }
+
+    public synchronized void start() throws IOException {
+        if( httpServer != null ) return;
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        httpServer.createContext("/controller/", this::handle);
+        AtomicInteger threadCounter = new AtomicInteger();
+        executorService = Executors.newCachedThreadPool( runnable -> {
+            Thread thread = new Thread(runnable, "SyntheticController-"+ threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(executorService);
+        httpServer.start();
+        logger.info("Synthetic controller listening on %s with %d applications of %d metrics each", getUrl(), applications, getMetricCount());
+    }
+
+    public synchronized void stop() {
+        if( httpServer == null ) return;
+        httpServer.stop(0);
+        executorService.shutdownNow();
+        httpServer = null;
+    }
+
+    //ends with a slash, as controller-url is given
+    public String getUrl() {
+        return String.format("http://%s:%d/", httpServer.getAddress().getHostString(), httpServer.getAddress().getPort());
+    }
+
+    public long getMetricCount() {
+        return (long) Math.pow(folderFanout, folderDepth) * metricsPerFolder;
+    }
+
+    public long getRequests() { return requests.get(); }
+    public long getErrors() { return errors.get(); }
+    public long getThrottled() { return throttled.get(); }
+
+    private void handle( HttpExchange exchange ) throws IOException {
+        requests.incrementAndGet();
+        int running = inFlight.incrementAndGet();
+        try {
+            sleep(getLatencyMillis());
+            String path = exchange.getRequestURI().getPath();
+            if( path.equals("/controller/api/oauth/access_token") ) {
+                writeToken(exchange);
+                return;
+            }
+            if( !isAuthorized(exchange) ) {
+                sendStatus(exchange, 401, null);
+                return;
+            }
+            if( maxInFlight > 0 && running > maxInFlight || nextDouble() < throttleRate ) {
+                throttled.incrementAndGet();
+                sendStatus(exchange, 429, String.valueOf(retryAfterSeconds));
+                return;
+            }
+            if( nextDouble() < errorRate ) {
+                errors.incrementAndGet();
+                sendStatus(exchange, 500, null);
+                return;
+            }
+            route(exchange, path, getQuery(exchange));
+        } catch (RuntimeException exception) {
+            logger.warn("Synthetic controller failed on %s Exception: %s", exchange.getRequestURI(), exception.toString());
+            sendStatus(exchange, 500, null);
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void route( HttpExchange exchange, String path, Map<String,String> query ) throws IOException {
+        String[] segments = path.substring(1).split("/");
+        if( path.equals("/controller/restui/applicationManagerUiBean/getApplicationsAllTypes") ) {
+            writeJson(exchange, out -> {
+                out.beginObject().name("apmApplications");
+                writeApplications(out);
+                out.endObject();
+            });
+        } else if( path.equals("/controller/rest/applications") ) {
+            writeJson(exchange, this::writeApplications);
+        } else if( path.startsWith("/controller/restui/baselines/getAllBaselines/") ) {
+            writeJson(exchange, this::writeBaselines);
+        } else if( path.equals("/controller/restui/metricBrowser/getMetricBaselineData") ) {
+            JsonObject body = JsonParser.parseReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)).getAsJsonObject();
+            int granularityMinutes = Integer.parseInt(query.getOrDefault("granularityMinutes", "1"));
+            writeJson(exchange, out -> writeBaselineData(out, body, granularityMinutes));
+        } else if( segments.length == 5 && path.startsWith("/controller/rest/applications/") ) {
+            long applicationId = getApplicationId(URLDecoder.decode(segments[3], StandardCharsets.UTF_8));
+            if( applicationId < 0 ) {
+                sendStatus(exchange, 400, null);
+                return;
+            }
+            switch (segments[4]) {
+                case "tiers": { writeJson(exchange, out -> writeTiers(out, applicationId)); break; }
+                case "nodes": { writeJson(exchange, out -> writeNodes(out, applicationId)); break; }
+                case "metrics": { writeJson(exchange, out -> writeMetricFolder(out, query.getOrDefault("metric-path", ""))); break; }
+                case "metric-data": {
+                    writeJson(exchange, out -> writeMetricData(out, query.get("metric-path"), Long.parseLong(query.get("start-time")),
+                            Long.parseLong(query.get("end-time")), Boolean.parseBoolean(query.getOrDefault("rollup", "true"))));
+                    break;
+                }
+                default: sendStatus(exchange, 404, null);
+            }
+        } else {
+            sendStatus(exchange, 404, null);
+        }
+    }
+
+    private void writeToken( HttpExchange exchange ) throws IOException {
+        String token = "synthetic-"+ tokenCounter.incrementAndGet();
+        tokenExpirations.put(token, System.currentTimeMillis() + tokenSeconds * 1000L);
+        writeJson(exchange, out -> out.beginObject().name("access_token").value(token).name("expires_in").value(tokenSeconds).endObject());
+    }
+
+    private boolean isAuthorized( HttpExchange exchange ) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if( authorization == null || !authorization.startsWith("Bearer ") ) return false;
+        Long expiration = tokenExpirations.get(authorization.substring(7));
+        return expiration != null && expiration > System.currentTimeMillis();
+    }
+
+    private long getApplicationId( String nameOrId ) {
+        long applicationId = -1;
+        if( nameOrId.startsWith(APPLICATION_PREFIX) ) {
+            try {
+                applicationId = APPLICATION_ID_OFFSET + Long.parseLong(nameOrId.substring(APPLICATION_PREFIX.length()));
+            } catch (NumberFormatException ignored) { /* not one of ours */ }
+        } else if( nameOrId.matches("\\d+") ) {
+            applicationId = Long.parseLong(nameOrId);
+        }
+        return applicationId > APPLICATION_ID_OFFSET && applicationId <= APPLICATION_ID_OFFSET + applications ? applicationId : -1;
+    }
+
+    private void writeApplications( JsonWriter out ) throws IOException {
+        out.beginArray();
+        for( int i=1; i <= applications; i++ )
+            out.beginObject().name("name").value(APPLICATION_PREFIX + i).name("id").value(APPLICATION_ID_OFFSET + i).name("active").value(true).endObject();
+        out.endArray();
+    }
+
+    private void writeTiers( JsonWriter out, long applicationId ) throws IOException {
+        out.beginArray();
+        for( int t=1; t <= tiers; t++ ) {
+            out.beginObject().name("name").value("Tier "+ t).name("id").value(applicationId * 1000 + t)
+                    .name("type").value("Application Server").name("agentType").value("APP_AGENT")
+                    .name("numberOfNodes").value(nodesPerTier).endObject();
+        }
+        out.endArray();
+    }
+
+    private void writeNodes( JsonWriter out, long applicationId ) throws IOException {
+        out.beginArray();
+        for( int t=1; t <= tiers; t++ ) {
+            for( int n=1; n <= nodesPerTier; n++ ) {
+                out.beginObject().name("name").value("Tier "+ t +" Node "+ n).name("id").value((applicationId * 1000 + t) * 100 + n)
+                        .name("tierName").value("Tier "+ t).name("tierId").value(applicationId * 1000 + t)
+                        .name("machineName").value("synthetic-host-"+ t +"-"+ n).name("type").value("Other")
+                        .name("appAgentPresent").value(true).name("machineAgentPresent").value(false).name("agentType").value("APP_AGENT").endObject();
+            }
+        }
+        out.endArray();
+    }
+
+    private void writeBaselines( JsonWriter out ) throws IOException {
+        out.beginArray();
+        String[][] baselines = { {"1", "All Data - Last 15 Days", "NONE", "15"}, {"2", "Daily Trend - Last 30 Days", "DAILY", "30"}, {"3", "Weekly Trend - Last 3 Months", "WEEKLY", "90"} };
+        for( String[] baseline : baselines ) {
+            out.beginObject().name("id").value(Long.parseLong(baseline[0])).name("name").value(baseline[1]).name("seasonality").value(baseline[2])
+                    .name("numberOfDays").value(Integer.parseInt(baseline[3])).name("defaultBaseline").value(baseline[0].equals("1")).endObject();
+        }
+        out.endArray();
+    }
+
+    //folders are "Folder n" for the first folder-depth levels, the last level holds "Metric n"
+    private void writeMetricFolder( JsonWriter out, String path ) throws IOException {
+        out.beginArray();
+        int depth = path.isEmpty() ? 0 : getFolderDepth(path);
+        if( depth >= 0 && depth < folderDepth ) {
+            for( int i=1; i <= folderFanout; i++ ) out.beginObject().name("name").value("Folder "+ i).name("type").value("folder").endObject();
+        } else if( depth == folderDepth ) {
+            for( int i=1; i <= metricsPerFolder; i++ ) out.beginObject().name("name").value("Metric "+ i).name("type").value("leaf").endObject();
+        }
+        out.endArray();
+    }
+
+    //how many folders deep the path goes, -1 if it is not a folder of the tree
+    private int getFolderDepth( String path ) {
+        String[] segments = path.split("\\|");
+        if( segments.length > folderDepth ) return -1;
+        for( String segment : segments )
+            if( getIndex(segment, "Folder ", folderFanout) < 0 ) return -1;
+        return segments.length;
+    }
+
+    private static int getIndex( String segment, String prefix, int count ) {
+        if( !segment.startsWith(prefix) ) return -1;
+        try {
+            int index = Integer.parseInt(segment.substring(prefix.length()));
+            return index >= 1 && index <= count ? index : -1;
+        } catch (NumberFormatException numberFormatException) {
+            return -1;
+        }
+    }
+
+    private boolean isMetricPath( String metricPath ) {
+        if( metricPath == null ) return false;
+        int split = metricPath.lastIndexOf('|');
+        if( split < 0 ) return false;
+        return getFolderDepth(metricPath.substring(0, split)) == folderDepth && getIndex(metricPath.substring(split+1), "Metric ", metricsPerFolder) > 0;
+    }
+
+    private long getResolutionMillis( long startTimestamp, long endTimestamp ) {
+        if( resolutionMinutes > 0 ) return resolutionMinutes * 60000L;
+        long range = endTimestamp - startTimestamp;
+        if( range <= 86400000L ) return 60000;
+        if( range <= 14 * 86400000L ) return 600000;
+        return 3600000;
+    }
+
+    private void writeMetricData( JsonWriter out, String metricPath, long startTimestamp, long endTimestamp, boolean rollup ) throws IOException {
+        out.beginArray();
+        if( isMetricPath(metricPath) ) {
+            long metricId = SyntheticMetrics.getMetricId(metricPath);
+            long resolution = getResolutionMillis(startTimestamp, endTimestamp);
+            String frequency = resolution == 60000 ? "ONE_MIN" : resolution == 600000 ? "TEN_MIN" : "SIXTY_MIN";
+            out.beginObject().name("metricId").value(metricId).name("metricName").value(metricPath).name("metricPath").value(metricPath)
+                    .name("frequency").value(frequency).name("metricValues").beginArray();
+            long first = (startTimestamp + resolution - 1) / resolution * resolution;
+            if( rollup ) {
+                long total = 0, count = 0, min = Long.MAX_VALUE, max = 0, values = 0;
+                for( long timestamp = first; timestamp < endTimestamp; timestamp += 60000 ) {
+                    long value = SyntheticMetrics.getValue(metricId, timestamp);
+                    total += value;
+                    count += SyntheticMetrics.getCount(metricId, timestamp);
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                    values++;
+                }
+                if( values > 0 ) writeMetricValue(out, first, total / values, min, max, count, total, SyntheticMetrics.getStandardDeviation(metricId));
+            } else {
+                for( long timestamp = first; timestamp < endTimestamp; timestamp += resolution ) {
+                    long value = SyntheticMetrics.getValue(metricId, timestamp);
+                    long count = SyntheticMetrics.getCount(metricId, timestamp);
+                    writeMetricValue(out, timestamp, value, value / 2, value * 2, count, value * count, SyntheticMetrics.getStandardDeviation(metricId));
+                }
+            }
+            out.endArray().endObject();
+        }
+        out.endArray();
+    }
+
+    private void writeBaselineData( JsonWriter out, JsonObject body, int granularityMinutes ) throws IOException {
+        JsonObject timeRange = body.getAsJsonObject("timeRangeSpecifier");
+        long startTimestamp = timeRange.get("startTime").getAsLong(), endTimestamp = timeRange.get("endTime").getAsLong();
+        long granularity = Math.max(1, granularityMinutes) * 60000L;
+        long first = (startTimestamp + granularity - 1) / granularity * granularity;
+        out.beginArray();
+        for( JsonElement query : body.getAsJsonArray("metricDataQueries") ) {
+            long metricId = query.getAsJsonObject().get("metricId").getAsLong();
+            out.beginObject().name("metricId").value(metricId).name("metricName").value("Synthetic Metric "+ metricId)
+                    .name("frequency").value("ONE_MIN").name("granularityMinutes").value(granularityMinutes).name("dataTimeslices").beginArray();
+            for( long timestamp = first; timestamp < endTimestamp; timestamp += granularity ) {
+                out.beginObject().name("startTime").value(timestamp).name("metricValue");
+                if( SyntheticMetrics.hasBaseline(metricId, timestamp) ) {
+                    long value = Math.round(SyntheticMetrics.getBaseline(metricId, timestamp));
+                    writeMetricValue(out, timestamp, value, value, value, 1, value, SyntheticMetrics.getStandardDeviation(metricId));
+                } else {
+                    out.nullValue();
+                }
+                out.endObject();
+            }
+            out.endArray().endObject();
+        }
+        out.endArray();
+    }
+
+    private static void writeMetricValue( JsonWriter out, long timestamp, long value, long min, long max, long count, long sum, double standardDeviation ) throws IOException {
+        out.beginObject().name("startTimeInMillis").value(timestamp).name("occurrences").value(0).name("current").value(value)
+                .name("min").value(min).name("max").value(max).name("useRange").value(true).name("count").value(count)
+                .name("sum").value(sum).name("value").value(value).name("standardDeviation").value(standardDeviation).endObject();
+    }
+
+    private interface JsonBody {
+        void write( JsonWriter out ) throws IOException;
+    }
+
+    //streamed with chunked encoding, so a large response is never held in memory
+    private void writeJson( HttpExchange exchange, JsonBody body ) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 65536))) {
+            body.write(out);
+        }
+    }
+
+    private void sendStatus( HttpExchange exchange, int status, String retryAfter ) throws IOException {
+        if( retryAfter != null ) exchange.getResponseHeaders().set("Retry-After", retryAfter);
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private static Map<String,String> getQuery( HttpExchange exchange ) {
+        Map<String,String> query = new HashMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if( rawQuery == null ) return query;
+        for( String parameter : rawQuery.split("&") ) {
+            int split = parameter.indexOf('=');
+            if( split < 0 ) continue;
+            query.put(URLDecoder.decode(parameter.substring(0, split), StandardCharsets.UTF_8), URLDecoder.decode(parameter.substring(split+1), StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private synchronized long getLatencyMillis() {
+        if( latencyMillis <= 0 ) return 0;
+        return Math.round(latencyMillis * Math.exp(latencySigma * random.nextGaussian()));
+    }
+
+    private static void sleep( long millis ) {
+        if( millis <= 0 ) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //runs on its own until stopped: java -cp CustomDashboardTool.jar com.cisco.josouthe.synthetic.SyntheticController [synthetic.properties]
+    public static void main( String[] args ) throws IOException, InterruptedException {
+        Properties properties = new Properties();
+        if( args.length > 0 ) {
+            try (Reader reader = new FileReader(args[0], StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        SyntheticController syntheticController = new SyntheticController(properties);
+        syntheticController.start();
+        System.out.println("controller-url="+ syntheticController.getUrl());
+        Thread.currentThread().join();
+    }
+}
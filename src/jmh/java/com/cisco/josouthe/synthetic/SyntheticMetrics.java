@@ -0,0 +1,48 @@
+package com.cisco.josouthe.synthetic;
+
+/*
+values of the synthetic controller, a pure function of metric id and timestamp so every run and every request for the
+same range sees the same data. each metric has its own level, a daily cycle and some noise, the baseline is the level
+and cycle without the noise
+ */
+public class SyntheticMetrics {
+    private static final long DAY_MILLIS = 86400000L;
+
+    public static long mix( long value ) { //splitmix64 finalizer
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    public static long getMetricId( String metricPath ) {
+        return (mix(metricPath.hashCode()) & 0x7fffffffL) + 1;
+    }
+
+    private static double getLevel( long metricId ) {
+        return 20 + Math.floorMod(mix(metricId), 180);
+    }
+
+    public static double getBaseline( long metricId, long timestamp ) {
+        double level = getLevel(metricId);
+        double phase = 2 * Math.PI * Math.floorMod(timestamp + mix(metricId ^ 7), DAY_MILLIS) / DAY_MILLIS;
+        return level + 0.3 * level * Math.sin(phase);
+    }
+
+    public static double getStandardDeviation( long metricId ) {
+        return getLevel(metricId) * 0.1;
+    }
+
+    public static long getValue( long metricId, long timestamp ) {
+        long noise = Math.floorMod(mix(metricId * 31 + timestamp), 21) - 10;
+        return Math.max(0, Math.round(getBaseline(metricId, timestamp)) + noise);
+    }
+
+    public static long getCount( long metricId, long timestamp ) {
+        return 1 + Math.floorMod(mix(metricId ^ timestamp), 500);
+    }
+
+    //about one baseline timeslice in fifty has no data, as a real controller returns for quiet periods
+    public static boolean hasBaseline( long metricId, long timestamp ) {
+        return Math.floorMod(mix(metricId + timestamp * 17), 50) != 0;
+    }
+}
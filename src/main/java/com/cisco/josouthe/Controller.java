@@ -1,40 +1,49 @@
 package com.cisco.josouthe;
 
-import com.cisco.josouthe.auth.AccessToken;
+import com.cisco.josouthe.auth.TokenManager;
+import com.cisco.josouthe.cache.MetadataCache;
+import com.cisco.josouthe.cache.SegmentEntry;
+import com.cisco.josouthe.cache.TimeSeriesCache;
 import com.cisco.josouthe.exceptions.ControllerBadStatusException;
+import com.cisco.josouthe.extract.SampleSizeCalculator;
+import com.cisco.josouthe.extract.SampleSizeReport;
 import com.cisco.josouthe.http.*;
 import com.cisco.josouthe.metric.*;
 import com.cisco.josouthe.model.*;
+import com.cisco.josouthe.telemetry.EndpointStats;
+import com.cisco.josouthe.telemetry.Telemetry;
 import com.cisco.josouthe.util.Utility;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
-import org.apache.commons.codec.Charsets;
 import org.apache.http.*;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.util.EntityUtils;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 public class Controller {
     private static final Logger logger = LogManager.getFormatterLogger(Controller.class);
@@ -42,16 +51,87 @@ public class Controller {
     public String hostname;
     public URL url;
     private String clientId, clientSecret;
-    private AccessToken accessToken = null;
-    public List<Application> applications = new ArrayList<>();
+    private TokenManager tokenManager;
     public Model controllerModel = null;
-    Gson gson = new GsonBuilder().setPrettyPrinting().create();
-    HttpClient client = null;
+    Gson gson = new GsonBuilder().setPrettyPrinting()
+            .registerTypeAdapter(MetricValue.class, new MetricValueTypeAdapter())
+            .registerTypeAdapter(BaselineTimeslice.class, new BaselineTimesliceTypeAdapter())
+            .registerTypeAdapter(MetricData.class, new MetricDataTypeAdapter())
+            .create();
+    private MetricDataStreamDecoder decoder = new MetricDataStreamDecoder();
+    volatile HttpClient client = null;
     private ResponseHandler<String> responseHandler;
     private String application, tier;
+    private static final int BASELINE_GRANULARITY_MINUTES = 1, BASELINE_MAX_SIZE = 1440;
+    private long chunkMillis = 0; //0 disables chunking of metric requests
+    private int chunkParallelism = 1;
+    private ExecutorService chunkExecutor = null;
+    private ExecutorService decodeExecutor = null;
+    private TimeSeriesCache timeSeriesCache = null;
+    private int topologyParallelism = 8;
+    private ConcurrencyLimiter concurrencyLimiter;
+    private RetryPolicy retryPolicy = new RetryPolicy(5, 500, 60000);
+    private Path modelSnapshotPath = null;
+    private long modelSnapshotTtlMillis = 0;
+    private ModelSnapshot staleModelSnapshot = null;
+    private MetadataCache metadataCache;
+    private int baselineBatchSize = 50;
 
     public Controller( Properties properties ) throws MalformedURLException {
         this(properties.getProperty("controller-url"), properties.getProperty("api-key"), properties.getProperty("api-secret"));
+        setTimeSeriesCache(TimeSeriesCache.fromProperties(properties));
+        this.metadataCache = MetadataCache.fromProperties(properties, this.url.toString(), this.hostname);
+        setBaselineBatchSize(Integer.parseInt(properties.getProperty("baseline-batch-size", "50")));
+        setMaxInFlight(Integer.parseInt(properties.getProperty("max-in-flight", "64")));
+        setRetryPolicy(new RetryPolicy(Integer.parseInt(properties.getProperty("retry-attempts", "5")),
+                Long.parseLong(properties.getProperty("retry-base-millis", "500")),
+                Long.parseLong(properties.getProperty("retry-max-seconds", "60")) * 1000));
+        String tokenFile = properties.getProperty("token-file");
+        if( tokenFile != null && !tokenFile.trim().isEmpty() ) tokenManager.setTokenFile(Paths.get(tokenFile.trim()));
+        String snapshotDirectory = properties.getProperty("model-snapshot-dir", properties.getProperty("cache-dir"));
+        if( snapshotDirectory != null && !snapshotDirectory.trim().isEmpty() )
+            setModelSnapshot(Paths.get(snapshotDirectory.trim(), "model-"+ this.hostname +".json"),
+                    Long.parseLong(properties.getProperty("model-snapshot-ttl-minutes", "1440")) * 60 * 1000);
+    }
+
+    //controller-list=us,eu configures one controller per name from prefixed keys like us.controller-url, a prefixed key
+    //overrides the plain key for that controller only. without a controller-list the plain keys are the one controller
+    public static List<Controller> getControllers( Properties properties ) throws MalformedURLException {
+        List<Controller> controllers = new ArrayList<>();
+        String controllerList = properties.getProperty("controller-list");
+        if( controllerList == null || controllerList.trim().isEmpty() ) {
+            controllers.add(new Controller(properties));
+            return controllers;
+        }
+        for( String name : controllerList.split(",") ) {
+            name = name.trim();
+            if( name.isEmpty() ) continue;
+            Properties controllerProperties = getControllerProperties(properties, name);
+            if( controllerProperties.getProperty("controller-url") == null )
+                throw new MalformedURLException(String.format("missing %s.controller-url for controller '%s'", name, name));
+            Controller controller = new Controller(controllerProperties);
+            controller.usePrivateConnectionPool();
+            controllers.add(controller);
+        }
+        return controllers;
+    }
+
+    private static Properties getControllerProperties( Properties properties, String name ) {
+        Properties controllerProperties = new Properties();
+        String prefix = name +".";
+        controllerProperties.putAll(properties);
+        //a shared token file would hold only the last controller's token, each gets its own unless configured
+        String tokenFile = controllerProperties.getProperty("token-file");
+        if( tokenFile != null && !tokenFile.trim().isEmpty() ) {
+            tokenFile = tokenFile.trim();
+            int extension = tokenFile.lastIndexOf('.');
+            controllerProperties.setProperty("token-file", extension > tokenFile.lastIndexOf('/') + 1
+                    ? tokenFile.substring(0, extension) +"-"+ name + tokenFile.substring(extension)
+                    : tokenFile +"-"+ name);
+        }
+        for( String key : properties.stringPropertyNames() )
+            if( key.startsWith(prefix) ) controllerProperties.setProperty(key.substring(prefix.length()), properties.getProperty(key));
+        return controllerProperties;
     }
 
     public Controller( String urlString, String clientId, String clientSecret ) throws MalformedURLException {
@@ -62,194 +142,450 @@ public class Controller {
         if( !this.clientId.contains("@") ) this.clientId += "@"+ this.hostname.split("\\.")[0];
         this.clientSecret = clientSecret;
         this.client = HttpClientFactory.getHttpClient();
+        this.tokenManager = new TokenManager(this.url, this.clientId, this.clientSecret);
+        setMaxInFlight(64);
+        this.metadataCache = new MetadataCache(null, this.url.toString(), 24*60*60*1000L, 7*24*60*60*1000L);
         this.responseHandler = HttpClientFactory.getStringResponseHandler("controller");
-        this.controllerModel = getModel();
         logger.info("Controller initialized %s", url);
     }
 
 
-    public void calculateSampleSizes(Double Z, Double E) {
-        for( Application app : this.applications ) {
-            for( Tier appTier : app.tiers ) {
-                //Overall Application Performance|{Tier}|Calls per Minute
-                MetricData[] metricDatas = getMetricValue(app, String.format("Overall Application Performance|%s|Calls per Minute",appTier.name));
-                if( metricDatas != null && metricDatas.length > 0 ) {
-                    double totalValue = 0;
-                    double totalCount = 0;
-                    for( MetricData metricData : metricDatas ) {
-                        for( MetricValue metricValue : metricData.metricValues ) {
-                            totalValue += metricValue.value;
-                            totalCount += metricValue.count;
-                        }
-                    }
-                    if( totalValue == 0.0 || totalCount == 0.0 ) {
-                        logger.warn(String.format("NOT ENOUGH DATA TO CALCULATE FOR App: %s Tier: %s Nodes: %d",
-                                app.name, appTier.name, appTier.numberOfNodes));
-                        continue;
-                    }
-                    double p = totalValue / totalCount;
-                    // Calculate sample size using Cochran's formula
-                    double sampleSize = (Math.pow(Z, 2) * p * (1 - p)) / Math.pow(E, 2);
-                    logger.debug(String.format("App: %s Tier: %s Nodes: %d formula totalValue=%.2f totalCount=%.2f p=%.2f Z=%.2f E=%.2f",
-                            app.name, appTier.name, appTier.numberOfNodes, totalValue, totalCount, p, Z, E));
-                    // Round up to the nearest whole number, since we can't have a fraction of a sample
-                    sampleSize = Math.ceil(sampleSize);
-                    logger.info(String.format("Application %s Tier %s Recommended Sample Size: %d of %d which is %.0f%%", app.name, appTier.name, (int)sampleSize, appTier.numberOfNodes, Math.ceil(sampleSize*100/appTier.numberOfNodes)));
-                }
-            }
+    public synchronized void setChunking( long chunkMillis, int parallelism ) {
+        this.chunkMillis = Math.max(0, chunkMillis);
+        this.chunkParallelism = Math.max(1, parallelism);
+        if( this.chunkExecutor != null ) {
+            this.chunkExecutor.shutdown();
+            this.chunkExecutor = null;
         }
     }
 
-    public String getBearerToken() {
-        if( isAccessTokenExpired() && !refreshAccessToken()) return null;
-        return "Bearer "+ accessToken.access_token;
-    }
-
-    private boolean isAccessTokenExpired() {
-        return( accessToken == null || accessToken.isExpired() );
-    }
-
-    private boolean refreshAccessToken() { //returns true on successful refresh, false if an error occurs
-        CredentialsProvider provider = new BasicCredentialsProvider();
-        UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(clientId, clientSecret);
-        logger.trace("credentials configured: %s",credentials.toString());
-        provider.setCredentials(AuthScope.ANY, credentials);
-        logger.trace("provider configured: %s",provider.toString());
-        HttpPost request = new HttpPost(url.toString()+"/controller/api/oauth/access_token");
-        //request.addHeader(HttpHeaders.CONTENT_TYPE,"application/vnd.appd.cntrl+protobuf;v=1");
-        ArrayList<NameValuePair> postParameters = new ArrayList<NameValuePair>();
-        postParameters.add( new BasicNameValuePair("grant_type","client_credentials"));
-        postParameters.add( new BasicNameValuePair("client_id",clientId));
-        postParameters.add( new BasicNameValuePair("client_secret",clientSecret));
-        try {
-            request.setEntity(new UrlEncodedFormEntity(postParameters,"UTF-8"));
-        } catch (UnsupportedEncodingException e) {
-            logger.warn("Unsupported Encoding Exception in post parameter encoding: %s",e.getMessage());
+    //blocking requests and token refreshes use a connection pool of their own, so a slow controller cannot hold the
+    //connections another controller in the same run needs
+    public void usePrivateConnectionPool() {
+        this.client = HttpClientFactory.newHttpClient();
+        this.tokenManager.setHttpClient(this.client);
+    }
+
+    //upper bound for the adaptive limit on requests to this controller in flight at once, blocking and async together
+    public void setMaxInFlight( int maxInFlight ) {
+        this.concurrencyLimiter = new ConcurrencyLimiter(this.hostname, Math.min(maxInFlight, 8), maxInFlight);
+        HttpClientFactory.ensureAsyncConnectionsPerRoute(maxInFlight);
+    }
+
+    public void setRetryPolicy( RetryPolicy retryPolicy ) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public void setTopologyParallelism( int parallelism ) {
+        this.topologyParallelism = Math.max(1, parallelism);
+    }
+
+    //a snapshot within the ttl is used as is, an older one only saves refetching tiers and nodes of unchanged applications
+    public synchronized void setModelSnapshot( Path path, long ttlMillis ) {
+        this.modelSnapshotPath = path;
+        this.modelSnapshotTtlMillis = ttlMillis;
+        if( path == null ) return;
+        ModelSnapshot modelSnapshot = ModelSnapshot.read(path, this.url.toString());
+        if( modelSnapshot == null ) return;
+        if( modelSnapshot.isExpired(ttlMillis) ) {
+            logger.debug("Model snapshot %s is older than %d minutes, it will be refreshed", path, ttlMillis/60000);
+            this.staleModelSnapshot = modelSnapshot;
+            return;
         }
+        if( modelSnapshot.applications != null ) this.controllerModel = new Model(modelSnapshot.applications);
+        logger.info("Using model snapshot %s saved %s", path, new Date(modelSnapshot.savedTimestamp));
+    }
 
-        if( HttpClientFactory.isWireTraceEnabled("controller") ){
-            logger.info("Request to run: %s",request.toString());
-            for( Header header : request.getAllHeaders())
-                logger.info("with header: %s",header.toString());
-            logger.info("post parameters: %s", postParameters);
+    //pull the application list again, tiers and nodes are kept for applications whose id and name did not change
+    public synchronized Model refreshModel() {
+        if( this.controllerModel != null ) {
+            ModelSnapshot current = new ModelSnapshot();
+            current.applications = this.controllerModel.getApplications();
+            this.staleModelSnapshot = current;
         }
+        this.controllerModel = null;
+        this._applicationIdMap = null;
+        metadataCache.invalidateApplicationIds();
+        return getApplicationModel();
+    }
 
-        HttpResponse response = null;
-        int tries=0;
-        boolean succeeded=false;
-        while( !succeeded && tries < 3 ) {
-            try {
-                response = client.execute(request);
-                succeeded=true;
-                logger.trace("Response Status Line: %s", response.getStatusLine());
-            } catch (IOException e) {
-                logger.error("Exception in attempting to get access token, Exception: %s", e.getMessage());
-                tries++;
-            } catch (IllegalStateException illegalStateException) {
-                tries++;
-                this.client = HttpClientFactory.getHttpClient(true);
-                logger.warn("Caught exception on connection, building a new connection for retry, Exception: %s", illegalStateException.getMessage());
-            }
+    private synchronized void saveModelSnapshot() {
+        if( this.modelSnapshotPath == null ) return;
+        ModelSnapshot modelSnapshot = new ModelSnapshot();
+        modelSnapshot.controller = this.url.toString();
+        modelSnapshot.savedTimestamp = System.currentTimeMillis();
+        if( this.controllerModel != null ) modelSnapshot.applications = this.controllerModel.getApplications();
+        modelSnapshot.write(this.modelSnapshotPath);
+    }
+
+    public void setTimeSeriesCache( TimeSeriesCache timeSeriesCache ) {
+        this.timeSeriesCache = timeSeriesCache;
+        if( timeSeriesCache != null ) logger.info("Using time series cache in %s", timeSeriesCache.getDirectory());
+    }
+
+    private synchronized ExecutorService getChunkExecutor() {
+        if( this.chunkExecutor == null ) {
+            AtomicInteger counter = new AtomicInteger();
+            this.chunkExecutor = Executors.newFixedThreadPool(chunkParallelism, runnable -> {
+                Thread thread = new Thread(runnable, "ChunkFetch-"+ this.hostname +"-"+ counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
         }
-        if( !succeeded ) return false;
-        HttpEntity entity = response.getEntity();
-        Header encodingHeader = entity.getContentEncoding();
-        Charset encoding = encodingHeader == null ? StandardCharsets.UTF_8 : Charsets.toCharset(encodingHeader.getValue());
-        String json = null;
-        try {
-            json = EntityUtils.toString(entity, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            logger.warn("IOException parsing returned encoded string to json text: "+ e.getMessage());
-            return false;
+        return this.chunkExecutor;
+    }
+
+    //async responses are decoded here as they arrive, a thread is taken once the body starts, not while the controller works on it
+    private synchronized ExecutorService getDecodeExecutor() {
+        if( this.decodeExecutor == null ) {
+            AtomicInteger counter = new AtomicInteger();
+            this.decodeExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "Decode-"+ this.hostname +"-"+ counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
         }
-        if( response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-            logger.warn("Access Key retreival returned bad status: %s message: %s", response.getStatusLine(), json);
-            return false;
+        return this.decodeExecutor;
+    }
+
+    private static List<long[]> splitTimeRange( long startTimestamp, long endTimestamp, long sliceMillis ) {
+        List<long[]> ranges = new ArrayList<>();
+        if( sliceMillis <= 0 ) sliceMillis = endTimestamp - startTimestamp;
+        long sliceStart = startTimestamp;
+        do {
+            long sliceEnd = Math.min(endTimestamp, sliceStart + sliceMillis);
+            ranges.add(new long[]{ sliceStart, sliceEnd });
+            sliceStart = sliceEnd;
+        } while( sliceStart < endTimestamp );
+        return ranges;
+    }
+
+    private <R,T> List<T> fetchConcurrently( List<R> ranges, Function<R,T> fetcher ) {
+        List<T> results = new ArrayList<>();
+        if( ranges.size() == 1 ) {
+            results.add(fetcher.apply(ranges.get(0)));
+            return results;
         }
-        this.accessToken = gson.fromJson(json, AccessToken.class); //if this doesn't work consider creating a custom instance creator
-        this.accessToken.expires_at = new Date().getTime() + (accessToken.expires_in*1000); //hoping this is enough, worry is the time difference
-        return true;
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for( R range : ranges )
+            futures.add(CompletableFuture.supplyAsync(() -> fetcher.apply(range), getChunkExecutor()));
+        for( CompletableFuture<T> future : futures )
+            results.add(future.join());
+        return results;
+    }
+
+    //sample sizes of every tier over the last 14 days, from rolled up totals
+    public SampleSizeReport calculateSampleSizes(Double Z, Double E) {
+        long timestamp = System.currentTimeMillis();
+        return new SampleSizeCalculator(this, topologyParallelism).calculate(Z, E, timestamp-(14*24L*60*60*1000), timestamp, true);
+    }
+
+    //totals of a metric over the range summed while the response is decoded, null if the request failed
+    public MetricTotals getMetricTotals( String appName, String metricName, long startTimestamp, long endTimestamp, boolean rollup ) {
+        String urlString = String.format("%scontroller/rest/applications/%s/metric-data?metric-path=%s&time-range-type=BETWEEN_TIMES&start-time=%d&end-time=%d&output=JSON&rollup=%s",
+                this.url, Utility.encode(appName), Utility.encode(metricName), startTimestamp, endTimestamp, rollup);
+        try {
+            return retryPolicy.call(metricName, () -> {
+                MetricTotals totals = new MetricTotals();
+                return getMetricValue(urlString, totals) ? totals : null;
+            });
+        } catch (ControllerBadStatusException controllerBadStatusException) {
+            logger.warn("Gave up, not getting %s back, status returned: %s for request %s", metricName, controllerBadStatusException.getMessage(), controllerBadStatusException.urlRequestString);
+            return null;
+        } catch (IOException ioException) {
+            logger.warn("Gave up, not getting %s back, Exception: %s", metricName, ioException.toString());
+            return null;
+        }
+    }
+
+    public String getBearerToken() {
+        return tokenManager.getBearerToken();
     }
 
     public MetricData getMetricValue( String appName, String metricName, String baselineName, int days ) {
-        long startTimestamp = System.currentTimeMillis() - (days*24*60*60*1000);
         long endTimestamp = System.currentTimeMillis();
+        long startTimestamp = endTimestamp - (days*24L*60*60*1000);
         MetricData[] data = getMetricValue(appName, metricName, startTimestamp, endTimestamp );
         return data[0];
     }
 
     public MetricData[] getMetricValue(Application application, String metricName) {
         long timestamp = System.currentTimeMillis();
-        return getMetricValue(application.name, metricName, timestamp-(14*24*60*60*1000), timestamp );
+        return getMetricValue(application.name, metricName, timestamp-(14*24L*60*60*1000), timestamp );
+    }
+
+    //the id, name and path of a metric from an earlier fetch, enough to query its baseline before its data arrives
+    public MetricData getKnownMetric( String appName, String metricName ) {
+        return metadataCache.getMetricIdentity(appName, metricName);
+    }
+
+    public void flushMetadata() {
+        metadataCache.flush();
     }
 
     public MetricData[] getMetricValue(String appName, String metricName, long startTimestamp, long endTimestamp ) {
-        logger.debug(String.format("Application '%s' Metric Name '%s' start: %d end: %d",appName, metricName, startTimestamp, endTimestamp));
-        MetricData[] metrics = null;
+        return getMetricValue(appName, metricName, startTimestamp, endTimestamp, ResolutionPlan.RAW);
+    }
 
-        int tries=0;
-        boolean succeeded = false;
-        while (! succeeded && tries < 3 ) {
-            try {
-                metrics = getMetricValue(String.format("%scontroller/rest/applications/%s/metric-data?metric-path=%s&time-range-type=BETWEEN_TIMES&start-time=%d&end-time=%d&output=JSON&rollup=false",
-                        this.url, Utility.encode(appName), Utility.encode(metricName), startTimestamp, endTimestamp)
-                );
-                succeeded=true;
-            } catch (ControllerBadStatusException controllerBadStatusException) {
-                tries++;
-                logger.warn("Attempt number %d failed, status returned: %s for request %s",tries,controllerBadStatusException.getMessage(), controllerBadStatusException.urlRequestString);
+    public MetricData[] getMetricValue(String appName, String metricName, long startTimestamp, long endTimestamp, ResolutionPlan resolutionPlan ) {
+        MetricData[] metrics = resolutionPlan != null && resolutionPlan.rollup
+                ? getMetricValueRolledUp(appName, metricName, startTimestamp, endTimestamp, resolutionPlan.bucketMillis)
+                : fetchMetricValue(appName, metricName, startTimestamp, endTimestamp);
+        if( metrics != null && metrics.length == 1 && metrics[0] != null && metrics[0].metricId != 0 ) //wildcard paths return many and have no single id
+            metadataCache.putMetricIdentity(appName, metricName, metrics[0]);
+        return metrics;
+    }
+
+    private MetricData[] fetchMetricValue(String appName, String metricName, long startTimestamp, long endTimestamp ) {
+        if( timeSeriesCache != null )
+            return getMetricValueCached(appName, metricName, startTimestamp, endTimestamp);
+        if( chunkMillis > 0 && endTimestamp - startTimestamp > chunkMillis )
+            return getMetricValueChunked(appName, metricName, startTimestamp, endTimestamp, chunkMillis);
+        return getMetricValueSingle(appName, metricName, startTimestamp, endTimestamp);
+    }
+
+    //one value per bucket, each averaged by the controller, rolled up values are not kept in the time series cache
+    public MetricData[] getMetricValueRolledUp(String appName, String metricName, long startTimestamp, long endTimestamp, long bucketMillis ) {
+        List<long[]> buckets = splitTimeRange(startTimestamp, endTimestamp, bucketMillis);
+        logger.debug("Application '%s' Metric Name '%s' rolled up into %d buckets of %d ms", appName, metricName, buckets.size(), bucketMillis);
+        List<MetricData[]> parts = fetchAsync(appName, metricName, buckets, true);
+        int failedBuckets = 0;
+        for( MetricData[] part : parts ) if( part == null ) failedBuckets++;
+        if( failedBuckets == parts.size() ) return null;
+        if( failedBuckets > 0 ) logger.warn("%d of %d rolled up buckets failed for '%s', returned data is incomplete", failedBuckets, parts.size(), metricName);
+        return MetricData.mergeChunks(parts);
+    }
+
+    public MetricData[] getMetricValueChunked(String appName, String metricName, long startTimestamp, long endTimestamp, long sliceMillis ) {
+        List<long[]> ranges = splitTimeRange(startTimestamp, endTimestamp, sliceMillis);
+        logger.debug("Application '%s' Metric Name '%s' split into %d chunks of %d ms", appName, metricName, ranges.size(), sliceMillis);
+        List<MetricData[]> chunks = fetchAsync(appName, metricName, ranges, false);
+        int failedChunks = 0;
+        for( MetricData[] chunk : chunks ) if( chunk == null ) failedChunks++;
+        if( failedChunks == chunks.size() ) return null;
+        if( failedChunks > 0 ) logger.warn("%d of %d chunks failed for '%s', returned data is incomplete", failedChunks, chunks.size(), metricName);
+        return MetricData.mergeChunks(chunks);
+    }
+
+    //closed buckets come from the cache, or are fetched whole and cached, open buckets are always fetched
+    private MetricData[] getMetricValueCached(String appName, String metricName, long startTimestamp, long endTimestamp ) {
+        List<long[]> buckets = timeSeriesCache.getBuckets(startTimestamp, endTimestamp);
+        List<MetricData[]> parts = fetchConcurrently(buckets, bucket -> getMetricBucket(appName, metricName, bucket[0], bucket[1], startTimestamp, endTimestamp));
+        int failedBuckets = 0;
+        for( MetricData[] part : parts ) if( part == null ) failedBuckets++;
+        if( failedBuckets == parts.size() ) return null;
+        if( failedBuckets > 0 ) logger.warn("%d of %d buckets failed for '%s', returned data is incomplete", failedBuckets, parts.size(), metricName);
+        MetricData[] metrics = MetricData.mergeChunks(parts);
+        for( MetricData metricData : metrics ) {
+            metricData.setMetricSeries(metricData.getMetricSeries().slice(startTimestamp, endTimestamp));
+            metricData.applicationName = appName;
+            metricData.controllerHostname = this.hostname;
+        }
+        return metrics;
+    }
+
+    private MetricData[] getMetricBucket(String appName, String metricName, long bucketStart, long bucketEnd, long startTimestamp, long endTimestamp ) {
+        if( !timeSeriesCache.isClosed(bucketEnd) )
+            return getMetricValueSingle(appName, metricName, Math.max(startTimestamp, bucketStart), Math.min(endTimestamp, bucketEnd));
+        List<SegmentEntry> entries = timeSeriesCache.read(this.hostname, appName, metricName, null, bucketStart);
+        if( entries != null ) {
+            logger.trace("Cache hit for '%s' bucket %d", metricName, bucketStart);
+            MetricData[] metrics = new MetricData[entries.size()];
+            for( int i=0; i < metrics.length; i++ ) metrics[i] = entries.get(i).toMetricData();
+            return metrics;
+        }
+        MetricData[] metrics = getMetricValueSingle(appName, metricName, bucketStart, bucketEnd);
+        if( metrics == null ) return null;
+        entries = new ArrayList<>();
+        for( MetricData metricData : metrics ) {
+            metricData.setMetricSeries(metricData.getMetricSeries().slice(bucketStart, bucketEnd-1)); //the end belongs to the next bucket
+            entries.add(SegmentEntry.of(metricData));
+        }
+        timeSeriesCache.write(this.hostname, appName, metricName, null, bucketStart, bucketEnd, entries);
+        return metrics;
+    }
+
+    private MetricData[] getMetricValueSingle(String appName, String metricName, long startTimestamp, long endTimestamp ) {
+        return getMetricValueSingle(appName, metricName, startTimestamp, endTimestamp, false);
+    }
+
+    private MetricData[] getMetricValueSingle(String appName, String metricName, long startTimestamp, long endTimestamp, boolean rollup ) {
+        logger.debug(String.format("Application '%s' Metric Name '%s' start: %d end: %d rollup: %s",appName, metricName, startTimestamp, endTimestamp, rollup));
+        MetricData[] metrics = null;
+        String urlString = String.format("%scontroller/rest/applications/%s/metric-data?metric-path=%s&time-range-type=BETWEEN_TIMES&start-time=%d&end-time=%d&output=JSON&rollup=%s",
+                this.url, Utility.encode(appName), Utility.encode(metricName), startTimestamp, endTimestamp, rollup);
+        try {
+            metrics = retryPolicy.call(metricName, () -> getMetricValue(urlString));
+        } catch (ControllerBadStatusException controllerBadStatusException) {
+            logger.warn("Gave up, not getting %s back, status returned: %s for request %s", metricName, controllerBadStatusException.getMessage(), controllerBadStatusException.urlRequestString);
+        } catch (IOException ioException) {
+            logger.warn("Gave up, not getting %s back, Exception: %s", metricName, ioException.toString());
+        }
+        if( metrics != null ) {
+            for( MetricData metricData : metrics ) {
+                metricData.applicationName = appName;
+                metricData.controllerHostname = this.hostname;
             }
         }
-        if( !succeeded)
-            logger.warn("Gave up after %d tries, not getting %s back", tries, metricName);
-        for( MetricData metricData : metrics )
-            metricData.applicationName = appName;
         return metrics;
     }
 
-    public MetricData[] getMetricValue( String urlString ) throws ControllerBadStatusException {
-        MetricData[] metricData = null;
-        if( urlString == null ) return null;
+    public MetricData[] getMetricValue( String urlString ) throws IOException {
+        MetricSeriesCollector collector = new MetricSeriesCollector();
+        if( !getMetricValue(urlString, collector) ) return null;
+        return collector.getMetricData();
+    }
+
+    //streams the response into the listener without building the response text, a failure is thrown so the caller's retry policy sees it
+    public boolean getMetricValue( String urlString, MetricDataListener listener ) throws IOException {
+        if( urlString == null ) return false;
         logger.trace("metric url: %s",urlString);
         if( ! urlString.contains("output=JSON") ) urlString += "&output=JSON";
         HttpGet request = new HttpGet(urlString);
-        request.addHeader(HttpHeaders.AUTHORIZATION, getBearerToken());
-        if( HttpClientFactory.isWireTraceEnabled("controller") ) {
-            logger.info("Wire Trace Request: '%s'",request.toString());
-        }
-        String json = null;
         try {
-            json = client.execute(request, this.responseHandler);
+            execute(request, HttpClientFactory.getStreamingResponseHandler("controller", reader -> decoder.decodeMetricData(reader, listener)));
         } catch (ControllerBadStatusException controllerBadStatusException) {
             controllerBadStatusException.setURL(urlString);
             throw controllerBadStatusException;
-        } catch (IOException e) {
-            logger.error("Exception in attempting to get url, Exception: %s", e.getMessage());
-            return null;
         }
-        metricData = gson.fromJson(json, MetricData[].class);
-        return metricData;
+        return true;
     }
 
-    public TreeNode[] getApplicationMetricFolders(Application application, String path) {
-        String json = null;
+    //every slice is in flight on the async client at once, queued by the limiter instead of holding a thread each
+    private List<MetricData[]> fetchAsync( String appName, String metricName, List<long[]> ranges, boolean rollup ) {
+        List<CompletableFuture<MetricData[]>> futures = new ArrayList<>();
+        for( long[] range : ranges ) futures.add(getMetricValueAsync(appName, metricName, range[0], range[1], rollup));
+        List<MetricData[]> results = new ArrayList<>();
+        for( CompletableFuture<MetricData[]> future : futures ) results.add(future.join());
+        return results;
+    }
 
-        int tries=0;
-        boolean succeeded=false;
-        while( !succeeded && tries < 3 ) {
-            try {
-                if ("".equals(path)) {
-                    json = getRequest(String.format("controller/rest/applications/%s/metrics?output=JSON", Utility.encode(application.name)));
-                } else {
-                    json = getRequest(String.format("controller/rest/applications/%s/metrics?metric-path=%s&output=JSON", Utility.encode(application.name), Utility.encode(path)));
+    //completes with null when the request failed after its retries, as the blocking getMetricValue returns null
+    public CompletableFuture<MetricData[]> getMetricValueAsync( String appName, String metricName, long startTimestamp, long endTimestamp, boolean rollup ) {
+        logger.debug(String.format("Application '%s' Metric Name '%s' start: %d end: %d rollup: %s async",appName, metricName, startTimestamp, endTimestamp, rollup));
+        String urlString = String.format("%scontroller/rest/applications/%s/metric-data?metric-path=%s&time-range-type=BETWEEN_TIMES&start-time=%d&end-time=%d&output=JSON&rollup=%s",
+                this.url, Utility.encode(appName), Utility.encode(metricName), startTimestamp, endTimestamp, rollup);
+        return retryPolicy.callAsync(metricName, () -> getMetricValueAsync(urlString)).handle( (metrics, throwable) -> {
+            if( throwable != null ) {
+                logger.warn("Gave up, not getting %s back, Exception: %s", metricName, RetryPolicy.unwrap(throwable).toString());
+                return null;
+            }
+            if( metrics != null ) {
+                for( MetricData metricData : metrics ) {
+                    metricData.applicationName = appName;
+                    metricData.controllerHostname = this.hostname;
                 }
-                succeeded=true;
-            } catch (ControllerBadStatusException controllerBadStatusException) {
-                tries++;
-                logger.warn("Try %d failed for request to get app application metric folders for %s with error: %s",tries,application.name,controllerBadStatusException.getMessage());
             }
+            return metrics;
+        });
+    }
+
+    //the body runs through the same streaming decoder as the blocking path, on the decode executor while it arrives
+    public CompletableFuture<MetricData[]> getMetricValueAsync( String urlString ) {
+        if( ! urlString.contains("output=JSON") ) urlString += "&output=JSON";
+        logger.trace("async metric url: %s",urlString);
+        return executeAsync(SimpleRequestBuilder.get(urlString).build(), reader -> {
+            MetricSeriesCollector collector = new MetricSeriesCollector();
+            decoder.decodeMetricData(reader, collector);
+            return collector.getMetricData();
+        });
+    }
+
+    //the token is only added when the limiter starts the request, so a queued request never carries a stale one
+    private <T> CompletableFuture<T> executeAsync( SimpleHttpRequest request, ResponseStreamHandler<T> streamHandler ) {
+        return concurrencyLimiter.submit( () -> {
+            request.setHeader(HttpHeaders.AUTHORIZATION, getBearerToken());
+            if( HttpClientFactory.isWireTraceEnabled("controller") ) {
+                logger.info("Wire Trace Async Request: '%s' with Body: '%s'", request, request.getBodyText());
+            }
+            EndpointStats endpointStats = Telemetry.get().endpoint(request.getPath());
+            long requestNanos = System.nanoTime();
+            Telemetry.get().requestStarted();
+            //latency is until the headers arrive, as on the blocking path, decoding the body is counted apart
+            AsyncResponseConsumer<T> responseConsumer = HttpClientFactory.getStreamingResponseConsumer("controller", request.getRequestUri(), reader -> {
+                long decodeNanos = System.nanoTime();
+                try {
+                    return streamHandler.handle(reader);
+                } finally {
+                    endpointStats.decodeNanos.add(System.nanoTime() - decodeNanos);
+                }
+            }, getDecodeExecutor(), endpointStats.responseBytes, () -> endpointStats.latency.recordNanos(System.nanoTime() - requestNanos));
+            return HttpClientFactory.executeAsync(SimpleRequestProducer.create(request), responseConsumer).whenComplete( (result, throwable) -> {
+                Telemetry.get().requestFinished();
+                endpointStats.requests.increment();
+                if( throwable != null ) endpointStats.failures.increment();
+                discardTokenIfUnauthorized(throwable);
+            });
+        });
+    }
+
+    //every blocking request goes through here, it waits for a slot from the limiter and reports back how it went
+    private <T> T execute( HttpUriRequest request, ResponseHandler<T> handler ) throws IOException {
+        long startNanos;
+        try {
+            startNanos = concurrencyLimiter.acquire();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to send "+ request.getURI());
+        }
+        ConcurrencyLimiter.Outcome outcome = ConcurrencyLimiter.Outcome.FAILURE;
+        EndpointStats endpointStats = Telemetry.get().endpoint(request.getURI().getPath());
+        Telemetry.get().requestStarted();
+        long requestNanos = System.nanoTime();
+        try {
+            request.setHeader(HttpHeaders.AUTHORIZATION, getBearerToken());
+            if( HttpClientFactory.isWireTraceEnabled("controller") && !(request instanceof HttpEntityEnclosingRequest) ) { //posts log their body before this
+                logger.info("Wire Trace Request: '%s'",request.toString());
+            }
+            //latency is until the headers arrive, the time spent reading and decoding the body is counted apart
+            T result = client.execute(request, response -> {
+                long decodeNanos = System.nanoTime();
+                endpointStats.latency.recordNanos(decodeNanos - requestNanos);
+                if( response.getEntity() != null ) response.setEntity(new CountingHttpEntity(response.getEntity(), endpointStats.responseBytes));
+                try {
+                    return handler.handleResponse(response);
+                } finally {
+                    endpointStats.decodeNanos.add(System.nanoTime() - decodeNanos);
+                }
+            });
+            outcome = ConcurrencyLimiter.Outcome.SUCCESS;
+            return result;
+        } catch (ControllerBadStatusException controllerBadStatusException) {
+            outcome = ConcurrencyLimiter.outcomeOf(controllerBadStatusException);
+            discardTokenIfUnauthorized(controllerBadStatusException);
+            throw controllerBadStatusException;
+        } finally {
+            Telemetry.get().requestFinished();
+            endpointStats.requests.increment();
+            if( outcome != ConcurrencyLimiter.Outcome.SUCCESS ) endpointStats.failures.increment();
+            concurrencyLimiter.release(startNanos, outcome);
+        }
+    }
+
+    private void discardTokenIfUnauthorized( Throwable throwable ) {
+        Throwable cause = RetryPolicy.unwrap(throwable);
+        if( cause instanceof ControllerBadStatusException && ((ControllerBadStatusException) cause).statusCode == HttpStatus.SC_UNAUTHORIZED ) {
+            logger.debug("Controller rejected the access token, a new one will be requested");
+            discardToken();
+        }
+    }
+
+    public TreeNode[] getApplicationMetricFolders(Application application, String path) {
+        return getApplicationMetricFolders(application.name, path);
+    }
+
+    //one level of the metric browser tree, null if the controller could not list it
+    public TreeNode[] getApplicationMetricFolders(String applicationName, String path) {
+        String json = null;
+        String uri = "".equals(path)
+                ? String.format("controller/rest/applications/%s/metrics?output=JSON", Utility.encode(applicationName))
+                : String.format("controller/rest/applications/%s/metrics?metric-path=%s&output=JSON", Utility.encode(applicationName), Utility.encode(path));
+        try {
+            json = getRequest(uri);
+        } catch (ControllerBadStatusException controllerBadStatusException) {
+            logger.warn("Failing on get of application metric folder, controller may be down, error: %s", controllerBadStatusException.getMessage());
+            return null;
         }
-        if(!succeeded) logger.warn("Failing on get of application metric folder, controller may be down");
 
         TreeNode[] treeNodes = null;
         try {
@@ -261,27 +597,36 @@ public class Controller {
     }
 
 
+    //retried by the retry policy, null if it still fails without a status
     private String postRequest( String requestUri, String body ) throws ControllerBadStatusException {
+        String json = null;
+        try {
+            json = retryPolicy.call(requestUri, () -> postRequest(requestUri, body, this.responseHandler));
+        } catch (ControllerBadStatusException controllerBadStatusException) {
+            throw controllerBadStatusException;
+        } catch (IOException e) {
+            logger.warn("Exception: %s",e.getMessage());
+        }
+        logger.trace("Data Returned: '%s'", json);
+        return json;
+    }
+
+    //a single attempt, the caller retries
+    private <T> T postRequest( String requestUri, String body, ResponseHandler<T> handler ) throws IOException {
         HttpPost request = new HttpPost(String.format("%s%s", this.url.toString(), requestUri));
-        request.addHeader(HttpHeaders.AUTHORIZATION, getBearerToken());
         logger.trace("HTTP Method: %s with body: '%s'",request, body);
         if( HttpClientFactory.isWireTraceEnabled("controller") ) {
             logger.info("Wire Trace POST Request: '%s' with Body: '%s'",request.toString(), body);
         }
-        String json = null;
+        request.setEntity( new StringEntity(body, "UTF8"));
+        request.setHeader("Accept", "application/json");
+        request.setHeader("Content-Type", "application/json");
         try {
-            request.setEntity( new StringEntity(body, "UTF8"));
-            request.setHeader("Accept", "application/json");
-            request.setHeader("Content-Type", "application/json");
-            json = client.execute( request, this.responseHandler);
-            logger.trace("Data Returned: '%s'", json);
+            return execute( request, handler);
         } catch (ControllerBadStatusException controllerBadStatusException) {
             controllerBadStatusException.setURL(request.getURI().toString());
             throw controllerBadStatusException;
-        } catch (IOException e) {
-            logger.warn("Exception: %s",e.getMessage());
         }
-        return json;
     }
 
     private String getRequest( String formatOrURI, Object... args ) throws ControllerBadStatusException {
@@ -289,17 +634,14 @@ public class Controller {
         return getRequest( String.format(formatOrURI,args));
     }
 
+    //retried by the retry policy, null if it still fails without a status
     private String getRequest( String uri ) throws ControllerBadStatusException {
-        HttpGet request = new HttpGet(String.format("%s%s", this.url.toString(), uri));
-        request.addHeader(HttpHeaders.AUTHORIZATION, getBearerToken());
-        if( HttpClientFactory.isWireTraceEnabled("controller") ) {
-            logger.info("Wire Trace GET Request: '%s'",request.toString());
-        }
+        String requestUri = String.format("%s%s", this.url.toString(), uri);
         String json = null;
         try {
-            json = client.execute(request, this.responseHandler);
+            json = retryPolicy.call(uri, () -> execute(new HttpGet(requestUri), this.responseHandler));
         } catch (ControllerBadStatusException controllerBadStatusException) {
-            controllerBadStatusException.setURL(request.getURI().toString());
+            controllerBadStatusException.setURL(requestUri);
             throw controllerBadStatusException;
         } catch (IOException e) {
             logger.warn("Exception: %s",e.getMessage());
@@ -307,12 +649,22 @@ public class Controller {
         return json;
     }
 
-    Map<String,Long> _applicationIdMap = null;
-    public long getApplicationId( String name ) {
+    volatile Map<String,Long> _applicationIdMap = null;
+    private boolean applicationIdMapFromCache = false;
+    public synchronized long getApplicationId( String name ) {
         logger.trace("Get Application id for %s",name);
+        if( _applicationIdMap == null ) {
+            _applicationIdMap = metadataCache.getApplicationIds();
+            applicationIdMapFromCache = _applicationIdMap != null;
+        }
         if( _applicationIdMap == null ) { //go get em
             initApplicationIdMap();
         }
+        if( !_applicationIdMap.containsKey(name) && applicationIdMapFromCache ) { //created since the cache was written, ask the controller once
+            logger.debug("Application '%s' is not in the cached application list, fetching it again", name);
+            applicationIdMapFromCache = false;
+            initApplicationIdMap();
+        }
         if( !_applicationIdMap.containsKey(name) ) return -1;
         return _applicationIdMap.get(name);
     }
@@ -321,75 +673,299 @@ public class Controller {
         try {
             String json = getRequest("controller/restui/applicationManagerUiBean/getApplicationsAllTypes?output=json");
             ApplicationListing applicationListing = gson.fromJson(json, ApplicationListing.class);
-            _applicationIdMap = new HashMap<>();
+            Map<String,Long> applicationIdMap = new HashMap<>();
             for (Application app : applicationListing.getApplications() )
-                if( app.active ) _applicationIdMap.put(app.name, app.id);
+                if( app.active ) applicationIdMap.put(app.name, app.id);
+            _applicationIdMap = applicationIdMap;
+            metadataCache.putApplicationIds(applicationIdMap);
+            metadataCache.flush();
         } catch (ControllerBadStatusException controllerBadStatusException) {
-            logger.warn("Giving up on getting application id, not even going to retry");
+            logger.warn("Giving up on getting application id, the retries did not help");
+            if( _applicationIdMap == null ) _applicationIdMap = new HashMap<>(); //a cached list is still better than none
         }
     }
 
-    public Model getModel() {
+    //the application list only, tiers and nodes are loaded per application when something asks for them
+    public synchronized Model getApplicationModel() {
         if( this.controllerModel == null ) {
             try {
                 String json = getRequest("controller/rest/applications?output=json");
                 this.controllerModel = new Model(gson.fromJson(json, Application[].class));
-                for (Application application : this.controllerModel.getApplications()) {
-                    json = getRequest("controller/rest/applications/%d/tiers?output=json", application.id);
-                    application.tiers = gson.fromJson(json, Tier[].class);
-                    json = getRequest("controller/rest/applications/%d/nodes?output=json", application.id);
-                    application.nodes = gson.fromJson(json, Node[].class);
+                if( this.staleModelSnapshot != null ) {
+                    int reused = 0;
+                    for( Application application : this.controllerModel.getApplications() ) {
+                        Application previous = this.staleModelSnapshot.getApplication(application.id);
+                        if( previous == null || !previous.isTopologyLoaded() || !Objects.equals(previous.name, application.name) ) continue;
+                        application.tiers = previous.tiers;
+                        application.nodes = previous.nodes;
+                        reused++;
+                    }
+                    logger.debug("Refreshed model reused tiers and nodes of %d of %d applications", reused, this.controllerModel.getApplications().length);
+                    this.staleModelSnapshot = null;
                 }
+                saveModelSnapshot();
             } catch (ControllerBadStatusException controllerBadStatusException) {
-                logger.warn("Giving up on getting controller model, not even going to retry");
+                logger.warn("Giving up on getting controller model, the retries did not help");
             }
         }
         return this.controllerModel;
     }
 
+    public Application getApplication( String name ) {
+        Model model = getApplicationModel();
+        if( model == null ) return null;
+        Application application = model.getApplication(name);
+        if( application == null ) return null;
+        if( loadTopology(application) ) saveModelSnapshot();
+        return application;
+    }
+
+    //the full model, tiers and nodes of every application not yet loaded are fetched concurrently
+    public Model getModel() {
+        Model model = getApplicationModel();
+        if( model == null ) return null;
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        ExecutorService executorService = null;
+        for( Application application : model.getApplications() ) {
+            if( application.isTopologyLoaded() ) continue;
+            if( executorService == null ) executorService = newTopologyExecutor();
+            futures.add(CompletableFuture.supplyAsync(() -> loadTopology(application), executorService));
+        }
+        if( executorService == null ) return model;
+        logger.debug("Loading tiers and nodes for %d applications with %d threads", futures.size(), topologyParallelism);
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            executorService.shutdown();
+        }
+        saveModelSnapshot();
+        return model;
+    }
+
+    private boolean loadTopology( Application application ) { //returns true if tiers and nodes were fetched
+        synchronized (application) {
+            if( application.isTopologyLoaded() ) return false;
+            try {
+                String json = getRequest("controller/rest/applications/%d/tiers?output=json", application.id);
+                Tier[] tiers = gson.fromJson(json, Tier[].class);
+                json = getRequest("controller/rest/applications/%d/nodes?output=json", application.id);
+                Node[] nodes = gson.fromJson(json, Node[].class);
+                application.tiers = tiers == null ? new Tier[0] : tiers;
+                application.nodes = nodes == null ? new Node[0] : nodes;
+                return true;
+            } catch (ControllerBadStatusException controllerBadStatusException) {
+                logger.warn("Giving up on getting tiers and nodes for application %s, the retries did not help", application.name);
+                return false;
+            }
+        }
+    }
+
+    private ExecutorService newTopologyExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(topologyParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "TopologyFetch-"+ this.hostname +"-"+ counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //never null, empty when there is no baseline for the metric, whether the baseline is unknown or its request failed
     public List<BaselineData> getBaselineValue( MetricData metricData, String baselineName, String appName, Long appId, long startTimestamp, long endTimestamp ) {
-        ArrayList<BaselineData> baselines = new ArrayList<>();
+        Map<Long,List<BaselineData>> baselines = getBaselineValues(Collections.singletonList(metricData), baselineName, appName, appId, startTimestamp, endTimestamp);
+        if( baselines == null ) return new ArrayList<>();
+        return baselines.getOrDefault(metricData.metricId, new ArrayList<>());
+    }
+
+    //baselines for many metrics of one application, as few requests as the batch size allows, keyed by metric id.
+    //a metric whose baseline could not be fetched has no entry, null if the baseline itself is unknown
+    public Map<Long,List<BaselineData>> getBaselineValues( List<MetricData> metrics, String baselineName, String appName, Long appId, long startTimestamp, long endTimestamp ) {
+        return getBaselineValues(metrics, baselineName, appName, appId, startTimestamp, endTimestamp, BASELINE_GRANULARITY_MINUTES);
+    }
+
+    //granularityMinutes coarser than 1 has the controller average the baseline, fewer timeslices for long ranges
+    @SuppressWarnings("unchecked")
+    public Map<Long,List<BaselineData>> getBaselineValues( List<MetricData> metrics, String baselineName, String appName, Long appId, long startTimestamp, long endTimestamp, int granularityMinutes ) {
         if( appId == null ) {
             appId = getApplicationId(appName);
         }
         Baseline baseline = getBaseline(appId, baselineName);
         if( baseline == null ) {
             logger.error("Could not find a baseline named: "+ baselineName);
-            return baselines;
+            return null;
         }
-        boolean succeeded=false;
-        int tries=0;
-        String json = "";
-        while( !succeeded && tries < 3 ) {
-            tries++;
-            try {
-                json = postRequest(
-                        "controller/restui/metricBrowser/getMetricBaselineData?granularityMinutes=1",
-                        String.format("{\"metricDataQueries\":[{\"metricId\":%d,\"entityId\":%d,\"entityType\":\"APPLICATION\"}],\"timeRangeSpecifier\":{\"type\":\"BETWEEN_TIMES\",\"durationInMinutes\":null,\"endTime\":%d,\"startTime\":%d,\"timeRange\":null,\"timeRangeAdjusted\":false},\"metricBaseline\":%d,\"maxSize\":1440}",
-                                metricData.metricId, appId, endTimestamp, startTimestamp, baseline.id));
-                succeeded=true;
-            } catch (ControllerBadStatusException controllerBadStatusException) {
-                logger.warn("Error in request to pull baseline metrics using an undocumented, internal, api. This is retriable, attempt %d Error: %s", tries, controllerBadStatusException.getMessage());
+        final long finalAppId = appId;
+        Map<Long,MetricData> metricsById = new LinkedHashMap<>();
+        for( MetricData metricData : metrics ) metricsById.putIfAbsent(metricData.metricId, metricData);
+        List<List<MetricData>> batches = new ArrayList<>();
+        List<MetricData> distinctMetrics = new ArrayList<>(metricsById.values());
+        for( int i=0; i < distinctMetrics.size(); i += baselineBatchSize )
+            batches.add(distinctMetrics.subList(i, Math.min(distinctMetrics.size(), i + baselineBatchSize)));
+        List<long[]> ranges = timeSeriesCache != null ? timeSeriesCache.getBuckets(startTimestamp, endTimestamp) : splitTimeRange(startTimestamp, endTimestamp, getBaselinePageMillis(granularityMinutes));
+        List<Object[]> tasks = new ArrayList<>();
+        for( List<MetricData> batch : batches )
+            for( long[] range : ranges ) tasks.add(new Object[]{ batch, range });
+        logger.debug("Fetching %s baseline for %d metrics in %d batches over %d ranges", baseline.name, distinctMetrics.size(), batches.size(), ranges.size());
+        List<BaselineData[]> pages = fetchConcurrently(tasks, task -> {
+            List<MetricData> batch = (List<MetricData>) task[0];
+            long[] range = (long[]) task[1];
+            if( timeSeriesCache != null ) return getBaselineBucket(batch, baseline, finalAppId, appName, range[0], range[1], startTimestamp, endTimestamp, granularityMinutes);
+            return getBaselineBatch(batch, baseline, finalAppId, range[0], range[1], granularityMinutes);
+        });
+        int failedPages = 0;
+        Set<Long> failedMetricIds = new HashSet<>();
+        Map<Long,List<BaselineData[]>> pagesByMetric = new LinkedHashMap<>();
+        for( int i=0; i < pages.size(); i++ ) {
+            BaselineData[] page = pages.get(i);
+            if( page == null ) {
+                failedPages++;
+                for( MetricData metricData : (List<MetricData>) tasks.get(i)[0] ) failedMetricIds.add(metricData.metricId);
+                continue;
+            }
+            for( BaselineData baselineData : page ) {
+                if( !metricsById.containsKey(baselineData.metricId) ) {
+                    logger.debug("Ignoring baseline for metric id %d, it was not requested", baselineData.metricId);
+                    continue;
+                }
+                pagesByMetric.computeIfAbsent(baselineData.metricId, k -> new ArrayList<>()).add(new BaselineData[]{ baselineData });
             }
         }
-        if( !succeeded ) {
+        if( failedPages > 0 )
+            logger.warn("%d of %d baseline requests failed for %d metrics, returned data is incomplete", failedPages, pages.size(), distinctMetrics.size());
+        Map<Long,List<BaselineData>> baselines = new LinkedHashMap<>();
+        for( MetricData metricData : distinctMetrics ) {
+            if( failedMetricIds.contains(metricData.metricId) ) continue;
+            List<BaselineData> metricBaselines = new ArrayList<>();
+            for( BaselineData baselineData : BaselineData.mergeChunks(pagesByMetric.getOrDefault(metricData.metricId, Collections.emptyList())) ) {
+                baselineData.metricName = metricData.metricName; //this is blank on my test data, not sure why it isn't set
+                baselineData.controllerHostname = this.hostname;
+                baselineData.applicationName = appName;
+                baselineData.baseline = baseline;
+                baselineData.granularityMinutes = granularityMinutes;
+                baselineData.setTimesliceSeries(baselineData.getTimesliceSeries().slice(startTimestamp, endTimestamp));
+                if( baselineData.hasData() )
+                    metricBaselines.add(baselineData);
+            }
+            baselines.put(metricData.metricId, metricBaselines);
+        }
+        if( baselines.isEmpty() && failedPages > 0 )
             logger.error("Giving up on attempt to get Baseline metrics, the controller isn't responding properly");
-            return null;
+        return baselines;
+    }
+
+    public synchronized void setBaselineBatchSize( int baselineBatchSize ) {
+        this.baselineBatchSize = Math.max(1, baselineBatchSize);
+    }
+
+    //the controller returns at most maxSize timeslices per request, so windows are paged at this size
+    private long getBaselinePageMillis( int granularityMinutes ) {
+        long pageMillis = BASELINE_MAX_SIZE * granularityMinutes * 60000L;
+        if( chunkMillis > 0 ) pageMillis = Math.min(pageMillis, chunkMillis);
+        return pageMillis;
+    }
+
+    //cached metrics are read back, the rest of the batch is fetched together and written per metric
+    private BaselineData[] getBaselineBucket( List<MetricData> batch, Baseline baseline, long appId, String appName, long bucketStart, long bucketEnd, long startTimestamp, long endTimestamp, int granularityMinutes ) {
+        if( !timeSeriesCache.isClosed(bucketEnd) )
+            return getBaselineRange(batch, baseline, appId, Math.max(startTimestamp, bucketStart), Math.min(endTimestamp, bucketEnd), granularityMinutes);
+        String baselineKey = baseline.id +":"+ baseline.name;
+        if( granularityMinutes != BASELINE_GRANULARITY_MINUTES ) baselineKey += ":"+ granularityMinutes +"m";
+        List<BaselineData> bucketData = new ArrayList<>();
+        List<MetricData> missing = new ArrayList<>();
+        for( MetricData metricData : batch ) {
+            List<SegmentEntry> entries = timeSeriesCache.read(this.hostname, appName, getMetricKey(metricData), baselineKey, bucketStart);
+            if( entries == null ) {
+                missing.add(metricData);
+                continue;
+            }
+            logger.trace("Cache hit for '%s' baseline %s bucket %d", getMetricKey(metricData), baseline.name, bucketStart);
+            for( SegmentEntry entry : entries ) bucketData.add(entry.toBaselineData());
         }
-        long totalPurgeCount=0;
-        for( BaselineData baselineData : gson.fromJson(json, BaselineData[].class)) {
-            baselineData.metricName = metricData.metricName; //this is blank on my test data, not sure why it isn't set
-            baselineData.controllerHostname = this.hostname;
-            baselineData.applicationName = appName;
-            baselineData.baseline = baseline;
-            long purgeCount = baselineData.purgeNullBaselineTimeslices();
-            if( purgeCount > 0) logger.trace("Purged %d Baselines that contained no data",purgeCount);
-            totalPurgeCount += purgeCount;
-            if( baselineData.hasData() )
-                baselines.add(baselineData);
+        if( missing.isEmpty() ) return bucketData.toArray(new BaselineData[0]);
+        BaselineData[] fetched = getBaselineRange(missing, baseline, appId, bucketStart, bucketEnd, granularityMinutes);
+        if( fetched == null ) return null;
+        Map<Long,List<SegmentEntry>> entriesByMetric = new HashMap<>();
+        for( BaselineData data : fetched ) {
+            data.setTimesliceSeries(data.getTimesliceSeries().slice(bucketStart, bucketEnd-1)); //the end belongs to the next bucket
+            entriesByMetric.computeIfAbsent(data.metricId, k -> new ArrayList<>()).add(SegmentEntry.of(data));
+            bucketData.add(data);
         }
+        for( MetricData metricData : missing ) //a metric with no baseline is cached empty so it is not asked for again
+            timeSeriesCache.write(this.hostname, appName, getMetricKey(metricData), baselineKey, bucketStart, bucketEnd,
+                    entriesByMetric.getOrDefault(metricData.metricId, Collections.emptyList()));
+        return bucketData.toArray(new BaselineData[0]);
+    }
 
-        return baselines;
+    private static String getMetricKey( MetricData metricData ) {
+        return metricData.metricPath != null ? metricData.metricPath : metricData.metricName;
+    }
+
+    //pages one after another on the calling thread, null if any page fails
+    private BaselineData[] getBaselineRange( List<MetricData> batch, Baseline baseline, long appId, long startTimestamp, long endTimestamp, int granularityMinutes ) {
+        List<BaselineData[]> pages = new ArrayList<>();
+        for( long[] range : splitTimeRange(startTimestamp, endTimestamp, getBaselinePageMillis(granularityMinutes)) ) {
+            BaselineData[] page = getBaselineBatch(batch, baseline, appId, range[0], range[1], granularityMinutes);
+            if( page == null ) return null;
+            pages.add(page);
+        }
+        return BaselineData.mergeChunks(pages).toArray(new BaselineData[0]);
+    }
+
+    //a batch the controller refuses as a bad request is split in half and each half asked for on its own. overload and
+    //i/o failures were already retried by the retry policy, splitting those would only send the controller more requests
+    private BaselineData[] getBaselineBatch( List<MetricData> batch, Baseline baseline, long appId, long startTimestamp, long endTimestamp, int granularityMinutes ) {
+        try {
+            return getBaselinePage(batch, baseline, appId, startTimestamp, endTimestamp, granularityMinutes);
+        } catch (ControllerBadStatusException controllerBadStatusException) {
+            if( batch.size() == 1 || !isRejectedBatch(controllerBadStatusException) ) {
+                logger.warn("Error in request to pull baseline metrics using an undocumented, internal, api. Giving up on this page, Error: %s", controllerBadStatusException.getMessage());
+                return null;
+            }
+            logger.debug("Baseline request for %d metrics was refused with status %d, splitting it", batch.size(), controllerBadStatusException.statusCode);
+        }
+        BaselineData[] first = getBaselineBatch(batch.subList(0, batch.size()/2), baseline, appId, startTimestamp, endTimestamp, granularityMinutes);
+        BaselineData[] second = getBaselineBatch(batch.subList(batch.size()/2, batch.size()), baseline, appId, startTimestamp, endTimestamp, granularityMinutes);
+        if( first == null && second == null ) return null;
+        List<BaselineData> combined = new ArrayList<>();
+        if( first != null ) combined.addAll(Arrays.asList(first));
+        if( second != null ) combined.addAll(Arrays.asList(second));
+        return combined.toArray(new BaselineData[0]);
+    }
+
+    //the request itself was too big or not accepted, a smaller batch may be
+    private static boolean isRejectedBatch( ControllerBadStatusException controllerBadStatusException ) {
+        return controllerBadStatusException.statusCode == 400 || controllerBadStatusException.statusCode == 413;
+    }
+
+    //null when the request still failed without a status after its retries, a bad status is thrown once the retry policy gives up
+    private BaselineData[] getBaselinePage( List<MetricData> batch, Baseline baseline, long appId, long startTimestamp, long endTimestamp, int granularityMinutes ) throws ControllerBadStatusException {
+        StringBuilder metricDataQueries = new StringBuilder();
+        for( MetricData metricData : batch ) {
+            if( metricDataQueries.length() > 0 ) metricDataQueries.append(',');
+            metricDataQueries.append(String.format("{\"metricId\":%d,\"entityId\":%d,\"entityType\":\"APPLICATION\"}", metricData.metricId, appId));
+        }
+        String body = String.format("{\"metricDataQueries\":[%s],\"timeRangeSpecifier\":{\"type\":\"BETWEEN_TIMES\",\"durationInMinutes\":null,\"endTime\":%d,\"startTime\":%d,\"timeRange\":null,\"timeRangeAdjusted\":false},\"metricBaseline\":%d,\"maxSize\":%d}",
+                metricDataQueries, endTimestamp, startTimestamp, baseline.id, BASELINE_MAX_SIZE);
+        String description = batch.size() == 1 ? "baseline of "+ batch.get(0).metricName : "baseline of "+ batch.size() +" metrics";
+        BaselineSeriesCollector[] collector = new BaselineSeriesCollector[1];
+        Long purgeCount;
+        try {
+            purgeCount = retryPolicy.call(description, () -> {
+                collector[0] = new BaselineSeriesCollector();
+                BaselineSeriesCollector pageCollector = collector[0];
+                return postRequest(
+                        String.format("controller/restui/metricBrowser/getMetricBaselineData?granularityMinutes=%d", granularityMinutes),
+                        body,
+                        HttpClientFactory.getStreamingResponseHandler("controller", reader -> decoder.decodeBaselineData(reader, pageCollector)));
+            });
+        } catch (ControllerBadStatusException controllerBadStatusException) {
+            throw controllerBadStatusException;
+        } catch (IOException ioException) {
+            logger.warn("Gave up, not getting %s back, Exception: %s", description, ioException.toString());
+            return null;
+        }
+        if( purgeCount == null ) return null;
+        if( purgeCount > 0) logger.trace("Purged %d Baselines that contained no data",purgeCount);
+        return collector[0].getBaselineData();
     }
 
 
@@ -401,9 +977,15 @@ public class Controller {
     }
 
     public Baseline[] getAllBaselines(long applicationId ) {
+        Baseline[] baselines = metadataCache.getBaselines(applicationId);
+        if( baselines != null ) return baselines;
         try {
             String json = getRequest("controller/restui/baselines/getAllBaselines/%d?output=json", applicationId);
-            Baseline[] baselines = gson.fromJson(json, Baseline[].class);
+            baselines = gson.fromJson(json, Baseline[].class);
+            if( baselines != null ) {
+                metadataCache.putBaselines(applicationId, baselines);
+                metadataCache.flush();
+            }
             return baselines;
         } catch (ControllerBadStatusException controllerBadStatusException) {
             logger.warn("Error using undocumented api to pull back listing of all application baselines, application '%s'", applicationId);
@@ -412,7 +994,9 @@ public class Controller {
     }
 
     public Baseline getBaseline( long appId, String name) {
-        for( Baseline baseline : getAllBaselines(appId) ) {
+        Baseline[] baselines = getAllBaselines(appId);
+        if( baselines == null ) return null;
+        for( Baseline baseline : baselines ) {
             if( name.equalsIgnoreCase("default") && baseline.defaultBaseline ) return baseline;
             if( name.equalsIgnoreCase(baseline.name) ) return baseline;
         }
@@ -420,6 +1004,6 @@ public class Controller {
     }
 
     public void discardToken() {
-        this.accessToken=null;
+        tokenManager.discardToken();
     }
 }
@@ -1,9 +1,20 @@
 package com.cisco.josouthe;
 
-import com.cisco.josouthe.metric.BaselineData;
-import com.cisco.josouthe.metric.MetricData;
+import com.cisco.josouthe.extract.FollowPoller;
+import com.cisco.josouthe.extract.MetricExtractResult;
+import com.cisco.josouthe.extract.MetricTreeCrawler;
+import com.cisco.josouthe.extract.ParallelMetricExtractor;
+import com.cisco.josouthe.http.HttpClientFactory;
+import com.cisco.josouthe.http.WorkingStatusThread;
+import com.cisco.josouthe.metric.Downsampler;
+import com.cisco.josouthe.output.Compression;
+import com.cisco.josouthe.output.DownsamplingOutputPrinter;
 import com.cisco.josouthe.output.OutputPrinter;
+import com.cisco.josouthe.output.OutputPrinterFactory;
+import com.cisco.josouthe.output.ParallelCompressingOutputStream;
+import com.cisco.josouthe.output.WideCSVOutputPrinter;
 import com.cisco.josouthe.output.XMLOutputPrinter;
+import com.cisco.josouthe.telemetry.Telemetry;
 import com.cisco.josouthe.util.Utility;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.impl.Arguments;
@@ -22,21 +33,39 @@ import org.apache.logging.log4j.core.config.builder.api.RootLoggerComponentBuild
 import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
 
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class DashControlMain {
     //private static final Logger logger = LogManager.getFormatterLogger(DashControlMain.class);
 
     public static void main( String[] args ) {
+        int status = run(args, System.out);
+        if( status != 0 ) System.exit(status);
+    }
 
+    //a whole run writing its output to this stream, returns the exit status instead of exiting so it can be run in process
+    public static int run( String[] args, OutputStream outputStream ) {
         ArgumentParser parser = ArgumentParsers.newFor("DashControl")
                 .singleMetavar(true)
                 .build()
                 .defaultHelp(true)
                 .version(String.format("Dashboard Data Tool version %s build date %s", MetaData.VERSION, MetaData.BUILDTIMESTAMP))
-                .description("Export Dashboard Source Data from AppDynamics for a given metric.");
+                .description("Export Dashboard Source Data from AppDynamics for one or more metrics.");
         parser.addArgument("-v", "--version").action(Arguments.version());
         parser.addArgument("-c", "--config")
                 .setDefault("config.properties")
@@ -53,17 +82,81 @@ public class DashControlMain {
                 .help("Baseline: {\"Default\", \"Weekly\", \"Daily\", \"Monthly\"}");
         parser.addArgument("-m", "--metric")
                 .metavar("Metric")
-                .required(true)
-                .help("Metric name to extract");
+                .action(Arguments.append())
+                .help("Metric name to extract, may be repeated, * ** and ? globs are expanded against the application's metric tree");
+        parser.addArgument("-f", "--metricFile")
+                .metavar("./metrics.txt")
+                .help("File of metric names to extract, one per line");
+        parser.addArgument("--refreshIndex")
+                .action(Arguments.storeTrue())
+                .help("Crawl the metric tree again to expand globs, even if a saved metric path index is recent enough");
         parser.addArgument("-d", "--days")
                 .metavar("Days")
+                .type(Integer.class)
                 .setDefault(7)
                 .help("Days of data to extract");
+        parser.addArgument("-t", "--threads")
+                .metavar("Threads")
+                .type(Integer.class)
+                .setDefault(4)
+                .help("Number of metrics to extract in parallel");
+        parser.addArgument("--follow")
+                .action(Arguments.storeTrue())
+                .help("Keep running, after the first pull of Days poll for new values every interval and append them to the output");
+        parser.addArgument("--interval")
+                .metavar("Seconds")
+                .type(Integer.class)
+                .setDefault(60)
+                .help("Seconds between polls in follow mode, at least 15");
+        parser.addArgument("--points")
+                .metavar("Points")
+                .type(Integer.class)
+                .setDefault(0)
+                .help("About how many values each metric is shown as, long ranges are fetched at a coarser resolution to match, 0 fetches the finest resolution");
+        parser.addArgument("--raw")
+                .action(Arguments.storeTrue())
+                .help("Fetch the finest resolution the controller has, ignoring --points");
+        parser.addArgument("--downsample")
+                .metavar("Points")
+                .type(Integer.class)
+                .setDefault(0)
+                .help("Downsample each series to about this many points before it is written, 0 writes every value");
+        parser.addArgument("--downsampleMethod")
+                .metavar("Method")
+                .choices("LTTB", "MINMAX")
+                .setDefault("LTTB")
+                .help("Downsampling: {\"LTTB\" keeps the shape of the line, \"MINMAX\" keeps the lowest and highest value of each bucket}");
+        parser.addArgument("--chunkHours")
+                .metavar("Hours")
+                .type(Integer.class)
+                .setDefault(24)
+                .help("Split each metric request into slices of this many hours, fetched concurrently, 0 to disable");
+        parser.addArgument("--telemetryFile")
+                .metavar("./telemetry.json")
+                .help("Write a json summary of requests, latency, retries and output to this file at exit, otherwise it is logged");
+        parser.addArgument("--outputFile")
+                .metavar("./export.xml.gz")
+                .help("Write the output to this file instead of stdout, a .gz or .zst file is compressed in blocks on several threads");
+        parser.addArgument("--compressThreads")
+                .metavar("Threads")
+                .type(Integer.class)
+                .setDefault(0)
+                .help("Threads compressing the output file, 0 for one per core");
         parser.addArgument("-o", "--output")
                 .metavar("Output Format")
-                .choices("XML", "JSON", "CSV", "BRAIL")
+                .choices("XML", "JSON", "CSV", "WIDE", "BRAIL")
                 .setDefault("XML")
-                .help("Output Formats: {\"XML\", \"JSON\", \"CSV\", \"BRAIL\"}");
+                .help("Output Formats: {\"XML\", \"JSON\", \"CSV\", \"WIDE\" a row per timestamp with a column per metric, \"BRAIL\"}");
+        parser.addArgument("--wideMemoryMB")
+                .metavar("MB")
+                .type(Integer.class)
+                .setDefault(256)
+                .help("Values the WIDE output holds in memory before spilling sorted runs to temp files");
+        parser.addArgument("--batchMetrics")
+                .metavar("Metrics")
+                .type(Integer.class)
+                .setDefault(1000)
+                .help("Metrics extracted and written at a time, so only that many series are held in memory");
         parser.addArgument("--debug")
                 .metavar("Verbose logging level")
                 .choices("WARN", "INFO", "DEBUG", "TRACE")
@@ -76,7 +169,7 @@ public class DashControlMain {
             //logger.info("parser: %s", namespace);
         } catch (ArgumentParserException e) {
             parser.handleError(e);
-            System.exit(1);
+            return 1;
         }
 
         ConfigurationBuilder<BuiltConfiguration> builder = ConfigurationBuilderFactory.newConfigurationBuilder();
@@ -98,16 +191,34 @@ public class DashControlMain {
         builder.add(rootLogger);
         Configurator.reconfigure(builder.build());
         Logger logger = LogManager.getFormatterLogger("DashControlMain");
+        Telemetry.get().registerMBean();
+        Path telemetryFile = namespace.getString("telemetryFile") == null ? null : Paths.get(namespace.getString("telemetryFile"));
         Properties configProperties = new Properties();
         try {
             configProperties.load(new FileInputStream(namespace.getString("config")));
         } catch (Exception e) {
             parser.printHelp();
             logger.error("Error reading config properties file " + namespace.getString("config") + " Exception: " + e, e);
-            System.exit(1);
+            return 1;
+        }
+
+        List<String> metricNames = null;
+        try {
+            metricNames = getMetricNames(namespace);
+        } catch (IOException e) {
+            logger.error("Error reading metric file '%s' Exception: %s", namespace.getString("metricFile"), e.getMessage());
+            return 1;
         }
+        if( metricNames.isEmpty() ) {
+            parser.printHelp();
+            logger.error("At least one metric is required, use -m or -f");
+            return 1;
+        }
+        int threads = namespace.getInt("threads");
+        //metric workers and chunk workers each hold a connection, plus one for token refresh and metadata requests
+        HttpClientFactory.setConnectionLimits(threads*2+1, (threads*2+1)*2);
 
-        Controller controller = null;
+        List<Controller> controllers = null;
         try {
             /*
             AnalyzeApplicationTiers analyzeApplicationTiers = new AnalyzeApplicationTiers( configProperties,
@@ -115,35 +226,217 @@ public class DashControlMain {
                     namespace.getString("confidence"), namespace.getString("error"));
 
              */
-            controller = new Controller(configProperties);
+            controllers = Controller.getControllers(configProperties);
         } catch (MalformedURLException e) {
             logger.error("Error in controller-url config property '%s' Exception: %s", configProperties.getProperty("controller-url"), e.getMessage());
-            System.exit(1);
+            return 1;
         }
         String application = namespace.getString("application");
-        String metricName = namespace.getString("metric");
         String baseline = namespace.getString("baseline");
         int days = namespace.getInt("days");
-        logger.info(String.format("Pulling '%s'[%s] with %s Baseline for the last %d days", application, metricName, baseline, days));
-        long startTimestamp = System.currentTimeMillis() - (days*24*60*60*1000);
+        String cacheDirectory = configProperties.getProperty("cache-dir");
+        List<ParallelMetricExtractor> extractors = new ArrayList<>();
+        List<List<String>> metricNamesByController = new ArrayList<>();
+        for( Controller controller : controllers ) {
+            controller.setChunking(namespace.getInt("chunkHours")*60L*60*1000, threads);
+            controller.setTopologyParallelism(threads);
+            MetricTreeCrawler metricTreeCrawler = new MetricTreeCrawler(controller, threads,
+                    cacheDirectory == null || cacheDirectory.trim().isEmpty() ? null : Paths.get(cacheDirectory.trim()),
+                    Long.parseLong(configProperties.getProperty("metric-index-ttl-minutes", "1440")) * 60 * 1000);
+            List<String> controllerMetricNames = metricTreeCrawler.expand(application, metricNames, namespace.getBoolean("refreshIndex"));
+            if( controllerMetricNames.isEmpty() ) {
+                logger.warn("No metrics in '%s' on %s match %s", application, controller.hostname, metricNames);
+                continue;
+            }
+            logger.info(String.format("Pulling '%s'%s from %s with %s Baseline for the last %d days using %d threads", application, controllerMetricNames, controller.hostname, baseline, days, threads));
+            ParallelMetricExtractor extractor = new ParallelMetricExtractor(controller, threads);
+            extractor.setTargetPoints(namespace.getBoolean("raw") ? 0 : namespace.getInt("points"));
+            extractors.add(extractor);
+            metricNamesByController.add(controllerMetricNames);
+        }
+        if( extractors.isEmpty() ) {
+            logger.error("No metrics in '%s' match %s", application, metricNames);
+            return 1;
+        }
         long endTimestamp = System.currentTimeMillis();
-        long appId = controller.getApplicationId(application);
-        logger.debug("appid: "+ appId);
-        MetricData[] data = controller.getMetricValue(application, metricName, startTimestamp, endTimestamp );
-        logger.debug("metric data: "+ data.length);
-        List<BaselineData> baselineData = controller.getBaselineValue(data[0], baseline, application, null, startTimestamp, endTimestamp);
-        logger.debug("baseline data: "+ baselineData.size());
-        OutputPrinter outputPrinter = null;
-        switch (namespace.getString("output")) {
-            case "XML":
-            default: {
-                outputPrinter = new XMLOutputPrinter();
-                break;
+        long startTimestamp = endTimestamp - (days*24L*60*60*1000);
+        OutputPrinter outputPrinter = OutputPrinterFactory.getOutputPrinter(namespace.getString("output"));
+        if( outputPrinter == null ) {
+            logger.warn("Output format %s is not available, using XML, available formats: %s", namespace.getString("output"), OutputPrinterFactory.getFormatNames());
+            outputPrinter = new XMLOutputPrinter();
+        }
+        if( outputPrinter instanceof WideCSVOutputPrinter ) {
+            if( namespace.getBoolean("follow") ) {
+                logger.error("WIDE output needs every series before the first row is written, it can not be used with --follow");
+                return 1;
+            }
+            ((WideCSVOutputPrinter) outputPrinter).setMemoryBudget(namespace.getInt("wideMemoryMB")*1024L*1024);
+        }
+        if( namespace.getInt("downsample") > 0 )
+            outputPrinter = new DownsamplingOutputPrinter(outputPrinter, new Downsampler(Downsampler.Method.valueOf(namespace.getString("downsampleMethod")), namespace.getInt("downsample")));
+        if( namespace.getString("outputFile") != null ) {
+            try {
+                outputStream = openOutputFile(Paths.get(namespace.getString("outputFile")), namespace.getInt("compressThreads"));
+            } catch (IOException e) {
+                logger.error("Error opening output file '%s' Exception: %s", namespace.getString("outputFile"), e.getMessage());
+                return 1;
+            }
+        }
+        WorkingStatusThread workingStatusThread = new WorkingStatusThread("Export", application, logger);
+        workingStatusThread.start();
+        if( namespace.getBoolean("follow") )
+            return follow(extractors, outputPrinter, outputStream, namespace.getString("outputFile") != null ? outputStream : null, application, metricNamesByController, baseline, namespace.getInt("interval")*1000L, startTimestamp, telemetryFile, logger);
+        OutputStream fileOutputStream = namespace.getString("outputFile") != null ? outputStream : null;
+        int status = 0;
+        try {
+            outputPrinter.open(outputStream);
+            //a batch of metrics from every controller is written and let go before the next batch is extracted
+            int batchMetrics = Math.max(1, namespace.getInt("batchMetrics"));
+            int maxMetrics = 0;
+            for( List<String> controllerMetricNames : metricNamesByController ) maxMetrics = Math.max(maxMetrics, controllerMetricNames.size());
+            for( int from=0; from < maxMetrics; from += batchMetrics ) {
+                List<List<String>> batch = new ArrayList<>();
+                for( List<String> controllerMetricNames : metricNamesByController )
+                    batch.add(controllerMetricNames.subList(Math.min(from, controllerMetricNames.size()), Math.min(from + batchMetrics, controllerMetricNames.size())));
+                for( MetricExtractResult result : extract(extractors, application, batch, baseline, startTimestamp, endTimestamp, logger) ) {
+                    if( !result.hasData() ) {
+                        logger.warn("No data to output for metric '%s'", result.metricName);
+                        continue;
+                    }
+                    outputPrinter.printSeries(result.metricData, result.getBaselineData());
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error writing output Exception: %s", e.getMessage());
+            status = 1;
+        } finally {
+            for( ParallelMetricExtractor extractor : extractors ) extractor.shutdown();
+            if( !closeOutput(outputPrinter, fileOutputStream, logger) ) status = 1;
+            workingStatusThread.cancel();
+            Telemetry.get().writeSummary(telemetryFile);
+        }
+        return status;
+    }
+
+    //the printer is closed even after a failed write, and the --outputFile stream with it, so the compressed blocks still
+    //pending are written. the stream given to run is the caller's and is left open
+    private static boolean closeOutput( OutputPrinter outputPrinter, OutputStream fileOutputStream, Logger logger ) {
+        boolean closed = true;
+        try {
+            outputPrinter.close();
+        } catch (IOException e) {
+            logger.error("Error closing output Exception: %s", e.getMessage());
+            closed = false;
+        }
+        if( fileOutputStream == null ) return closed;
+        try {
+            fileOutputStream.close();
+        } catch (IOException e) {
+            logger.error("Error closing output file Exception: %s", e.getMessage());
+            closed = false;
+        }
+        return closed;
+    }
+
+    //every controller is extracted at once, each with its own workers, the results come back in controller order
+    private static List<MetricExtractResult> extract( List<ParallelMetricExtractor> extractors, String application, List<List<String>> metricNamesByController, String baseline, long startTimestamp, long endTimestamp, Logger logger ) {
+        if( extractors.size() == 1 ) return extractors.get(0).extract(application, metricNamesByController.get(0), baseline, startTimestamp, endTimestamp);
+        ExecutorService executorService = Executors.newFixedThreadPool(extractors.size());
+        try {
+            List<Future<List<MetricExtractResult>>> futures = new ArrayList<>();
+            for( int i=0; i < extractors.size(); i++ ) {
+                ParallelMetricExtractor extractor = extractors.get(i);
+                List<String> metricNames = metricNamesByController.get(i);
+                futures.add(executorService.submit(() -> extractor.extract(application, metricNames, baseline, startTimestamp, endTimestamp)));
+            }
+            List<MetricExtractResult> results = new ArrayList<>();
+            for( Future<List<MetricExtractResult>> future : futures ) {
+                try {
+                    results.addAll(future.get());
+                } catch (ExecutionException executionException) {
+                    logger.warn("Error extracting from a controller, its metrics are missing from the output, Exception: %s", executionException.getCause().toString());
+                }
+            }
+            return results;
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    //runs until the process is stopped or writing the output fails. a failed write on any controller's poller stops them
+    //all and returns 1, the output is closed once, here or by the shutdown hook on Ctrl-C, whichever gets to it first
+    private static int follow( List<ParallelMetricExtractor> extractors, OutputPrinter outputPrinter, OutputStream outputStream, OutputStream fileOutputStream, String application, List<List<String>> metricNamesByController, String baseline, long intervalMillis, long startTimestamp, Path telemetryFile, Logger logger ) {
+        List<FollowPoller> followPollers = new ArrayList<>();
+        for( int i=0; i < extractors.size(); i++ )
+            followPollers.add(new FollowPoller(extractors.get(i), outputPrinter, application, metricNamesByController.get(i), baseline, intervalMillis));
+        AtomicBoolean failed = new AtomicBoolean(false);
+        AtomicBoolean closed = new AtomicBoolean(false);
+        List<FollowPoller> startedPollers = new CopyOnWriteArrayList<>(); //only these have a finish to wait for
+        Runnable stopAndClose = () -> {
+            for( FollowPoller followPoller : followPollers ) followPoller.stop();
+            try {
+                for( FollowPoller followPoller : startedPollers ) followPoller.awaitFinished(10000);
+            } catch (InterruptedException ignored) { /* closing anyway */ }
+            synchronized (closed) { //the other caller waits here until the output is really closed
+                if( closed.getAndSet(true) ) return;
+                if( !closeOutput(outputPrinter, fileOutputStream, logger) ) failed.set(true);
+                Telemetry.get().writeSummary(telemetryFile);
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(new Thread(stopAndClose, "FollowShutdown"));
+        logger.info("Following %s every %d seconds, stop with Ctrl-C", metricNamesByController, followPollers.get(0).getIntervalMillis()/1000);
+        try {
+            outputPrinter.open(outputStream);
+            //the first controller is polled on this thread, any others on a thread each
+            for( int i=1; i < followPollers.size(); i++ ) {
+                FollowPoller followPoller = followPollers.get(i);
+                Thread thread = new Thread(() -> {
+                    try {
+                        followPoller.run(startTimestamp);
+                    } catch (IOException e) {
+                        logger.error("Error writing output Exception: %s", e.getMessage());
+                        failed.set(true);
+                        for( FollowPoller other : followPollers ) other.stop();
+                    }
+                }, "FollowPoller-"+ i);
+                thread.setDaemon(true);
+                startedPollers.add(followPoller);
+                thread.start();
+            }
+            startedPollers.add(followPollers.get(0));
+            followPollers.get(0).run(startTimestamp);
+        } catch (IOException e) {
+            logger.error("Error writing output Exception: %s", e.getMessage());
+            failed.set(true);
+        } finally {
+            stopAndClose.run();
+        }
+        return failed.get() ? 1 : 0;
+    }
+
+    //a .gz or .zst file gets gzip members or zstd frames compressed in parallel, which gunzip and zstd -d read as one stream
+    private static OutputStream openOutputFile( Path path, int threads ) throws IOException {
+        OutputStream fileOutputStream = Files.newOutputStream(path);
+        Compression compression = Compression.forFile(path.getFileName().toString());
+        if( compression == Compression.NONE ) return fileOutputStream;
+        return new ParallelCompressingOutputStream(fileOutputStream, compression, threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+
+    private static List<String> getMetricNames( Namespace namespace ) throws IOException {
+        List<String> metricNames = new ArrayList<>();
+        List<String> metricArguments = namespace.getList("metric");
+        if( metricArguments != null ) metricNames.addAll(metricArguments);
+        String metricFile = namespace.getString("metricFile");
+        if( metricFile != null ) {
+            for( String line : Files.readAllLines(Paths.get(metricFile), StandardCharsets.UTF_8) ) {
+                line = line.trim();
+                if( line.isEmpty() || line.startsWith("#") ) continue;
+                metricNames.add(line);
             }
         }
-        outputPrinter.setMetricData(data[0]);
-        outputPrinter.setBaseLineData(baselineData.get(0));
-        outputPrinter.print( System.out );
-        //TODO: query the data along with the baseline data, and output it however the user asks
+        return metricNames;
     }
-}
\ No newline at end of file
+}
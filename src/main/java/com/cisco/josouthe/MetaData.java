@@ -0,0 +1,8 @@
+package com.cisco.josouthe;
+
+public class MetaData {
+    public static final String VERSION = "v1.0";
+    public static final String BUILDTIMESTAMP = "10/17/2026 08:49 PM -0600";
+    public static final String GECOS = "John Southerland josouthe@cisco.com john.southerland@appdynamics.com +1.214.734.8099";
+    public static final String GITHUB = "https://github.com/jbsouthe/appd-dashboard-tool";
+}
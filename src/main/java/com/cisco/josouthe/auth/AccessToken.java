@@ -7,4 +7,7 @@ public class AccessToken {
     public boolean isExpired() {
         return expires_at < System.currentTimeMillis();
     }
+    public boolean isExpired( long skewMillis ) {
+        return expires_at - skewMillis < System.currentTimeMillis();
+    }
 }
@@ -0,0 +1,268 @@
+package com.cisco.josouthe.auth;
+
+import com.cisco.josouthe.http.HttpClientFactory;
+import com.cisco.josouthe.http.RetryPolicy;
+import com.cisco.josouthe.telemetry.EndpointStats;
+import com.cisco.josouthe.telemetry.Telemetry;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.http.*;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/*
+oauth client credentials token for one controller. concurrent callers that find the token expired share one refresh
+request, and a background task refreshes the token shortly before it expires so callers normally never wait.
+optionally the token is kept in an owner only file so back to back runs can skip the oauth round trip
+ */
+public class TokenManager {
+    private static final Logger logger = LogManager.getFormatterLogger(TokenManager.class);
+    private static final long EXPIRY_SKEW_MILLIS = 30000; //treat a token as expired this long before the controller does
+    private static final long MINIMUM_REFRESH_AHEAD_MILLIS = 60000;
+    private static final Set<PosixFilePermission> OWNER_ONLY = EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+    private static final Gson gson = new Gson();
+    private static ScheduledExecutorService refreshScheduler = null;
+
+    private URL url;
+    private String clientId, clientSecret;
+    private HttpClient client;
+    private boolean privateClient = false;
+    private volatile AccessToken accessToken = null;
+    private CompletableFuture<AccessToken> inFlightRefresh = null;
+    private ScheduledFuture<?> scheduledRefresh = null;
+    private Path tokenFile = null;
+    private RetryPolicy retryPolicy = new RetryPolicy(3, 500, 30000);
+
+    public TokenManager( URL url, String clientId, String clientSecret ) {
+        this.url = url;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.client = HttpClientFactory.getHttpClient();
+    }
+
+    //token requests go through the controller's own connection pool instead of the shared one
+    public synchronized void setHttpClient( HttpClient client ) {
+        this.client = client;
+        this.privateClient = true;
+    }
+
+    //a saved token for the same controller and client id is reused while it is still valid
+    public void setTokenFile( Path tokenFile ) {
+        this.tokenFile = tokenFile;
+        if( tokenFile == null || !Files.exists(tokenFile) ) return;
+        try {
+            if( !Files.getPosixFilePermissions(tokenFile).equals(OWNER_ONLY) ) {
+                logger.warn("Token file %s is readable by other users, ignoring it", tokenFile);
+                return;
+            }
+        } catch (UnsupportedOperationException | IOException ignored) { /* not a posix file system */ }
+        try (Reader reader = Files.newBufferedReader(tokenFile, StandardCharsets.UTF_8)) {
+            SavedToken savedToken = gson.fromJson(reader, SavedToken.class);
+            if( savedToken == null || !url.toString().equals(savedToken.controller) || !clientId.equals(savedToken.clientId) ) return;
+            AccessToken token = new AccessToken();
+            token.access_token = savedToken.access_token;
+            token.expires_at = savedToken.expires_at;
+            if( token.isExpired(EXPIRY_SKEW_MILLIS) ) return;
+            logger.debug("Reusing access token from %s, it expires in %d seconds", tokenFile, (token.expires_at - System.currentTimeMillis())/1000);
+            synchronized (this) {
+                if( this.accessToken == null ) this.accessToken = token;
+            }
+            scheduleRefresh(token);
+        } catch (IOException | JsonParseException exception) {
+            logger.warn("Unreadable token file %s, a new token will be requested, Exception: %s", tokenFile, exception.toString());
+        }
+    }
+
+    public String getBearerToken() {
+        AccessToken token = this.accessToken;
+        if( token == null || token.isExpired(EXPIRY_SKEW_MILLIS) ) token = refresh(token);
+        if( token == null ) return null;
+        return "Bearer "+ token.access_token;
+    }
+
+    //drop the current token, the next request gets a new one
+    public synchronized void discardToken() {
+        this.accessToken = null;
+        if( scheduledRefresh != null ) scheduledRefresh.cancel(false);
+    }
+
+    private AccessToken refresh( AccessToken staleToken ) {
+        CompletableFuture<AccessToken> refreshFuture;
+        boolean leader = false;
+        synchronized (this) {
+            AccessToken current = this.accessToken;
+            if( current != null && current != staleToken && !current.isExpired(EXPIRY_SKEW_MILLIS) ) return current; //someone beat us to it
+            if( inFlightRefresh == null ) {
+                inFlightRefresh = new CompletableFuture<>();
+                leader = true;
+            }
+            refreshFuture = inFlightRefresh;
+        }
+        if( leader ) {
+            AccessToken token = null;
+            try {
+                token = requestAccessToken();
+            } finally {
+                synchronized (this) {
+                    if( token != null ) this.accessToken = token;
+                    inFlightRefresh = null;
+                }
+                refreshFuture.complete(token);
+            }
+            if( token != null ) {
+                scheduleRefresh(token);
+                saveTokenFile(token);
+            }
+        }
+        return refreshFuture.join();
+    }
+
+    private synchronized void scheduleRefresh( AccessToken token ) {
+        if( scheduledRefresh != null ) scheduledRefresh.cancel(false);
+        long lifetime = token.expires_at - System.currentTimeMillis();
+        long delay = lifetime - Math.max(MINIMUM_REFRESH_AHEAD_MILLIS, lifetime / 10);
+        if( delay <= 0 ) return; //too short lived, it is refreshed on demand
+        scheduledRefresh = getRefreshScheduler().schedule(() -> {
+            logger.debug("Refreshing access token for %s before it expires", url);
+            refresh(token);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized ScheduledExecutorService getRefreshScheduler() {
+        if( refreshScheduler == null ) {
+            refreshScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "TokenRefresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return refreshScheduler;
+    }
+
+    private AccessToken requestAccessToken() { //returns null if an error occurs
+        HttpPost request = new HttpPost(url.toString()+"/controller/api/oauth/access_token");
+        ArrayList<NameValuePair> postParameters = new ArrayList<NameValuePair>();
+        postParameters.add( new BasicNameValuePair("grant_type","client_credentials"));
+        postParameters.add( new BasicNameValuePair("client_id",clientId));
+        postParameters.add( new BasicNameValuePair("client_secret",clientSecret));
+        request.setEntity(new UrlEncodedFormEntity(postParameters, StandardCharsets.UTF_8));
+
+        if( HttpClientFactory.isWireTraceEnabled("controller") ){
+            logger.info("Request to run: %s",request.toString());
+            for( Header header : request.getAllHeaders())
+                logger.info("with header: %s",header.toString());
+            logger.info("post parameters: grant_type=client_credentials client_id=%s", clientId);
+        }
+
+        EndpointStats endpointStats = Telemetry.get().endpoint(request.getURI().getPath());
+        long retryAfterMillis = -1;
+        int tries=0;
+        while( tries < retryPolicy.getMaxAttempts() ) {
+            if( tries > 0 && !backoff(tries, retryAfterMillis) ) return null;
+            retryAfterMillis = -1;
+            long requestTimestamp = System.currentTimeMillis(); //the lifetime counts from when we asked, not when we heard back
+            long requestNanos = System.nanoTime();
+            endpointStats.requests.increment();
+            try {
+                HttpResponse response = client.execute(request);
+                endpointStats.latency.recordNanos(System.nanoTime() - requestNanos);
+                logger.trace("Response Status Line: %s", response.getStatusLine());
+                String json = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+                endpointStats.responseBytes.add(json.length());
+                int status = response.getStatusLine().getStatusCode();
+                if( status != HttpStatus.SC_OK ) endpointStats.failures.increment();
+                if( status == 429 || status >= 500 ) { //the controller is busy, try again after a pause
+                    logger.warn("Access Key retreival returned bad status: %s, will retry", response.getStatusLine());
+                    Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+                    retryAfterMillis = HttpClientFactory.parseRetryAfter(retryAfter == null ? null : retryAfter.getValue());
+                    tries++;
+                    continue;
+                }
+                if( status != HttpStatus.SC_OK) {
+                    logger.warn("Access Key retreival returned bad status: %s message: %s", response.getStatusLine(), json);
+                    return null;
+                }
+                AccessToken token = gson.fromJson(json, AccessToken.class);
+                token.expires_at = requestTimestamp + (token.expires_in*1000L);
+                Telemetry.get().tokenRefreshed();
+                return token;
+            } catch (IOException | JsonParseException e) {
+                endpointStats.failures.increment();
+                logger.error("Exception in attempting to get access token, Exception: %s", e.getMessage());
+                tries++;
+            } catch (IllegalStateException illegalStateException) {
+                endpointStats.failures.increment();
+                tries++;
+                this.client = privateClient ? HttpClientFactory.newHttpClient() : HttpClientFactory.getHttpClient(true);
+                logger.warn("Caught exception on connection, building a new connection for retry, Exception: %s", illegalStateException.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private boolean backoff( int attempt, long retryAfterMillis ) { //returns false if interrupted
+        long delay = retryAfterMillis >= 0 ? retryAfterMillis : retryPolicy.getDelayMillis(attempt, null);
+        Telemetry.get().retried();
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void saveTokenFile( AccessToken token ) {
+        if( tokenFile == null ) return;
+        SavedToken savedToken = new SavedToken();
+        savedToken.controller = url.toString();
+        savedToken.clientId = clientId;
+        savedToken.access_token = token.access_token;
+        savedToken.expires_at = token.expires_at;
+        try {
+            Path directory = tokenFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp;
+            try {
+                temp = Files.createTempFile(directory, "token", ".tmp", PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+            } catch (UnsupportedOperationException notPosix) {
+                temp = Files.createTempFile(directory, "token", ".tmp");
+                temp.toFile().setReadable(false, false);
+                temp.toFile().setReadable(true, true);
+            }
+            try {
+                try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    gson.toJson(savedToken, writer);
+                }
+                Files.move(temp, tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not save access token to %s Exception: %s", tokenFile, e.getMessage());
+        }
+    }
+
+    private static class SavedToken {
+        String controller, clientId, access_token;
+        long expires_at;
+    }
+}
@@ -0,0 +1,37 @@
+package com.cisco.josouthe.cache;
+
+import java.nio.ByteBuffer;
+
+//reads bits written by BitOutput from a region of a buffer, which is normally a memory mapped segment
+public class BitInput {
+    private ByteBuffer buffer;
+    private int offset;
+    private long bitPosition = 0;
+
+    public BitInput( ByteBuffer buffer, int offset ) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    public boolean readBit() {
+        return readBits(1) == 1;
+    }
+
+    public long readBits( int count ) {
+        long result = 0;
+        while( count > 0 ) {
+            int b = buffer.get(offset + (int) (bitPosition >>> 3)) & 0xff;
+            int available = 8 - (int) (bitPosition & 7);
+            int take = Math.min(available, count);
+            result = (result << take) | ((b >>> (available - take)) & ((1 << take) - 1));
+            bitPosition += take;
+            count -= take;
+        }
+        return result;
+    }
+
+    public long readSignedBits( int count ) {
+        long value = readBits(count);
+        return (value << (64 - count)) >> (64 - count);
+    }
+}
@@ -0,0 +1,38 @@
+package com.cisco.josouthe.cache;
+
+import java.util.Arrays;
+
+public class BitOutput {
+    private byte[] bytes;
+    private long bitPosition = 0;
+
+    public BitOutput() {
+        this(1024);
+    }
+
+    public BitOutput( int initialBytes ) {
+        this.bytes = new byte[Math.max(16, initialBytes)];
+    }
+
+    public void writeBit( boolean bit ) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    //writes the low count bits of value, most significant first
+    public void writeBits( long value, int count ) {
+        while( count > 0 ) {
+            int byteIndex = (int) (bitPosition >>> 3);
+            if( byteIndex >= bytes.length ) bytes = Arrays.copyOf(bytes, bytes.length*2);
+            int free = 8 - (int) (bitPosition & 7);
+            int take = Math.min(free, count);
+            int bits = (int) ((value >>> (count - take)) & ((1 << take) - 1));
+            bytes[byteIndex] |= bits << (free - take);
+            bitPosition += take;
+            count -= take;
+        }
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, (int) ((bitPosition + 7) >>> 3));
+    }
+}
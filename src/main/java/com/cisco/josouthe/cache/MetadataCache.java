@@ -0,0 +1,180 @@
+package com.cisco.josouthe.cache;
+
+import com.cisco.josouthe.metric.Baseline;
+import com.cisco.josouthe.metric.MetricData;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/*
+controller metadata that rarely changes: application ids, the baselines of each application and the metric id behind
+each metric path. kept in memory for the run and, with a cache-dir, in a json file for later runs. every entry
+carries the time it was fetched and is ignored once older than its ttl
+ */
+public class MetadataCache {
+    private static final Logger logger = LogManager.getFormatterLogger(MetadataCache.class);
+    private static final Gson gson = new Gson();
+
+    private static class Contents {
+        String controller;
+        ApplicationIds applicationIds;
+        Map<Long,BaselineList> baselines = new HashMap<>();
+        Map<String,MetricIdentity> metricIds = new HashMap<>();
+    }
+
+    private static class ApplicationIds {
+        long savedTimestamp;
+        Map<String,Long> ids;
+    }
+
+    private static class BaselineList {
+        long savedTimestamp;
+        Baseline[] baselines;
+    }
+
+    private static class MetricIdentity {
+        long savedTimestamp, metricId;
+        String metricName, metricPath;
+    }
+
+    private Path path;
+    private long ttlMillis, metricIdTtlMillis;
+    private Contents contents;
+    private boolean dirty = false;
+
+    public static MetadataCache fromProperties( Properties properties, String controller, String hostname ) {
+        long ttlMillis = Long.parseLong(properties.getProperty("metadata-ttl-minutes", "1440")) * 60 * 1000;
+        long metricIdTtlMillis = Long.parseLong(properties.getProperty("metric-id-ttl-minutes", "10080")) * 60 * 1000;
+        String directory = properties.getProperty("cache-dir");
+        Path path = null;
+        if( directory != null && !directory.trim().isEmpty() )
+            path = Paths.get(directory.trim(), "metadata-"+ hostname +".json");
+        return new MetadataCache(path, controller, ttlMillis, metricIdTtlMillis);
+    }
+
+    //a null path keeps everything in memory only
+    public MetadataCache( Path path, String controller, long ttlMillis, long metricIdTtlMillis ) {
+        this.path = path;
+        this.ttlMillis = ttlMillis;
+        this.metricIdTtlMillis = metricIdTtlMillis;
+        this.contents = read(path, controller);
+        if( this.contents == null ) {
+            this.contents = new Contents();
+            this.contents.controller = controller;
+        }
+    }
+
+    public synchronized Map<String,Long> getApplicationIds() {
+        if( contents.applicationIds == null || isExpired(contents.applicationIds.savedTimestamp, ttlMillis) ) return null;
+        return contents.applicationIds.ids;
+    }
+
+    public synchronized void putApplicationIds( Map<String,Long> ids ) {
+        ApplicationIds applicationIds = new ApplicationIds();
+        applicationIds.savedTimestamp = System.currentTimeMillis();
+        applicationIds.ids = ids;
+        contents.applicationIds = applicationIds;
+        dirty = true;
+    }
+
+    public synchronized void invalidateApplicationIds() {
+        contents.applicationIds = null;
+        dirty = true;
+    }
+
+    public synchronized Baseline[] getBaselines( long applicationId ) {
+        BaselineList baselineList = contents.baselines.get(applicationId);
+        if( baselineList == null || isExpired(baselineList.savedTimestamp, ttlMillis) ) return null;
+        return baselineList.baselines;
+    }
+
+    public synchronized void putBaselines( long applicationId, Baseline[] baselines ) {
+        BaselineList baselineList = new BaselineList();
+        baselineList.savedTimestamp = System.currentTimeMillis();
+        baselineList.baselines = baselines;
+        contents.baselines.put(applicationId, baselineList);
+        dirty = true;
+    }
+
+    //a metric data holding only the id, name and path the controller last returned for this metric, or null
+    public synchronized MetricData getMetricIdentity( String application, String metricName ) {
+        MetricIdentity metricIdentity = contents.metricIds.get(getMetricKey(application, metricName));
+        if( metricIdentity == null || isExpired(metricIdentity.savedTimestamp, metricIdTtlMillis) ) return null;
+        MetricData metricData = new MetricData();
+        metricData.metricId = metricIdentity.metricId;
+        metricData.metricName = metricIdentity.metricName;
+        metricData.metricPath = metricIdentity.metricPath;
+        metricData.applicationName = application;
+        return metricData;
+    }
+
+    public synchronized void putMetricIdentity( String application, String metricName, MetricData metricData ) {
+        String key = getMetricKey(application, metricName);
+        MetricIdentity previous = contents.metricIds.get(key);
+        if( previous != null && previous.metricId == metricData.metricId && !isExpired(previous.savedTimestamp, metricIdTtlMillis / 2) ) return;
+        MetricIdentity metricIdentity = new MetricIdentity();
+        metricIdentity.savedTimestamp = System.currentTimeMillis();
+        metricIdentity.metricId = metricData.metricId;
+        metricIdentity.metricName = metricData.metricName;
+        metricIdentity.metricPath = metricData.metricPath;
+        contents.metricIds.put(key, metricIdentity);
+        dirty = true;
+    }
+
+    //writes the file if anything changed since the last flush
+    public void flush() {
+        String json;
+        synchronized (this) {
+            if( path == null || !dirty ) return;
+            json = gson.toJson(contents);
+            dirty = false;
+        }
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), "metadata", ".tmp");
+            try {
+                try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    writer.write(json);
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write metadata cache %s Exception: %s", path, e.getMessage());
+        }
+    }
+
+    private static Contents read( Path path, String controller ) {
+        if( path == null || !Files.exists(path) ) return null;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Contents contents = gson.fromJson(reader, Contents.class);
+            if( contents == null || !controller.equals(contents.controller) ) return null;
+            if( contents.baselines == null ) contents.baselines = new HashMap<>();
+            if( contents.metricIds == null ) contents.metricIds = new HashMap<>();
+            logger.debug("Read metadata cache %s with %d baseline lists and %d metric ids", path, contents.baselines.size(), contents.metricIds.size());
+            return contents;
+        } catch (IOException | JsonParseException exception) {
+            logger.warn("Unreadable metadata cache %s, it will be fetched again, Exception: %s", path, exception.toString());
+            return null;
+        }
+    }
+
+    private static boolean isExpired( long savedTimestamp, long ttlMillis ) {
+        return savedTimestamp + ttlMillis < System.currentTimeMillis();
+    }
+
+    private static String getMetricKey( String application, String metricName ) {
+        return application +"|"+ metricName;
+    }
+}
@@ -0,0 +1,165 @@
+package com.cisco.josouthe.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+every metric path of one application, sorted so a prefix is a binary search and a glob only tests the paths under its
+literal prefix. globs: * matches within one | separated segment, ** matches across segments, ? matches one character.
+saved as a gzipped text file, one path per line after a header with the application and build time
+ */
+public class MetricPathIndex {
+    private static final Logger logger = LogManager.getFormatterLogger(MetricPathIndex.class);
+    private static final String HEADER = "#metric-path-index v1";
+
+    private String application;
+    private long builtTimestamp;
+    private String[] paths;
+
+    public MetricPathIndex( String application, Collection<String> paths, long builtTimestamp ) {
+        this.application = application;
+        this.builtTimestamp = builtTimestamp;
+        this.paths = new TreeSet<>(paths).toArray(new String[0]);
+    }
+
+    public String getApplication() { return application; }
+    public long getBuiltTimestamp() { return builtTimestamp; }
+    public int size() { return paths.length; }
+
+    public boolean isExpired( long ttlMillis ) {
+        return builtTimestamp + ttlMillis < System.currentTimeMillis();
+    }
+
+    public List<String> withPrefix( String prefix ) {
+        int from = lowerBound(prefix);
+        List<String> matches = new ArrayList<>();
+        for( int i=from; i < paths.length && paths[i].startsWith(prefix); i++ ) matches.add(paths[i]);
+        return matches;
+    }
+
+    public List<String> match( String glob ) {
+        if( !isGlob(glob) ) return Arrays.binarySearch(paths, glob) >= 0 ? Collections.singletonList(glob) : Collections.emptyList();
+        Pattern pattern = toPattern(glob);
+        List<String> matches = new ArrayList<>();
+        for( String path : withPrefix(getLiteralPrefix(glob)) )
+            if( pattern.matcher(path).matches() ) matches.add(path);
+        return matches;
+    }
+
+    public static boolean isGlob( String metricName ) {
+        return metricName.indexOf('*') >= 0 || metricName.indexOf('?') >= 0;
+    }
+
+    public static String getLiteralPrefix( String glob ) {
+        int end = 0;
+        while( end < glob.length() && glob.charAt(end) != '*' && glob.charAt(end) != '?' ) end++;
+        return glob.substring(0, end);
+    }
+
+    static Pattern toPattern( String glob ) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for( int i=0; i < glob.length(); i++ ) {
+            char c = glob.charAt(i);
+            if( c != '*' && c != '?' ) {
+                literal.append(c);
+                continue;
+            }
+            if( literal.length() > 0 ) {
+                regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+            }
+            if( c == '?' ) {
+                regex.append("[^|]");
+            } else if( i+1 < glob.length() && glob.charAt(i+1) == '*' ) {
+                regex.append(".*");
+                i++;
+            } else {
+                regex.append("[^|]*");
+            }
+        }
+        if( literal.length() > 0 ) regex.append(Pattern.quote(literal.toString()));
+        return Pattern.compile(regex.toString());
+    }
+
+    private int lowerBound( String key ) {
+        int low = 0, high = paths.length;
+        while( low < high ) {
+            int middle = (low + high) >>> 1;
+            if( paths[middle].compareTo(key) < 0 ) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public static Path getPath( Path directory, String hostname, String application ) {
+        return directory.resolve("metric-paths-"+ hostname +"-"+ sha1(application).substring(0, 16) +".txt.gz");
+    }
+
+    public void write( Path path ) {
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), "metric-paths", ".tmp");
+            try {
+                try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8))) {
+                    writer.write(HEADER); writer.newLine();
+                    writer.write(application); writer.newLine();
+                    writer.write(Long.toString(builtTimestamp)); writer.newLine();
+                    for( String metricPath : paths ) {
+                        writer.write(metricPath);
+                        writer.newLine();
+                    }
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            logger.debug("Wrote %d metric paths of %s to %s", paths.length, application, path);
+        } catch (IOException e) {
+            logger.warn("Could not write metric path index %s Exception: %s", path, e.getMessage());
+        }
+    }
+
+    public static MetricPathIndex read( Path path, String application ) {
+        if( !Files.exists(path) ) return null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.UTF_8))) {
+            if( !HEADER.equals(reader.readLine()) || !application.equals(reader.readLine()) ) return null;
+            long builtTimestamp = Long.parseLong(reader.readLine());
+            List<String> paths = new ArrayList<>();
+            for( String line = reader.readLine(); line != null; line = reader.readLine() )
+                if( !line.isEmpty() ) paths.add(line);
+            return new MetricPathIndex(application, paths, builtTimestamp);
+        } catch (IOException | NumberFormatException exception) {
+            logger.warn("Unreadable metric path index %s, it will be built again, Exception: %s", path, exception.toString());
+            return null;
+        }
+    }
+
+    private static String sha1( String key ) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for( byte b : digest ) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.cisco.josouthe.cache;
+
+import com.cisco.josouthe.metric.BaselineData;
+import com.cisco.josouthe.metric.MetricData;
+import com.cisco.josouthe.metric.MetricSeries;
+
+//one series stored in a cache segment, with the header fields needed to rebuild the MetricData or BaselineData
+public class SegmentEntry {
+    public long metricId;
+    public String metricName, metricPath, frequency;
+    public int granularityMinutes;
+    public MetricSeries series;
+
+    public static SegmentEntry of( MetricData metricData ) {
+        SegmentEntry segmentEntry = new SegmentEntry();
+        segmentEntry.metricId = metricData.metricId;
+        segmentEntry.metricName = metricData.metricName;
+        segmentEntry.metricPath = metricData.metricPath;
+        segmentEntry.frequency = metricData.frequency;
+        segmentEntry.series = metricData.getMetricSeries();
+        return segmentEntry;
+    }
+
+    public static SegmentEntry of( BaselineData baselineData ) {
+        SegmentEntry segmentEntry = new SegmentEntry();
+        segmentEntry.metricId = baselineData.metricId;
+        segmentEntry.metricName = baselineData.metricName;
+        segmentEntry.frequency = baselineData.frequency;
+        segmentEntry.granularityMinutes = baselineData.granularityMinutes;
+        segmentEntry.series = baselineData.getTimesliceSeries();
+        return segmentEntry;
+    }
+
+    public MetricData toMetricData() {
+        MetricData metricData = new MetricData();
+        metricData.metricId = metricId;
+        metricData.metricName = metricName;
+        metricData.metricPath = metricPath;
+        metricData.frequency = frequency;
+        metricData.setMetricSeries(series);
+        return metricData;
+    }
+
+    public BaselineData toBaselineData() {
+        BaselineData baselineData = new BaselineData();
+        baselineData.metricId = metricId;
+        baselineData.metricName = metricName;
+        baselineData.frequency = frequency;
+        baselineData.granularityMinutes = granularityMinutes;
+        baselineData.setTimesliceSeries(series);
+        return baselineData;
+    }
+}
@@ -0,0 +1,128 @@
+package com.cisco.josouthe.cache;
+
+import com.cisco.josouthe.metric.MetricSeries;
+
+import java.nio.ByteBuffer;
+
+/*
+gorilla style compression of a MetricSeries, column by column: timestamps as delta of delta with variable width
+buckets, the long columns and the standard deviation bits as XOR against the previous value. minute data with
+steady values compresses to a few bits per point
+ */
+public class SeriesCodec {
+
+    public static byte[] encode( MetricSeries metricSeries ) {
+        int size = metricSeries.size();
+        BitOutput out = new BitOutput(size * 8);
+        if( size == 0 ) return out.toByteArray();
+        long previousTimestamp = metricSeries.getTimestamp(0), previousDelta = 0;
+        out.writeBits(previousTimestamp, 64);
+        for( int i=1; i < size; i++ ) {
+            long timestamp = metricSeries.getTimestamp(i);
+            long delta = timestamp - previousTimestamp;
+            writeDeltaOfDelta(out, delta - previousDelta);
+            previousTimestamp = timestamp;
+            previousDelta = delta;
+        }
+        XorState xorState = new XorState();
+        for( int i=0; i < size; i++ ) xorState.write(out, metricSeries.getValue(i));
+        xorState = new XorState();
+        for( int i=0; i < size; i++ ) xorState.write(out, metricSeries.getMin(i));
+        xorState = new XorState();
+        for( int i=0; i < size; i++ ) xorState.write(out, metricSeries.getMax(i));
+        xorState = new XorState();
+        for( int i=0; i < size; i++ ) xorState.write(out, metricSeries.getCount(i));
+        xorState = new XorState();
+        for( int i=0; i < size; i++ ) xorState.write(out, metricSeries.getSum(i));
+        xorState = new XorState();
+        for( int i=0; i < size; i++ ) xorState.write(out, Double.doubleToRawLongBits(metricSeries.getStandardDeviation(i)));
+        return out.toByteArray();
+    }
+
+    public static MetricSeries decode( ByteBuffer buffer, int offset, int size ) {
+        MetricSeries metricSeries = new MetricSeries(true);
+        if( size == 0 ) return metricSeries;
+        BitInput in = new BitInput(buffer, offset);
+        long[] timestamps = new long[size];
+        long previousDelta = 0;
+        timestamps[0] = in.readBits(64);
+        for( int i=1; i < size; i++ ) {
+            previousDelta += readDeltaOfDelta(in);
+            timestamps[i] = timestamps[i-1] + previousDelta;
+        }
+        long[][] columns = new long[6][size];
+        for( long[] column : columns ) {
+            XorState xorState = new XorState();
+            for( int i=0; i < size; i++ ) column[i] = xorState.read(in);
+        }
+        for( int i=0; i < size; i++ )
+            metricSeries.append(timestamps[i], columns[0][i], columns[1][i], columns[2][i], columns[3][i], columns[4][i], Double.longBitsToDouble(columns[5][i]));
+        return metricSeries;
+    }
+
+    private static void writeDeltaOfDelta( BitOutput out, long deltaOfDelta ) {
+        if( deltaOfDelta == 0 ) {
+            out.writeBits(0b0, 1);
+        } else if( deltaOfDelta >= -64 && deltaOfDelta <= 63 ) {
+            out.writeBits(0b10, 2);
+            out.writeBits(deltaOfDelta, 7);
+        } else if( deltaOfDelta >= -256 && deltaOfDelta <= 255 ) {
+            out.writeBits(0b110, 3);
+            out.writeBits(deltaOfDelta, 9);
+        } else if( deltaOfDelta >= Integer.MIN_VALUE && deltaOfDelta <= Integer.MAX_VALUE ) {
+            out.writeBits(0b1110, 4);
+            out.writeBits(deltaOfDelta, 32);
+        } else {
+            out.writeBits(0b1111, 4);
+            out.writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta( BitInput in ) {
+        if( !in.readBit() ) return 0;
+        if( !in.readBit() ) return in.readSignedBits(7);
+        if( !in.readBit() ) return in.readSignedBits(9);
+        if( !in.readBit() ) return in.readSignedBits(32);
+        return in.readBits(64);
+    }
+
+    private static class XorState {
+        private long previous = 0;
+        private int previousLeading = -1, previousTrailing = 0;
+
+        void write( BitOutput out, long value ) {
+            long xor = value ^ previous;
+            previous = value;
+            if( xor == 0 ) {
+                out.writeBit(false);
+                return;
+            }
+            out.writeBit(true);
+            int leading = Long.numberOfLeadingZeros(xor), trailing = Long.numberOfTrailingZeros(xor);
+            if( previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing ) { //fits the previous window
+                out.writeBit(false);
+                out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                return;
+            }
+            int significant = 64 - leading - trailing;
+            out.writeBit(true);
+            out.writeBits(leading, 6);
+            out.writeBits(significant - 1, 6);
+            out.writeBits(xor >>> trailing, significant);
+            previousLeading = leading;
+            previousTrailing = trailing;
+        }
+
+        long read( BitInput in ) {
+            if( !in.readBit() ) return previous;
+            if( in.readBit() ) {
+                previousLeading = (int) in.readBits(6);
+                int significant = (int) in.readBits(6) + 1;
+                previousTrailing = 64 - previousLeading - significant;
+            }
+            int significant = 64 - previousLeading - previousTrailing;
+            previous ^= in.readBits(significant) << previousTrailing;
+            return previous;
+        }
+    }
+}
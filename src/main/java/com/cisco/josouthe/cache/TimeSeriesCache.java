@@ -0,0 +1,277 @@
+package com.cisco.josouthe.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/*
+on disk cache of closed time buckets, one segment file per controller, application, metric path, baseline and bucket.
+segments are written to a temp file and moved into place so readers never see a partial file, and are read back
+through a memory map. eviction is least recently used by file modification time, which a read refreshes, and runs
+under an exclusive lock on cache.lock so several runs can share one directory
+ */
+public class TimeSeriesCache {
+    private static final Logger logger = LogManager.getFormatterLogger(TimeSeriesCache.class);
+    private static final int MAGIC = 0x41445453, VERSION = 1; //"ADTS"
+    private static final Map<Path,TimeSeriesCache> openCaches = new HashMap<>();
+
+    private Path directory;
+    private long maxBytes, bucketMillis, settleMillis;
+    private long approximateBytes;
+    private FileChannel lockChannel;
+
+    public static TimeSeriesCache fromProperties( Properties properties ) {
+        String directory = properties.getProperty("cache-dir");
+        if( directory == null || directory.trim().isEmpty() ) return null;
+        long maxBytes = Long.parseLong(properties.getProperty("cache-max-mb", "1024")) * 1024 * 1024;
+        long bucketMillis = Long.parseLong(properties.getProperty("cache-bucket-hours", "24")) * 60 * 60 * 1000;
+        long settleMillis = Long.parseLong(properties.getProperty("cache-settle-minutes", "10")) * 60 * 1000;
+        try {
+            return open(Paths.get(directory.trim()), maxBytes, bucketMillis, settleMillis);
+        } catch (IOException e) {
+            logger.warn("Could not open time series cache in '%s', continuing without it, Exception: %s", directory, e.getMessage());
+            return null;
+        }
+    }
+
+    //one instance per directory, the process wide file lock can only be held once per JVM
+    public static synchronized TimeSeriesCache open( Path directory, long maxBytes, long bucketMillis, long settleMillis ) throws IOException {
+        directory = directory.toAbsolutePath().normalize();
+        TimeSeriesCache timeSeriesCache = openCaches.get(directory);
+        if( timeSeriesCache == null ) {
+            timeSeriesCache = new TimeSeriesCache(directory, maxBytes, bucketMillis, settleMillis);
+            openCaches.put(directory, timeSeriesCache);
+        }
+        return timeSeriesCache;
+    }
+
+    private TimeSeriesCache( Path directory, long maxBytes, long bucketMillis, long settleMillis ) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.bucketMillis = Math.max(60000, bucketMillis);
+        this.settleMillis = settleMillis;
+        Files.createDirectories(directory.resolve("segments"));
+        this.lockChannel = FileChannel.open(directory.resolve("cache.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.approximateBytes = scanSize();
+        logger.debug("Time series cache in %s holds %d bytes, max %d bytes", directory, approximateBytes, maxBytes);
+    }
+
+    public Path getDirectory() { return directory; }
+    public long getBucketMillis() { return bucketMillis; }
+
+    //bucket aligned ranges covering start to end, the first and last may extend past the requested window
+    public List<long[]> getBuckets( long startTimestamp, long endTimestamp ) {
+        List<long[]> buckets = new ArrayList<>();
+        for( long bucketStart = Math.floorDiv(startTimestamp, bucketMillis) * bucketMillis; bucketStart < endTimestamp; bucketStart += bucketMillis )
+            buckets.add(new long[]{ bucketStart, bucketStart + bucketMillis });
+        return buckets;
+    }
+
+    //a bucket is closed once the controller can no longer add data to it
+    public boolean isClosed( long bucketEnd ) {
+        return bucketEnd <= System.currentTimeMillis() - settleMillis;
+    }
+
+    public List<SegmentEntry> read( String controller, String application, String metricPath, String baseline, long bucketStart ) {
+        String key = getKey(controller, application, metricPath, baseline, bucketStart);
+        Path path = getPath(key);
+        if( !Files.exists(path) ) return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            List<SegmentEntry> entries = readSegment(buffer, key);
+            if( entries == null ) {
+                logger.debug("Cache segment %s does not match key %s, ignoring it", path, key);
+                return null;
+            }
+            try {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis())); //lru touch
+            } catch (IOException ignored) { /* another run may have evicted it, we already have the data */ }
+            return entries;
+        } catch (NoSuchFileException noSuchFileException) {
+            return null;
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException exception) {
+            logger.warn("Unreadable cache segment %s, it will be fetched again, Exception: %s", path, exception.toString());
+            return null;
+        }
+    }
+
+    public void write( String controller, String application, String metricPath, String baseline, long bucketStart, long bucketEnd, List<SegmentEntry> entries ) {
+        if( !isClosed(bucketEnd) ) return; //open buckets are always fetched again
+        String key = getKey(controller, application, metricPath, baseline, bucketStart);
+        Path path = getPath(key);
+        try {
+            byte[] segment = writeSegment(key, bucketStart, bucketEnd, entries);
+            Files.createDirectories(path.getParent());
+            Path temp = Files.createTempFile(path.getParent(), "segment", ".tmp");
+            try {
+                Files.write(temp, segment);
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            boolean evict;
+            synchronized (this) {
+                approximateBytes += segment.length;
+                evict = approximateBytes > maxBytes;
+            }
+            if( evict ) evict();
+        } catch (IOException e) {
+            logger.warn("Could not write cache segment %s Exception: %s", path, e.getMessage());
+        }
+    }
+
+    //removes the least recently used segments until the cache is back under 90% of its limit
+    public synchronized void evict() {
+        try {
+            FileLock fileLock = lockChannel.lock();
+            try {
+                List<Path> segments = new ArrayList<>();
+                Map<Path,BasicFileAttributes> attributes = new HashMap<>();
+                long total = 0;
+                try (Stream<Path> paths = Files.walk(directory.resolve("segments"))) {
+                    for( Path path : (Iterable<Path>) paths::iterator ) {
+                        if( !path.toString().endsWith(".seg") ) continue;
+                        try {
+                            BasicFileAttributes basicFileAttributes = Files.readAttributes(path, BasicFileAttributes.class);
+                            attributes.put(path, basicFileAttributes);
+                            segments.add(path);
+                            total += basicFileAttributes.size();
+                        } catch (IOException ignored) { /* removed by another run */ }
+                    }
+                }
+                segments.sort(Comparator.comparing(path -> attributes.get(path).lastModifiedTime()));
+                long target = maxBytes * 9 / 10;
+                int removed = 0;
+                for( Path path : segments ) {
+                    if( total <= target ) break;
+                    try {
+                        Files.deleteIfExists(path);
+                        total -= attributes.get(path).size();
+                        removed++;
+                    } catch (IOException e) {
+                        logger.debug("Could not evict %s, it may be in use, Exception: %s", path, e.getMessage());
+                    }
+                }
+                approximateBytes = total;
+                logger.debug("Evicted %d cache segments, cache now holds %d bytes", removed, total);
+            } finally {
+                fileLock.release();
+            }
+        } catch (IOException e) {
+            logger.warn("Error evicting cache segments Exception: %s", e.getMessage());
+        }
+    }
+
+    private long scanSize() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory.resolve("segments"))) {
+            return paths.filter(path -> path.toString().endsWith(".seg")).mapToLong(path -> {
+                try {
+                    return Files.size(path);
+                } catch (IOException e) {
+                    return 0;
+                }
+            }).sum();
+        }
+    }
+
+    private static String getKey( String controller, String application, String metricPath, String baseline, long bucketStart ) {
+        return String.format("%s|%s|%s|%s|%d", controller, application, metricPath, baseline == null ? "" : baseline, bucketStart);
+    }
+
+    private Path getPath( String key ) {
+        String hash = sha1(key);
+        return directory.resolve("segments").resolve(hash.substring(0, 2)).resolve(hash + ".seg");
+    }
+
+    private static String sha1( String key ) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for( byte b : digest ) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    private static byte[] writeSegment( String key, long bucketStart, long bucketEnd, List<SegmentEntry> entries ) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, key);
+        out.writeLong(bucketStart);
+        out.writeLong(bucketEnd);
+        out.writeInt(entries.size());
+        for( SegmentEntry entry : entries ) {
+            out.writeLong(entry.metricId);
+            writeString(out, entry.metricName);
+            writeString(out, entry.metricPath);
+            writeString(out, entry.frequency);
+            out.writeInt(entry.granularityMinutes);
+            byte[] encoded = SeriesCodec.encode(entry.series);
+            out.writeInt(entry.series.size());
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+        out.flush();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private static List<SegmentEntry> readSegment( ByteBuffer buffer, String key ) {
+        if( buffer.getInt() != MAGIC || buffer.getInt() != VERSION ) return null;
+        if( !key.equals(readString(buffer)) ) return null; //hash collision or a foreign file
+        buffer.getLong(); //bucketStart
+        buffer.getLong(); //bucketEnd
+        int count = buffer.getInt();
+        List<SegmentEntry> entries = new ArrayList<>(count);
+        for( int i=0; i < count; i++ ) {
+            SegmentEntry entry = new SegmentEntry();
+            entry.metricId = buffer.getLong();
+            entry.metricName = readString(buffer);
+            entry.metricPath = readString(buffer);
+            entry.frequency = readString(buffer);
+            entry.granularityMinutes = buffer.getInt();
+            int size = buffer.getInt();
+            int length = buffer.getInt();
+            entry.series = SeriesCodec.decode(buffer, buffer.position(), size);
+            buffer.position(buffer.position() + length);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static void writeString( DataOutputStream out, String s ) throws IOException {
+        if( s == null ) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString( ByteBuffer buffer ) {
+        int length = buffer.getInt();
+        if( length < 0 ) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -4,13 +4,32 @@ import java.io.IOException;
 
 public class ControllerBadStatusException extends IOException {
     public String urlRequestString, responseJSON;
+    public int statusCode = -1;
+    public long retryAfterMillis = -1; //from the Retry-After header, -1 if the controller did not send one
+
     public ControllerBadStatusException( String message, String json, String url) {
         super(message);
         this.responseJSON = json;
         this.urlRequestString = url;
     }
 
+    public ControllerBadStatusException( int statusCode, long retryAfterMillis, String message, String json, String url) {
+        this(message, json, url);
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
     public void setURL(String uri) {
         this.urlRequestString=uri;
     }
+
+    //the controller is shedding load, back off and send less
+    public boolean isOverload() {
+        return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    //other client errors will fail the same way again, 401 is retried with a new token
+    public boolean isRetryable() {
+        return statusCode < 400 || statusCode == 401 || statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
 }
@@ -0,0 +1,119 @@
+package com.cisco.josouthe.extract;
+
+import com.cisco.josouthe.metric.BaselineData;
+import com.cisco.josouthe.output.OutputPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+stays resident and polls the controller, keeping a high water mark per metric so each poll only asks for the minutes
+after the last one polled, up to the last complete minute. the controller, its token and model are reused
+ */
+public class FollowPoller {
+    private static final Logger logger = LogManager.getFormatterLogger(FollowPoller.class);
+    private static final long MINUTE = 60000;
+
+    private ParallelMetricExtractor extractor;
+    private OutputPrinter outputPrinter;
+    private String application, baselineName;
+    private List<String> metricNames;
+    private long intervalMillis;
+    private Map<String,Long> highWaterMarks = new HashMap<>();
+    private volatile boolean running = true;
+    private volatile Thread pollingThread;
+    private CountDownLatch finished = new CountDownLatch(1);
+
+    public FollowPoller( ParallelMetricExtractor extractor, OutputPrinter outputPrinter, String application, List<String> metricNames, String baselineName, long intervalMillis ) {
+        this.extractor = extractor;
+        this.outputPrinter = outputPrinter;
+        this.application = application;
+        this.metricNames = metricNames;
+        this.baselineName = baselineName;
+        if( intervalMillis < MINUTE/4 ) {
+            logger.warn("Follow interval of %d seconds is below the minimum, polling every %d seconds instead", intervalMillis/1000, MINUTE/4000);
+            intervalMillis = MINUTE/4;
+        }
+        this.intervalMillis = intervalMillis;
+    }
+
+    //blocks until stop is called, the first poll covers from initialStartTimestamp
+    public void run( long initialStartTimestamp ) throws IOException {
+        pollingThread = Thread.currentThread();
+        try {
+            while( running ) {
+                long pollStarted = System.currentTimeMillis();
+                poll(initialStartTimestamp);
+                long sleepMillis = intervalMillis - (System.currentTimeMillis() - pollStarted);
+                if( running && sleepMillis > 0 ) {
+                    try {
+                        Thread.sleep(sleepMillis);
+                    } catch (InterruptedException interruptedException) {
+                        if( !running ) break;
+                    }
+                }
+            }
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    public long getIntervalMillis() { return intervalMillis; }
+
+    public void stop() {
+        running = false;
+        Thread thread = pollingThread;
+        if( thread != null ) thread.interrupt();
+    }
+
+    public boolean awaitFinished( long timeoutMillis ) throws InterruptedException {
+        return finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll( long initialStartTimestamp ) throws IOException {
+        long currentMinute = (System.currentTimeMillis() / MINUTE) * MINUTE; //values at or after this minute are still incomplete
+        List<String> pollMetricNames = new ArrayList<>();
+        List<long[]> ranges = new ArrayList<>();
+        for( String metricName : metricNames ) {
+            Long highWaterMark = highWaterMarks.get(metricName);
+            long start = highWaterMark == null ? initialStartTimestamp : highWaterMark + MINUTE;
+            if( start >= currentMinute ) continue;
+            pollMetricNames.add(metricName);
+            ranges.add(new long[]{ start, currentMinute - 1 });
+        }
+        if( pollMetricNames.isEmpty() ) return;
+        long valuesWritten = 0;
+        List<MetricExtractResult> results = extractor.extract(application, pollMetricNames, baselineName, ranges);
+        synchronized (outputPrinter) { //pollers of other controllers may share the printer
+            for( MetricExtractResult result : results ) {
+                if( !result.hasData() ) {
+                    //the controller had nothing for these minutes, they are not asked for again. a failed request is retried next poll
+                    if( result.fetched ) highWaterMarks.put(result.metricName, currentMinute - MINUTE);
+                    continue;
+                }
+                Long highWaterMark = highWaterMarks.get(result.metricName);
+                long after = highWaterMark == null ? Long.MIN_VALUE : highWaterMark;
+                result.metricData.setMetricSeries(result.metricData.getMetricSeries().sortedByTimestamp().slice(after + 1, currentMinute - 1));
+                if( result.metricData.getMetricSeries().isEmpty() ) {
+                    highWaterMarks.put(result.metricName, currentMinute - MINUTE);
+                    continue;
+                }
+                BaselineData baselineData = result.getBaselineData();
+                if( baselineData != null )
+                    baselineData.setTimesliceSeries(baselineData.getTimesliceSeries().slice(after + 1, currentMinute - 1));
+                outputPrinter.printSeries(result.metricData, baselineData);
+                highWaterMarks.put(result.metricName, currentMinute - MINUTE); //the whole polled range is done, not just up to the last value
+                valuesWritten += result.metricData.getMetricSeries().size();
+            }
+            outputPrinter.flush();
+        }
+        logger.debug("Follow poll wrote %d new values for %d metrics", valuesWritten, pollMetricNames.size());
+    }
+}
@@ -0,0 +1,27 @@
+package com.cisco.josouthe.extract;
+
+import com.cisco.josouthe.metric.BaselineData;
+import com.cisco.josouthe.metric.MetricData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MetricExtractResult {
+    public String metricName;
+    public MetricData metricData;
+    public boolean fetched = false; //the controller answered, even if there was no data in the range
+    public List<BaselineData> baselineData = new ArrayList<>();
+
+    public MetricExtractResult( String metricName ) {
+        this.metricName = metricName;
+    }
+
+    public boolean hasData() {
+        return metricData != null && metricData.metricValues != null && !metricData.metricValues.isEmpty();
+    }
+
+    public BaselineData getBaselineData() {
+        if( baselineData == null || baselineData.isEmpty() ) return null;
+        return baselineData.get(0);
+    }
+}
@@ -0,0 +1,124 @@
+package com.cisco.josouthe.extract;
+
+import com.cisco.josouthe.Controller;
+import com.cisco.josouthe.cache.MetricPathIndex;
+import com.cisco.josouthe.model.TreeNode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+walks the metric browser tree of an application, one task per folder on a work stealing pool so wide and deep
+branches balance across the threads. requests still pass through the controller's concurrency limiter, so the pool
+size is only an upper bound on what one crawl asks of the controller
+ */
+public class MetricTreeCrawler {
+    private static final Logger logger = LogManager.getFormatterLogger(MetricTreeCrawler.class);
+
+    private Controller controller;
+    private int parallelism;
+    private Path indexDirectory;
+    private long indexTtlMillis;
+
+    public MetricTreeCrawler( Controller controller, int parallelism, Path indexDirectory, long indexTtlMillis ) {
+        this.controller = controller;
+        this.parallelism = Math.max(1, parallelism);
+        this.indexDirectory = indexDirectory;
+        this.indexTtlMillis = indexTtlMillis;
+    }
+
+    //the saved index while it is within the ttl, otherwise a fresh crawl, which is saved if it completed
+    public MetricPathIndex getIndex( String application, boolean refresh ) {
+        Path path = indexDirectory == null ? null : MetricPathIndex.getPath(indexDirectory, controller.hostname, application);
+        if( path != null && !refresh ) {
+            MetricPathIndex metricPathIndex = MetricPathIndex.read(path, application);
+            if( metricPathIndex != null && !metricPathIndex.isExpired(indexTtlMillis) ) {
+                logger.debug("Using metric path index %s with %d paths", path, metricPathIndex.size());
+                return metricPathIndex;
+            }
+        }
+        AtomicInteger failedFolders = new AtomicInteger();
+        MetricPathIndex metricPathIndex = crawl(application, failedFolders);
+        if( failedFolders.get() > 0 ) {
+            logger.warn("%d folders of %s could not be listed, the metric path index is incomplete and will not be saved", failedFolders.get(), application);
+        } else if( path != null ) {
+            metricPathIndex.write(path);
+        }
+        return metricPathIndex;
+    }
+
+    public MetricPathIndex crawl( String application, AtomicInteger failedFolders ) {
+        long started = System.currentTimeMillis();
+        AtomicInteger folders = new AtomicInteger();
+        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        try {
+            List<String> paths = forkJoinPool.invoke(new FolderTask(application, "", folders, failedFolders));
+            logger.info("Crawled %d folders of %s in %dms, found %d metrics", folders.get(), application, System.currentTimeMillis() - started, paths.size());
+            return new MetricPathIndex(application, paths, started);
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    //expands each glob against the index, plain metric names are passed through untouched
+    public List<String> expand( String application, List<String> metricNames, boolean refresh ) {
+        boolean anyGlob = false;
+        for( String metricName : metricNames ) anyGlob |= MetricPathIndex.isGlob(metricName);
+        if( !anyGlob ) return metricNames;
+        MetricPathIndex metricPathIndex = getIndex(application, refresh);
+        LinkedHashSet<String> expanded = new LinkedHashSet<>();
+        for( String metricName : metricNames ) {
+            if( !MetricPathIndex.isGlob(metricName) ) {
+                expanded.add(metricName);
+                continue;
+            }
+            List<String> matches = metricPathIndex.match(metricName);
+            if( matches.isEmpty() ) logger.warn("No metrics in %s match '%s'", application, metricName);
+            logger.debug("'%s' matched %d metrics", metricName, matches.size());
+            expanded.addAll(matches);
+        }
+        return new ArrayList<>(expanded);
+    }
+
+    private class FolderTask extends RecursiveTask<List<String>> {
+        private static final long serialVersionUID = 1L;
+        private String application, path;
+        private AtomicInteger folders, failedFolders;
+
+        FolderTask( String application, String path, AtomicInteger folders, AtomicInteger failedFolders ) {
+            this.application = application;
+            this.path = path;
+            this.folders = folders;
+            this.failedFolders = failedFolders;
+        }
+
+        @Override
+        protected List<String> compute() {
+            folders.incrementAndGet();
+            TreeNode[] treeNodes = controller.getApplicationMetricFolders(application, path);
+            List<String> paths = new ArrayList<>();
+            if( treeNodes == null ) {
+                failedFolders.incrementAndGet();
+                return paths;
+            }
+            List<FolderTask> subFolders = new ArrayList<>();
+            for( TreeNode treeNode : treeNodes ) {
+                String childPath = path.isEmpty() ? treeNode.name : path +"|"+ treeNode.name;
+                if( treeNode.isFolder() ) {
+                    FolderTask subFolder = new FolderTask(application, childPath, folders, failedFolders);
+                    subFolder.fork();
+                    subFolders.add(subFolder);
+                } else {
+                    paths.add(childPath);
+                }
+            }
+            for( FolderTask subFolder : subFolders ) paths.addAll(subFolder.join());
+            return paths;
+        }
+    }
+}
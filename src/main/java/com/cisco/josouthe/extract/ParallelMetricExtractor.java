@@ -0,0 +1,182 @@
+package com.cisco.josouthe.extract;
+
+import com.cisco.josouthe.Controller;
+import com.cisco.josouthe.metric.BaselineData;
+import com.cisco.josouthe.metric.MetricData;
+import com.cisco.josouthe.metric.ResolutionPlan;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelMetricExtractor {
+    private static final Logger logger = LogManager.getFormatterLogger(ParallelMetricExtractor.class);
+
+    private Controller controller;
+    private int parallelism, targetPoints = 0;
+    private ExecutorService executorService = null, baselineExecutorService = null;
+
+    public ParallelMetricExtractor( Controller controller, int parallelism ) {
+        this.controller = controller;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    //about how many values each series is shown as, a resolution plan per time range fetches no finer than needed, 0 fetches raw
+    public void setTargetPoints( int targetPoints ) {
+        this.targetPoints = Math.max(0, targetPoints);
+    }
+
+    public List<MetricExtractResult> extract( String application, List<String> metricNames, String baselineName, long startTimestamp, long endTimestamp ) {
+        List<long[]> ranges = new ArrayList<>();
+        for( int i=0; i < metricNames.size(); i++ ) ranges.add(new long[]{ startTimestamp, endTimestamp });
+        return extract(application, metricNames, baselineName, ranges);
+    }
+
+    //each metric with its own time range, the worker threads are kept for the next call until shutdown.
+    //baselines are fetched in batches per time range, early for metrics whose id is known from an earlier run
+    public List<MetricExtractResult> extract( String application, List<String> metricNames, String baselineName, List<long[]> ranges ) {
+        List<MetricExtractResult> results = new ArrayList<>();
+        long appId = controller.getApplicationId(application);
+        logger.debug("appid: %d", appId);
+        Map<String,List<Integer>> indexesByRange = new LinkedHashMap<>();
+        for( int i=0; i < metricNames.size(); i++ )
+            indexesByRange.computeIfAbsent(ranges.get(i)[0] +"-"+ ranges.get(i)[1], k -> new ArrayList<>()).add(i);
+        for( List<Integer> indexes : indexesByRange.values() ) {
+            long[] range = ranges.get(indexes.get(0));
+            logger.debug("%d metrics from %d to %d fetched at %s", indexes.size(), range[0], range[1], ResolutionPlan.plan(range[0], range[1], targetPoints));
+        }
+        Map<String,MetricData> knownMetrics = new HashMap<>();
+        Map<String,CompletableFuture<Map<Long,List<BaselineData>>>> earlyBaselines = new HashMap<>();
+        if( baselineName != null ) {
+            for( Map.Entry<String,List<Integer>> entry : indexesByRange.entrySet() ) {
+                List<MetricData> known = new ArrayList<>();
+                for( int i : entry.getValue() ) {
+                    MetricData knownMetric = controller.getKnownMetric(application, metricNames.get(i));
+                    if( knownMetric == null ) continue;
+                    knownMetrics.put(metricNames.get(i), knownMetric);
+                    known.add(knownMetric);
+                }
+                if( known.isEmpty() ) continue;
+                long[] range = ranges.get(entry.getValue().get(0));
+                int granularityMinutes = ResolutionPlan.plan(range[0], range[1], targetPoints).baselineGranularityMinutes;
+                earlyBaselines.put(entry.getKey(), CompletableFuture.supplyAsync(
+                        () -> controller.getBaselineValues(known, baselineName, application, appId, range[0], range[1], granularityMinutes), getBaselineExecutorService()));
+            }
+        }
+        ExecutorService executorService = getExecutorService();
+        List<Future<MetricExtractResult>> futures = new ArrayList<>();
+        for( int i=0; i < metricNames.size(); i++ ) {
+            String metricName = metricNames.get(i);
+            long[] range = ranges.get(i);
+            ResolutionPlan resolutionPlan = ResolutionPlan.plan(range[0], range[1], targetPoints);
+            futures.add( executorService.submit(() -> extract(application, metricName, range[0], range[1], resolutionPlan)) );
+        }
+        for( int i=0; i < futures.size(); i++ ) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException executionException) {
+                logger.warn("Error extracting metric '%s' Exception: %s", metricNames.get(i), executionException.getCause().toString());
+                results.add(new MetricExtractResult(metricNames.get(i)));
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                for( CompletableFuture<?> earlyBaseline : earlyBaselines.values() ) earlyBaseline.cancel(false);
+                return results;
+            }
+        }
+        if( baselineName != null ) {
+            for( Map.Entry<String,List<Integer>> entry : indexesByRange.entrySet() )
+                addBaselines(application, appId, baselineName, ranges.get(entry.getValue().get(0)), entry.getValue(), results, knownMetrics, earlyBaselines.get(entry.getKey()));
+        }
+        controller.flushMetadata();
+        return results;
+    }
+
+    //uses the early baseline of each metric whose id did not change, everything else is fetched again in one batch
+    private void addBaselines( String application, long appId, String baselineName, long[] range, List<Integer> indexes, List<MetricExtractResult> results,
+                               Map<String,MetricData> knownMetrics, CompletableFuture<Map<Long,List<BaselineData>>> earlyBaseline ) {
+        Map<Long,List<BaselineData>> early = null;
+        if( earlyBaseline != null ) {
+            try {
+                early = earlyBaseline.join();
+            } catch (CompletionException completionException) {
+                logger.debug("Early baseline fetch for %s failed, fetching it again, Exception: %s", application, completionException.getCause().toString());
+            }
+        }
+        List<MetricExtractResult> missing = new ArrayList<>();
+        for( int i : indexes ) {
+            MetricExtractResult result = results.get(i);
+            if( result.metricData == null ) continue;
+            MetricData knownMetric = knownMetrics.get(result.metricName);
+            if( early != null && knownMetric != null && knownMetric.metricId == result.metricData.metricId && early.containsKey(knownMetric.metricId) ) {
+                result.baselineData = early.get(knownMetric.metricId);
+                continue;
+            }
+            if( knownMetric != null && knownMetric.metricId != result.metricData.metricId )
+                logger.debug("Metric id of '%s' changed from %d to %d, fetching its baseline again", result.metricName, knownMetric.metricId, result.metricData.metricId);
+            missing.add(result);
+        }
+        if( missing.isEmpty() ) return;
+        List<MetricData> metrics = new ArrayList<>();
+        for( MetricExtractResult result : missing ) metrics.add(result.metricData);
+        Map<Long,List<BaselineData>> baselines = controller.getBaselineValues(metrics, baselineName, application, appId, range[0], range[1],
+                ResolutionPlan.plan(range[0], range[1], targetPoints).baselineGranularityMinutes);
+        if( baselines == null ) return;
+        for( MetricExtractResult result : missing ) {
+            List<BaselineData> baselineData = baselines.get(result.metricData.metricId);
+            if( baselineData == null ) continue;
+            logger.debug("baseline data for '%s': %d", result.metricName, baselineData.size());
+            result.baselineData = baselineData;
+        }
+    }
+
+    public synchronized void shutdown() {
+        if( executorService != null ) executorService.shutdownNow();
+        if( baselineExecutorService != null ) baselineExecutorService.shutdownNow();
+        executorService = null;
+        baselineExecutorService = null;
+    }
+
+    private synchronized ExecutorService getExecutorService() {
+        if( executorService == null ) executorService = Executors.newFixedThreadPool(parallelism, getThreadFactory("MetricExtractor"));
+        return executorService;
+    }
+
+    private synchronized ExecutorService getBaselineExecutorService() {
+        if( baselineExecutorService == null ) baselineExecutorService = Executors.newFixedThreadPool(parallelism, getThreadFactory("BaselineExtractor"));
+        return baselineExecutorService;
+    }
+
+    private MetricExtractResult extract( String application, String metricName, long startTimestamp, long endTimestamp, ResolutionPlan resolutionPlan ) {
+        MetricExtractResult result = new MetricExtractResult(metricName);
+        MetricData[] data = controller.getMetricValue(application, metricName, startTimestamp, endTimestamp, resolutionPlan);
+        result.fetched = data != null;
+        if( data == null || data.length == 0 ) {
+            logger.warn("No metric data returned for '%s'[%s]", application, metricName);
+            return result;
+        }
+        logger.debug("metric data for '%s': %d", metricName, data.length);
+        result.metricData = data[0];
+        return result;
+    }
+
+    private static ThreadFactory getThreadFactory( String name ) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name +"-"+ counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,114 @@
+package com.cisco.josouthe.extract;
+
+import com.cisco.josouthe.Controller;
+import com.cisco.josouthe.metric.MetricTotals;
+import com.cisco.josouthe.model.Application;
+import com.cisco.josouthe.model.Model;
+import com.cisco.josouthe.model.Tier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+sample sizes for every tier of every application, tiers are fetched concurrently and each response is summed while it
+is decoded. with rollup the controller returns one value per tier covering the whole range, whose sum and count are
+the totals of the per minute values and counts
+ */
+public class SampleSizeCalculator {
+    private static final Logger logger = LogManager.getFormatterLogger(SampleSizeCalculator.class);
+
+    private Controller controller;
+    private int parallelism;
+
+    public SampleSizeCalculator( Controller controller, int parallelism ) {
+        this.controller = controller;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public SampleSizeReport calculate( double z, double e, long startTimestamp, long endTimestamp, boolean rollup ) {
+        long started = System.currentTimeMillis();
+        SampleSizeReport report = new SampleSizeReport();
+        report.controller = controller.hostname;
+        report.z = z;
+        report.e = e;
+        report.startTimestamp = startTimestamp;
+        report.endTimestamp = endTimestamp;
+        report.rollup = rollup;
+        Model model = controller.getModel();
+        if( model == null ) {
+            logger.warn("Could not load the application model of %s, no sample sizes calculated", controller.hostname);
+            return report;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "SampleSize-"+ counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<SampleSizeReport.TierSampleSize> tiers = new ArrayList<>();
+            List<Future<MetricTotals>> futures = new ArrayList<>();
+            for( Application application : model.getApplications() ) {
+                if( application.tiers == null ) continue;
+                for( Tier tier : application.tiers ) {
+                    SampleSizeReport.TierSampleSize tierSampleSize = new SampleSizeReport.TierSampleSize();
+                    tierSampleSize.application = application.name;
+                    tierSampleSize.tier = tier.name;
+                    tierSampleSize.numberOfNodes = tier.numberOfNodes;
+                    tiers.add(tierSampleSize);
+                    //Overall Application Performance|{Tier}|Calls per Minute
+                    String metricName = String.format("Overall Application Performance|%s|Calls per Minute", tier.name);
+                    futures.add(executorService.submit(() -> controller.getMetricTotals(application.name, metricName, startTimestamp, endTimestamp, rollup)));
+                }
+            }
+            logger.debug("Calculating sample sizes for %d tiers with %d threads", tiers.size(), parallelism);
+            for( int i=0; i < tiers.size(); i++ ) {
+                MetricTotals totals = null;
+                try {
+                    totals = futures.get(i).get();
+                } catch (ExecutionException executionException) {
+                    logger.warn("Error getting calls per minute of App: %s Tier: %s Exception: %s", tiers.get(i).application, tiers.get(i).tier, executionException.getCause().toString());
+                }
+                calculate(tiers.get(i), totals, z, e, rollup);
+                report.tiers.add(tiers.get(i));
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executorService.shutdownNow();
+        }
+        report.elapsedMillis = System.currentTimeMillis() - started;
+        logger.info("Sample sizes for %d tiers in %dms, %d without enough data, %d failed", report.tiers.size(), report.elapsedMillis,
+                report.count(SampleSizeReport.Status.NOT_ENOUGH_DATA), report.count(SampleSizeReport.Status.FAILED));
+        return report;
+    }
+
+    private void calculate( SampleSizeReport.TierSampleSize tier, MetricTotals totals, double z, double e, boolean rollup ) {
+        if( totals == null ) {
+            tier.status = SampleSizeReport.Status.FAILED;
+            return;
+        }
+        tier.totalValue = rollup ? totals.getTotalSum() : totals.getTotalValue();
+        tier.totalCount = totals.getTotalCount();
+        if( tier.totalValue == 0.0 || tier.totalCount == 0.0 ) {
+            logger.warn("NOT ENOUGH DATA TO CALCULATE FOR App: %s Tier: %s Nodes: %d", tier.application, tier.tier, tier.numberOfNodes);
+            tier.status = SampleSizeReport.Status.NOT_ENOUGH_DATA;
+            return;
+        }
+        tier.p = tier.totalValue / tier.totalCount;
+        // Calculate sample size using Cochran's formula, rounded up since we can't have a fraction of a sample
+        tier.sampleSize = (int) Math.ceil((Math.pow(z, 2) * tier.p * (1 - tier.p)) / Math.pow(e, 2));
+        tier.percentOfNodes = tier.numberOfNodes == 0 ? 0 : Math.ceil(tier.sampleSize * 100.0 / tier.numberOfNodes);
+        tier.status = SampleSizeReport.Status.OK;
+        logger.debug("App: %s Tier: %s Nodes: %d formula totalValue=%.2f totalCount=%.2f p=%.2f Z=%.2f E=%.2f",
+                tier.application, tier.tier, tier.numberOfNodes, tier.totalValue, tier.totalCount, tier.p, z, e);
+        logger.info("Application %s Tier %s Recommended Sample Size: %d of %d which is %.0f%%", tier.application, tier.tier, tier.sampleSize, tier.numberOfNodes, tier.percentOfNodes);
+    }
+}
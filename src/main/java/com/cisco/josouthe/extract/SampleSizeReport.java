@@ -0,0 +1,42 @@
+package com.cisco.josouthe.extract;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+recommended sample size of every tier, by Cochran's formula over the tier's calls per minute
+ */
+public class SampleSizeReport {
+    public enum Status { OK, NOT_ENOUGH_DATA, FAILED }
+
+    public static class TierSampleSize {
+        public String application, tier;
+        public int numberOfNodes;
+        public Status status;
+        public double totalValue, totalCount, p;
+        public int sampleSize;
+        public double percentOfNodes;
+    }
+
+    public String controller;
+    public double z, e;
+    public long startTimestamp, endTimestamp;
+    public boolean rollup;
+    public long elapsedMillis;
+    public List<TierSampleSize> tiers = new ArrayList<>();
+
+    public int count( Status status ) {
+        int count = 0;
+        for( TierSampleSize tier : tiers )
+            if( tier.status == status ) count++;
+        return count;
+    }
+
+    public String toJson() {
+        Gson gson = new GsonBuilder().setPrettyPrinting().serializeSpecialFloatingPointValues().create();
+        return gson.toJson(this);
+    }
+}
@@ -0,0 +1,126 @@
+package com.cisco.josouthe.http;
+
+import com.cisco.josouthe.exceptions.ControllerBadStatusException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/*
+limits the requests in flight to one controller, shared by the blocking and async request paths. the limit adapts
+AIMD style: every on time success raises it by 1/limit, about one per round trip, overload responses (429, 502-504) cut it
+by 30%, at most once per smoothed round trip so one burst of rejections counts once. successes much slower than
+the smoothed latency hold the limit where it is. blocking callers wait in acquire(), async requests wait in a queue
+ */
+public class ConcurrencyLimiter {
+    private static final Logger logger = LogManager.getFormatterLogger(ConcurrencyLimiter.class);
+    private static final double DECREASE_FACTOR = 0.7, SLOW_FACTOR = 2.0, LATENCY_SMOOTHING = 0.1;
+
+    public enum Outcome { SUCCESS, OVERLOAD, FAILURE }
+
+    private String name;
+    private int minLimit, maxLimit, inFlight = 0;
+    private double limit;
+    private double smoothedLatencyMillis = -1;
+    private long lastDecreaseTimestamp = 0;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+
+    public ConcurrencyLimiter( String name, int initialLimit, int maxLimit ) {
+        this.name = name;
+        this.minLimit = 1;
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.max(minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    public synchronized int getLimit() { return (int) limit; }
+    public synchronized int getMaxLimit() { return maxLimit; }
+    public synchronized int getInFlight() { return inFlight; }
+    public synchronized int getWaiting() { return waiting.size(); }
+
+    //blocks until a request may start, returns the start time to hand back to release
+    public long acquire() throws InterruptedException {
+        synchronized (this) {
+            while( inFlight >= (int) limit ) wait();
+            inFlight++;
+        }
+        return System.nanoTime();
+    }
+
+    public void release( long startNanos, Outcome outcome ) {
+        long latencyMillis = (System.nanoTime() - startNanos) / 1000000;
+        Runnable next = null;
+        synchronized (this) {
+            inFlight--;
+            adjust(latencyMillis, outcome);
+            if( inFlight < (int) limit ) {
+                next = waiting.poll();
+                if( next != null ) inFlight++;
+            }
+            notifyAll();
+        }
+        //started off the completing thread, it may be the client's io thread
+        if( next != null ) CompletableFuture.runAsync(next);
+    }
+
+    public <T> CompletableFuture<T> submit( Supplier<CompletableFuture<T>> request ) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            long startNanos = System.nanoTime();
+            CompletableFuture<T> future;
+            try {
+                future = request.get();
+            } catch (RuntimeException exception) {
+                future = CompletableFuture.failedFuture(exception);
+            }
+            future.whenComplete((value, throwable) -> {
+                release(startNanos, outcomeOf(throwable));
+                if( throwable != null ) {
+                    result.completeExceptionally(throwable);
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+        synchronized (this) {
+            if( inFlight >= (int) limit ) {
+                waiting.add(start);
+                return result;
+            }
+            inFlight++;
+        }
+        start.run();
+        return result;
+    }
+
+    public static Outcome outcomeOf( Throwable throwable ) {
+        if( throwable == null ) return Outcome.SUCCESS;
+        Throwable cause = RetryPolicy.unwrap(throwable);
+        if( cause instanceof ControllerBadStatusException && ((ControllerBadStatusException) cause).isOverload() ) return Outcome.OVERLOAD;
+        return Outcome.FAILURE;
+    }
+
+    private void adjust( long latencyMillis, Outcome outcome ) {
+        double previousLimit = limit;
+        switch (outcome) {
+            case SUCCESS: {
+                boolean slow = smoothedLatencyMillis > 0 && latencyMillis > smoothedLatencyMillis * SLOW_FACTOR;
+                smoothedLatencyMillis = smoothedLatencyMillis < 0 ? latencyMillis : smoothedLatencyMillis + LATENCY_SMOOTHING * (latencyMillis - smoothedLatencyMillis);
+                if( !slow && inFlight + 1 >= (int) limit ) limit = Math.min(maxLimit, limit + 1.0 / limit); //only grow when the limit is what holds us back
+                break;
+            }
+            case OVERLOAD: {
+                long now = System.currentTimeMillis();
+                if( now - lastDecreaseTimestamp < Math.max(smoothedLatencyMillis, 0) ) break;
+                lastDecreaseTimestamp = now;
+                limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+                break;
+            }
+            default: break; //network errors and client errors say nothing about load
+        }
+        if( (int) limit != (int) previousLimit )
+            logger.debug("Concurrency limit for %s now %d, in flight %d, smoothed latency %.0fms", name, (int) limit, inFlight, smoothedLatencyMillis);
+    }
+}
@@ -0,0 +1,38 @@
+package com.cisco.josouthe.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+//counts the bytes read from a response body as the handler streams it
+public class CountingHttpEntity extends HttpEntityWrapper {
+    private LongAdder bytes;
+
+    public CountingHttpEntity( HttpEntity entity, LongAdder bytes ) {
+        super(entity);
+        this.bytes = bytes;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return new FilterInputStream(super.getContent()) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if( b >= 0 ) bytes.increment();
+                return b;
+            }
+
+            @Override
+            public int read( byte[] buffer, int offset, int length ) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if( read > 0 ) bytes.add(read);
+                return read;
+            }
+        };
+    }
+}
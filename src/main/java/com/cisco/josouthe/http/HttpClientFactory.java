@@ -12,12 +12,31 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.ProxyAuthenticationStrategy;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.util.EntityUtils;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.config.Http1Config;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.http.ssl.TLS;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.client5.http.config.TlsConfig;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -25,61 +44,194 @@ import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSession;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class HttpClientFactory {
     private static final Logger logger = LogManager.getFormatterLogger(HttpClientFactory.class);
     private static HttpClient httpClient = null;
+    private static CloseableHttpAsyncClient httpAsyncClient = null;
+    private static PoolingAsyncClientConnectionManager asyncConnectionManager = null;
+    private static int asyncConnectionsPerRoute = 2;
+    private static int maxConnectionsPerRoute = 2, maxConnectionsTotal = 20; //PoolingHttpClientConnectionManager defaults
+
+    public static synchronized void setConnectionLimits( int perRoute, int total ) {
+        if( perRoute < 1 ) perRoute = 1;
+        if( total < perRoute ) total = perRoute;
+        if( perRoute == maxConnectionsPerRoute && total == maxConnectionsTotal ) return;
+        logger.debug("Setting connection limits, per route: %d total: %d", perRoute, total);
+        maxConnectionsPerRoute = perRoute;
+        maxConnectionsTotal = total;
+        httpClient = null; //rebuild on next request with the new limits
+        if( httpAsyncClient != null ) {
+            httpAsyncClient.close(CloseMode.GRACEFUL);
+            httpAsyncClient = null;
+            asyncConnectionManager = null;
+        }
+    }
 
     public static HttpClient getHttpClient() {
         return getHttpClient(false);
     }
 
-    public static HttpClient getHttpClient( boolean forceRebuild ) {
+    public static synchronized HttpClient getHttpClient( boolean forceRebuild ) {
         if( httpClient == null || forceRebuild == true ) {
             logger.debug("Creating new HttpClient instance, forceRebuild=%s",forceRebuild);
-            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(20, TimeUnit.MINUTES);
-            connectionManager.setValidateAfterInactivity(1000);
-            HttpClientBuilder httpClientBuilder = HttpClientBuilder
-                .create()
-                .useSystemProperties()
-                .setConnectionManager(connectionManager)
-                .setConnectionManagerShared(true);
-            if( isProxyHostDefined() ) {
-                logger.debug("Proxy host is defined, setting proxy to: %s:%s",System.getProperty("http.proxyHost"),System.getProperty("http.proxyPort") );
-                HttpHost proxyHost = new HttpHost( System.getProperty("http.proxyHost"), Integer.parseInt(System.getProperty("http.proxyPort")));
-                httpClientBuilder.setProxy(proxyHost);
-                if( isProxyAuthDefined() ) {
-                    CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-                    Credentials credentials = null;
-                    if( isProxyNTLMDefined() ) {
-                        logger.debug("Using NTLM Proxy Authentication, user=%s, pass=****, workstation=%s, domain=%s",System.getProperty("http.proxyUser"), System.getProperty("http.proxyWorkstation"), System.getProperty("http.proxyDomain"));
-                        credentials = new NTCredentials(System.getProperty("http.proxyUser"), System.getProperty("http.proxyPassword"), System.getProperty("http.proxyWorkstation"), System.getProperty("http.proxyDomain"));
-                    } else {
-                        logger.debug("Using Basic Proxy Authentication, user=%s, pass=****",System.getProperty("http.proxyUser"));
-                        credentials = new UsernamePasswordCredentials( System.getProperty("http.proxyUser"), System.getProperty("http.proxyPassword") );
-                    }
-                    credentialsProvider.setCredentials( new AuthScope(proxyHost), credentials );
-                    httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
-                    httpClientBuilder.setProxyAuthenticationStrategy( new ProxyAuthenticationStrategy());
+            httpClient = newHttpClient();
+        }
+        return httpClient;
+    }
+
+    //a client with a connection pool of its own, not shared with getHttpClient callers
+    public static synchronized HttpClient newHttpClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(20, TimeUnit.MINUTES);
+        connectionManager.setValidateAfterInactivity(1000);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setMaxTotal(maxConnectionsTotal);
+        HttpClientBuilder httpClientBuilder = HttpClientBuilder
+            .create()
+            .useSystemProperties()
+            .setConnectionManager(connectionManager)
+            .setConnectionManagerShared(true);
+        if( isProxyHostDefined() ) {
+            logger.debug("Proxy host is defined, setting proxy to: %s:%s",System.getProperty("http.proxyHost"),System.getProperty("http.proxyPort") );
+            HttpHost proxyHost = new HttpHost( System.getProperty("http.proxyHost"), Integer.parseInt(System.getProperty("http.proxyPort")));
+            httpClientBuilder.setProxy(proxyHost);
+            if( isProxyAuthDefined() ) {
+                CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                Credentials credentials = null;
+                if( isProxyNTLMDefined() ) {
+                    logger.debug("Using NTLM Proxy Authentication, user=%s, pass=****, workstation=%s, domain=%s",System.getProperty("http.proxyUser"), System.getProperty("http.proxyWorkstation"), System.getProperty("http.proxyDomain"));
+                    credentials = new NTCredentials(System.getProperty("http.proxyUser"), System.getProperty("http.proxyPassword"), System.getProperty("http.proxyWorkstation"), System.getProperty("http.proxyDomain"));
+                } else {
+                    logger.debug("Using Basic Proxy Authentication, user=%s, pass=****",System.getProperty("http.proxyUser"));
+                    credentials = new UsernamePasswordCredentials( System.getProperty("http.proxyUser"), System.getProperty("http.proxyPassword") );
                 }
+                credentialsProvider.setCredentials( new AuthScope(proxyHost), credentials );
+                httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+                httpClientBuilder.setProxyAuthenticationStrategy( new ProxyAuthenticationStrategy());
+            }
+        }
+        if( isAcceptSelfSignedDefined() ) {
+            HostnameVerifier hv = new HostnameVerifier() { public boolean verify(String urlHostname, SSLSession session) { return true; }};
+            HttpsURLConnection.setDefaultHostnameVerifier(hv);
+            try {
+                SSLContextBuilder sslContextBuilder = new SSLContextBuilder();
+                sslContextBuilder.loadTrustMaterial(null, new TrustSelfSignedStrategy());
+                SSLConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(sslContextBuilder.build());
+                httpClientBuilder.setSSLSocketFactory(sslsf);
+            } catch (Exception exception) {
+                logger.warn("Exception raised trying to accept self signed keys, Exception: %s", exception.getMessage());
             }
+
+        }
+        return httpClientBuilder.build();
+    }
+
+    //HTTP/1.1 controllers need a connection per request in flight, only ever raised so it never drops requests already running
+    public static synchronized void ensureAsyncConnectionsPerRoute( int perRoute ) {
+        if( perRoute <= asyncConnectionsPerRoute ) return;
+        asyncConnectionsPerRoute = perRoute;
+        if( asyncConnectionManager != null ) {
+            asyncConnectionManager.setDefaultMaxPerRoute(perRoute);
+            asyncConnectionManager.setMaxTotal(Math.max(asyncConnectionManager.getMaxTotal(), perRoute));
+        }
+    }
+
+    //async client with the same proxy and certificate settings, https connections negotiate HTTP/2 and multiplex on one connection
+    public static synchronized CloseableHttpAsyncClient getHttpAsyncClient() {
+        if( httpAsyncClient == null ) {
+            logger.debug("Creating new HttpAsyncClient instance");
+            int perRoute = Math.max(maxConnectionsPerRoute, asyncConnectionsPerRoute);
+            PoolingAsyncClientConnectionManagerBuilder connectionManagerBuilder = PoolingAsyncClientConnectionManagerBuilder.create()
+                    .setMaxConnPerRoute(perRoute)
+                    .setMaxConnTotal(Math.max(maxConnectionsTotal, perRoute))
+                    .setDefaultTlsConfig(TlsConfig.custom().setVersionPolicy(HttpVersionPolicy.NEGOTIATE).build());
             if( isAcceptSelfSignedDefined() ) {
-                HostnameVerifier hv = new HostnameVerifier() { public boolean verify(String urlHostname, SSLSession session) { return true; }};
-                HttpsURLConnection.setDefaultHostnameVerifier(hv);
                 try {
-                    SSLContextBuilder sslContextBuilder = new SSLContextBuilder();
-                    sslContextBuilder.loadTrustMaterial(null, new TrustSelfSignedStrategy());
-                    SSLConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(sslContextBuilder.build());
-                    httpClientBuilder.setSSLSocketFactory(sslsf);
+                    TlsStrategy tlsStrategy = ClientTlsStrategyBuilder.create()
+                            .setSslContext(SSLContexts.custom().loadTrustMaterial(org.apache.hc.client5.http.ssl.TrustSelfSignedStrategy.INSTANCE).build())
+                            .setTlsVersions(TLS.V_1_3, TLS.V_1_2)
+                            .setHostnameVerifier(NoopHostnameVerifier.INSTANCE)
+                            .build();
+                    connectionManagerBuilder.setTlsStrategy(tlsStrategy);
                 } catch (Exception exception) {
                     logger.warn("Exception raised trying to accept self signed keys, Exception: %s", exception.getMessage());
                 }
+            }
+            HttpAsyncClientBuilder httpAsyncClientBuilder = HttpAsyncClients.custom()
+                    .useSystemProperties()
+                    .setHttp1Config(Http1Config.DEFAULT)
+                    .setConnectionManager(asyncConnectionManager = connectionManagerBuilder.build());
+            if( isProxyHostDefined() ) {
+                logger.debug("Proxy host is defined, setting async proxy to: %s:%s",System.getProperty("http.proxyHost"),System.getProperty("http.proxyPort") );
+                org.apache.hc.core5.http.HttpHost proxyHost = new org.apache.hc.core5.http.HttpHost(System.getProperty("http.proxyHost"), Integer.parseInt(System.getProperty("http.proxyPort")));
+                httpAsyncClientBuilder.setProxy(proxyHost);
+                if( isProxyAuthDefined() ) {
+                    org.apache.hc.client5.http.impl.auth.BasicCredentialsProvider credentialsProvider = new org.apache.hc.client5.http.impl.auth.BasicCredentialsProvider();
+                    org.apache.hc.client5.http.auth.Credentials credentials;
+                    char[] password = System.getProperty("http.proxyPassword").toCharArray();
+                    if( isProxyNTLMDefined() ) {
+                        credentials = new org.apache.hc.client5.http.auth.NTCredentials(System.getProperty("http.proxyUser"), password, System.getProperty("http.proxyWorkstation"), System.getProperty("http.proxyDomain"));
+                    } else {
+                        credentials = new org.apache.hc.client5.http.auth.UsernamePasswordCredentials(System.getProperty("http.proxyUser"), password);
+                    }
+                    credentialsProvider.setCredentials(new org.apache.hc.client5.http.auth.AuthScope(proxyHost), credentials);
+                    httpAsyncClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+                }
+            }
+            httpAsyncClient = httpAsyncClientBuilder.build();
+            httpAsyncClient.start();
+        }
+        return httpAsyncClient;
+    }
+
+    //the response consumer decides what the body becomes, a bad status completes the future with a ControllerBadStatusException
+    public static <T> CompletableFuture<T> executeAsync( AsyncRequestProducer requestProducer, AsyncResponseConsumer<T> responseConsumer ) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        getHttpAsyncClient().execute(requestProducer, responseConsumer, new FutureCallback<T>() {
+            @Override
+            public void completed( T result ) {
+                future.complete(result);
+            }
 
+            @Override
+            public void failed( Exception exception ) {
+                future.completeExceptionally(exception);
             }
-            httpClient = httpClientBuilder.build();
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    private static ControllerBadStatusException newBadStatusException( HttpResponse response, String uri ) throws IOException {
+        Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        return new ControllerBadStatusException(response.getStatusLine().getStatusCode(), parseRetryAfter(retryAfter == null ? null : retryAfter.getValue()),
+                response.getStatusLine().toString(), response.getEntity() == null ? null : EntityUtils.toString(response.getEntity()), uri);
+    }
+
+    //Retry-After is either delay seconds or an http date, returns -1 if missing or unparsable
+    public static long parseRetryAfter( String value ) {
+        if( value == null || value.trim().isEmpty() ) return -1;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException notSeconds) {
+            Date date = DateUtils.parseDate(value.trim());
+            if( date == null ) return -1;
+            return Math.max(0, date.getTime() - System.currentTimeMillis());
         }
-        return httpClient;
     }
 
     public static boolean isProxyHostDefined() {
@@ -129,10 +281,45 @@ public class HttpClientFactory {
                         throw new ClientProtocolException(ex);
                     }
                 } else {
-                    throw new ControllerBadStatusException(response.getStatusLine().toString(), EntityUtils.toString(response.getEntity()), uri);
+                    throw newBadStatusException(response, uri);
                 }
             }
 
         };
     }
+
+    public static <T> ResponseHandler<T> getStreamingResponseHandler( String wireToTrace, ResponseStreamHandler<T> streamHandler ) {
+        return getStreamingResponseHandler(logger.isTraceEnabled(), streamHandler);
+    }
+
+    //onHeaders runs on the client's io thread as soon as the status and headers are in, before any of the body
+    public static <T> AsyncResponseConsumer<T> getStreamingResponseConsumer( String wireToTrace, String uri, ResponseStreamHandler<T> streamHandler, Executor decodeExecutor, LongAdder bodyBytes, Runnable onHeaders ) {
+        return new StreamingResponseConsumer<>(uri, streamHandler, decodeExecutor, logger.isTraceEnabled(), bodyBytes, onHeaders);
+    }
+
+    //hands the entity content to the stream handler as it arrives, the response text is only built when tracing
+    public static <T> ResponseHandler<T> getStreamingResponseHandler( boolean enableWireTrace, ResponseStreamHandler<T> streamHandler ) {
+        return new ResponseHandler<T>() {
+            @Override
+            public T handleResponse( final HttpResponse response) throws IOException {
+                final int status = response.getStatusLine().getStatusCode();
+                if (status >= HttpStatus.SC_OK && status < HttpStatus.SC_TEMPORARY_REDIRECT) {
+                    final HttpEntity entity = response.getEntity();
+                    if( entity == null ) return streamHandler.handle(new StringReader(""));
+                    Charset charset = ContentType.getOrDefault(entity).getCharset();
+                    if( charset == null ) charset = StandardCharsets.UTF_8;
+                    if( enableWireTrace ) {
+                        String json = EntityUtils.toString(entity, charset);
+                        logger.info("JSON returned: '%s'",json);
+                        return streamHandler.handle(new StringReader(json));
+                    }
+                    try (Reader reader = new InputStreamReader(entity.getContent(), charset)) {
+                        return streamHandler.handle(reader);
+                    }
+                } else {
+                    throw newBadStatusException(response, "Unset");
+                }
+            }
+        };
+    }
 }
@@ -0,0 +1,8 @@
+package com.cisco.josouthe.http;
+
+import java.io.IOException;
+import java.io.Reader;
+
+public interface ResponseStreamHandler<T> {
+    public T handle( Reader reader ) throws IOException;
+}
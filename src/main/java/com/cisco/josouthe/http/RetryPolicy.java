@@ -0,0 +1,119 @@
+package com.cisco.josouthe.http;
+
+import com.cisco.josouthe.exceptions.ControllerBadStatusException;
+import com.cisco.josouthe.telemetry.Telemetry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/*
+retries a controller request with exponential backoff and full jitter, a Retry-After from the controller wins over the
+computed delay. requests that fail with a status that will not change, like 400 or 404, are not retried. network
+failures, a refused or reset connection, a timeout or a connection closed without a response, are retried like a 503
+ */
+public class RetryPolicy {
+    private static final Logger logger = LogManager.getFormatterLogger(RetryPolicy.class);
+    private static ScheduledExecutorService delayScheduler = null;
+
+    public interface Call<T> {
+        T call() throws IOException;
+    }
+
+    private int maxAttempts;
+    private long baseDelayMillis, maxDelayMillis;
+
+    public RetryPolicy( int maxAttempts, long baseDelayMillis, long maxDelayMillis ) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = Math.max(1, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+    }
+
+    public int getMaxAttempts() { return maxAttempts; }
+
+    public <T> T call( String description, Call<T> call ) throws IOException {
+        for( int attempt=1; ; attempt++ ) {
+            try {
+                return call.call();
+            } catch (IOException ioException) {
+                if( !isRetryable(ioException) || attempt >= maxAttempts ) throw ioException;
+                long delay = getDelayMillis(attempt, ioException instanceof ControllerBadStatusException ? (ControllerBadStatusException) ioException : null);
+                logger.warn("Attempt %d of %d failed for %s, %s, retrying in %dms", attempt, maxAttempts, description, describe(ioException), delay);
+                Telemetry.get().retried();
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw ioException;
+                }
+            }
+        }
+    }
+
+    public <T> CompletableFuture<T> callAsync( String description, Supplier<CompletableFuture<T>> call ) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(description, call, 1, result);
+        return result;
+    }
+
+    private <T> void attemptAsync( String description, Supplier<CompletableFuture<T>> call, int attempt, CompletableFuture<T> result ) {
+        call.get().whenComplete((value, throwable) -> {
+            if( throwable == null ) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(throwable);
+            if( !isRetryable(cause) || attempt >= maxAttempts ) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            long delay = getDelayMillis(attempt, cause instanceof ControllerBadStatusException ? (ControllerBadStatusException) cause : null);
+            logger.warn("Attempt %d of %d failed for %s, %s, retrying in %dms", attempt, maxAttempts, description, describe(cause), delay);
+            Telemetry.get().retried();
+            getDelayScheduler().schedule(() -> attemptAsync(description, call, attempt+1, result), delay, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    //a bad status by its code, otherwise only network failures a new attempt may get past, an interrupt is never retried
+    public static boolean isRetryable( Throwable throwable ) {
+        if( throwable instanceof ControllerBadStatusException ) return ((ControllerBadStatusException) throwable).isRetryable();
+        return throwable instanceof SocketException //refused and reset connections
+                || throwable instanceof SocketTimeoutException
+                || throwable instanceof org.apache.http.NoHttpResponseException
+                || throwable instanceof org.apache.hc.core5.http.NoHttpResponseException
+                || throwable instanceof org.apache.hc.core5.http.ConnectionClosedException;
+    }
+
+    private static String describe( Throwable throwable ) {
+        if( throwable instanceof ControllerBadStatusException ) return "status returned: "+ throwable.getMessage();
+        return "exception: "+ throwable;
+    }
+
+    public long getDelayMillis( int attempt, ControllerBadStatusException controllerBadStatusException ) {
+        if( controllerBadStatusException != null && controllerBadStatusException.retryAfterMillis >= 0 )
+            return Math.min(controllerBadStatusException.retryAfterMillis, maxDelayMillis * 10); //trust the controller, within reason
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt-1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling/2, ceiling+1); //equal jitter, never retry immediately
+    }
+
+    public static Throwable unwrap( Throwable throwable ) {
+        while( (throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null )
+            throwable = throwable.getCause();
+        return throwable;
+    }
+
+    private static synchronized ScheduledExecutorService getDelayScheduler() {
+        if( delayScheduler == null ) {
+            delayScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "RetryDelay");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return delayScheduler;
+    }
+}
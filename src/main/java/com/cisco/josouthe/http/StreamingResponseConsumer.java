@@ -0,0 +1,177 @@
+package com.cisco.josouthe.http;
+
+import com.cisco.josouthe.exceptions.ControllerBadStatusException;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.nio.AsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.entity.StringAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.support.classic.AbstractClassicEntityConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+async counterpart of the streaming response handler: the body of a successful response is handed to the stream handler
+on the decode executor while it is still arriving. only BUFFER_SIZE bytes are held per response, a decoder that falls
+behind pauses the connection instead of letting the body pile up. the body of a bad status is read as text for the
+ControllerBadStatusException
+ */
+public class StreamingResponseConsumer<T> implements AsyncResponseConsumer<T> {
+    private static final Logger logger = LogManager.getFormatterLogger(StreamingResponseConsumer.class);
+    private static final int BUFFER_SIZE = 64*1024;
+
+    private ResponseStreamHandler<T> streamHandler;
+    private Executor decodeExecutor;
+    private boolean enableWireTrace;
+    private String uri;
+    private LongAdder bodyBytes;
+    private Runnable onHeaders;
+    private volatile AsyncEntityConsumer<?> entityConsumer = null;
+    private volatile Thread decodeThread = null;
+    private volatile boolean failed = false;
+
+    public StreamingResponseConsumer( String uri, ResponseStreamHandler<T> streamHandler, Executor decodeExecutor, boolean enableWireTrace, LongAdder bodyBytes, Runnable onHeaders ) {
+        this.uri = uri;
+        this.streamHandler = streamHandler;
+        this.decodeExecutor = decodeExecutor;
+        this.enableWireTrace = enableWireTrace;
+        this.bodyBytes = bodyBytes;
+        this.onHeaders = onHeaders;
+    }
+
+    @Override
+    public void consumeResponse( HttpResponse response, EntityDetails entityDetails, HttpContext context, FutureCallback<T> resultCallback ) throws HttpException, IOException {
+        if( onHeaders != null ) onHeaders.run();
+        int status = response.getCode();
+        if( status >= HttpStatus.SC_OK && status < HttpStatus.SC_TEMPORARY_REDIRECT ) {
+            if( entityDetails == null ) {
+                decodeExecutor.execute(() -> {
+                    try {
+                        resultCallback.completed(streamHandler.handle(new StringReader("")));
+                    } catch (Exception exception) {
+                        resultCallback.failed(exception);
+                    }
+                });
+                return;
+            }
+            AbstractClassicEntityConsumer<T> bodyConsumer = new AbstractClassicEntityConsumer<T>(BUFFER_SIZE, decodeExecutor) {
+                @Override
+                protected T consumeData( ContentType contentType, InputStream inputStream ) throws IOException {
+                    return decode(contentType, inputStream);
+                }
+            };
+            entityConsumer = bodyConsumer;
+            bodyConsumer.streamStart(entityDetails, resultCallback);
+            return;
+        }
+        Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        long retryAfterMillis = HttpClientFactory.parseRetryAfter(retryAfter == null ? null : retryAfter.getValue());
+        String statusLine = status +" "+ response.getReasonPhrase();
+        if( entityDetails == null ) {
+            resultCallback.failed(new ControllerBadStatusException(status, retryAfterMillis, statusLine, null, uri));
+            return;
+        }
+        StringAsyncEntityConsumer errorConsumer = new StringAsyncEntityConsumer();
+        entityConsumer = errorConsumer;
+        errorConsumer.streamStart(entityDetails, new FutureCallback<String>() {
+            @Override
+            public void completed( String body ) {
+                resultCallback.failed(new ControllerBadStatusException(status, retryAfterMillis, statusLine, body, uri));
+            }
+
+            @Override
+            public void failed( Exception exception ) {
+                resultCallback.failed(exception);
+            }
+
+            @Override
+            public void cancelled() {
+                resultCallback.cancelled();
+            }
+        });
+    }
+
+    //runs on the decode executor, the stream blocks until more of the body arrives or failed() interrupts it
+    private T decode( ContentType contentType, InputStream inputStream ) throws IOException {
+        decodeThread = Thread.currentThread();
+        try {
+            if( failed ) throw new InterruptedIOException("Response failed before it was decoded: "+ uri);
+            Charset charset = contentType == null ? null : contentType.getCharset();
+            if( charset == null ) charset = StandardCharsets.UTF_8;
+            Reader reader = new InputStreamReader(inputStream, charset);
+            T result;
+            if( enableWireTrace ) {
+                StringBuilder json = new StringBuilder();
+                char[] chars = new char[8192];
+                for( int read; (read = reader.read(chars)) != -1; ) json.append(chars, 0, read);
+                logger.info("JSON returned: '%s'",json);
+                result = streamHandler.handle(new StringReader(json.toString()));
+            } else {
+                result = streamHandler.handle(reader);
+            }
+            //the decoder may stop before the end, whatever is left must still be read or the connection stalls on a full buffer
+            byte[] skip = new byte[8192];
+            while( inputStream.read(skip) != -1 );
+            return result;
+        } finally {
+            decodeThread = null;
+            Thread.interrupted(); //an interrupt from failed() must not leak to the next task on this pool thread
+        }
+    }
+
+    @Override
+    public void informationResponse( HttpResponse response, HttpContext context ) {
+    }
+
+    @Override
+    public void updateCapacity( CapacityChannel capacityChannel ) throws IOException {
+        entityConsumer.updateCapacity(capacityChannel);
+    }
+
+    @Override
+    public void consume( ByteBuffer src ) throws IOException {
+        if( bodyBytes != null ) bodyBytes.add(src.remaining());
+        entityConsumer.consume(src);
+    }
+
+    @Override
+    public void streamEnd( List<? extends Header> trailers ) throws HttpException, IOException {
+        entityConsumer.streamEnd(trailers);
+    }
+
+    @Override
+    public void failed( Exception cause ) {
+        failed = true;
+        AsyncEntityConsumer<?> consumer = entityConsumer;
+        if( consumer != null ) consumer.failed(cause);
+        Thread thread = decodeThread;
+        if( thread != null ) thread.interrupt(); //the body will not arrive, wake a decoder waiting on it
+    }
+
+    @Override
+    public void releaseResources() {
+        AsyncEntityConsumer<?> consumer = entityConsumer;
+        if( consumer != null ) consumer.releaseResources();
+    }
+}
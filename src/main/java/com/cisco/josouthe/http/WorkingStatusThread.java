@@ -1,5 +1,6 @@
 package com.cisco.josouthe.http;
 
+import com.cisco.josouthe.telemetry.Telemetry;
 import com.cisco.josouthe.util.Utility;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Logger;
@@ -8,8 +9,8 @@ public class WorkingStatusThread extends Thread {
     private String name,query;
     private Logger logger = null;
     private long cycleTime = 30000;
-    private long startTime;
-    private boolean running = true;
+    private long startTime, lastProgressTime, lastRequests = -1, lastValues = -1;
+    private volatile boolean running = true;
 
     public WorkingStatusThread( String name, String query, long cycleTime, Logger logger ) {
         super();
@@ -18,6 +19,8 @@ public class WorkingStatusThread extends Thread {
         this.cycleTime=cycleTime;
         this.logger=logger;
         this.startTime = Utility.now();
+        this.lastProgressTime = this.startTime;
+        setDaemon(true);
     }
 
     public WorkingStatusThread(String name, String query, Logger logger ) {
@@ -28,7 +31,10 @@ public class WorkingStatusThread extends Thread {
 
     }
 
-    public void cancel() { running=false; }
+    public void cancel() {
+        running=false;
+        interrupt();
+    }
 
     @Override
     public void run() {
@@ -38,15 +44,23 @@ public class WorkingStatusThread extends Thread {
                 String holdName = Thread.currentThread().getName();
                 Thread.currentThread().setName("Execution-Watchdog-"+ name);
                 long runtimeSeconds = getRuntimeSeconds();
-                logger.log( getLogLevel(runtimeSeconds), "%s '%s' is still running, so far %d (s)", this.name, this.query, runtimeSeconds );
+                Telemetry telemetry = Telemetry.get();
+                long requests = telemetry.getRequests(), values = telemetry.getValuesEmitted();
+                if( requests != lastRequests || values != lastValues ) lastProgressTime = Utility.now();
+                lastRequests = requests;
+                lastValues = values;
+                logger.log( getLogLevel((Utility.now()-lastProgressTime)/1000), "%s '%s' is still running, so far %d (s), requests: %d failed: %d retries: %d in flight: %d received: %d KB, series written: %d values written: %d",
+                        this.name, this.query, runtimeSeconds, requests, telemetry.getFailedRequests(), telemetry.getRetries(), telemetry.getRequestsInFlight(),
+                        telemetry.getResponseBytes() / 1024, telemetry.getSeriesEmitted(), values );
                 Thread.currentThread().setName(holdName);
             }
         }
     }
 
-    private Level getLogLevel(long runtimeSeconds) {
-        if( runtimeSeconds <= 300 ) return Level.INFO;
-        if( runtimeSeconds <= 600 ) return Level.WARN;
+    //escalates by how long nothing has moved, a long export or follow run that is still making progress stays at info
+    private Level getLogLevel(long stalledSeconds) {
+        if( stalledSeconds <= 300 ) return Level.INFO;
+        if( stalledSeconds <= 600 ) return Level.WARN;
         return Level.ERROR;
     }
 
@@ -1,8 +1,11 @@
 package com.cisco.josouthe.metric;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class BaselineData {
     public long metricId;
@@ -12,15 +15,95 @@ public class BaselineData {
     public String controllerHostname;
     public String applicationName;
     public Baseline baseline;
+    private transient volatile TimesliceIndex timesliceIndex;
+    private transient MetricSeries timesliceSeries;
+    private transient List<BaselineTimeslice> timesliceSeriesView;
+
+    public void setTimesliceSeries( MetricSeries timesliceSeries ) {
+        this.timesliceSeries = timesliceSeries;
+        this.dataTimeslices = timesliceSeries.asBaselineTimesliceList();
+        this.timesliceSeriesView = this.dataTimeslices;
+    }
+
+    //columnar form of dataTimeslices, a plain list is converted once and replaced by a view of the series
+    public MetricSeries getTimesliceSeries() {
+        if( !isSeriesBacked() ) setTimesliceSeries(MetricSeries.ofTimeslices(dataTimeslices));
+        return timesliceSeries;
+    }
+
+    private boolean isSeriesBacked() {
+        return timesliceSeries != null && dataTimeslices == timesliceSeriesView;
+    }
 
     public MetricValue getTimeSlice( long timestamp ) {
-        for( BaselineTimeslice baselineTimeslice : dataTimeslices )
-            if( timestamp == baselineTimeslice.startTime ) return baselineTimeslice.metricValue;
-        return null;
+        if( isSeriesBacked() ) {
+            int position = timesliceSeries.indexOf(timestamp);
+            return position < 0 ? null : timesliceSeries.getMetricValue(position);
+        }
+        int position = indexOf(timestamp);
+        if( position < 0 ) return null;
+        return dataTimeslices.get(position).metricValue;
+    }
+
+    //position in dataTimeslices of the timeslice starting at this timestamp, or -1
+    public int indexOf( long timestamp ) {
+        if( isSeriesBacked() ) return timesliceSeries.indexOf(timestamp);
+        TimesliceIndex index = getTimesliceIndex();
+        if( index == null ) return -1;
+        int found = Arrays.binarySearch(index.timestamps, timestamp);
+        if( found < 0 ) return -1;
+        while( found > 0 && index.timestamps[found-1] == timestamp ) found--; //first of any duplicates, as the old linear scan did
+        return index.position(found);
+    }
+
+    //sorted startTime index over dataTimeslices, rebuilt whenever the list is replaced or resized
+    TimesliceIndex getTimesliceIndex() {
+        if( dataTimeslices == null || dataTimeslices.isEmpty() ) return null;
+        TimesliceIndex index = this.timesliceIndex;
+        if( index == null || index.timeslices != dataTimeslices || index.size != dataTimeslices.size() ) {
+            index = new TimesliceIndex(dataTimeslices);
+            this.timesliceIndex = index;
+        }
+        return index;
+    }
+
+    static class TimesliceIndex {
+        final List<BaselineTimeslice> timeslices;
+        final int size;
+        final long[] timestamps;
+        final int[] positions; //null when dataTimeslices is already in startTime order
+
+        TimesliceIndex( List<BaselineTimeslice> timeslices ) {
+            this.timeslices = timeslices;
+            this.size = timeslices.size();
+            this.timestamps = new long[size];
+            boolean sorted = true;
+            for( int i=0; i < size; i++ ) {
+                timestamps[i] = timeslices.get(i).startTime;
+                if( i > 0 && timestamps[i] < timestamps[i-1] ) sorted = false;
+            }
+            if( sorted ) {
+                this.positions = null;
+            } else {
+                Integer[] order = new Integer[size];
+                for( int i=0; i < size; i++ ) order[i] = i;
+                Arrays.sort(order, (a, b) -> Long.compare(timeslices.get(a).startTime, timeslices.get(b).startTime));
+                this.positions = new int[size];
+                for( int i=0; i < size; i++ ) {
+                    positions[i] = order[i];
+                    timestamps[i] = timeslices.get(order[i]).startTime;
+                }
+            }
+        }
+
+        int position( int sortedIndex ) {
+            return positions == null ? sortedIndex : positions[sortedIndex];
+        }
     }
 
     public long purgeNullBaselineTimeslices() {
         if( dataTimeslices == null || dataTimeslices.isEmpty() ) return 0;
+        if( isSeriesBacked() ) return 0; //a series never holds an empty timeslice
         long counter=0;
         synchronized (this.dataTimeslices) {
             List<BaselineTimeslice> newDataTimeslices = new ArrayList<>();
@@ -42,4 +125,19 @@ public class BaselineData {
     public boolean hasData() {
         return dataTimeslices != null && dataTimeslices.size() > 0;
     }
+
+    public static List<BaselineData> mergeChunks( List<BaselineData[]> chunks ) {
+        Map<Long,BaselineData> merged = new LinkedHashMap<>();
+        Map<Long,List<MetricSeries>> parts = new LinkedHashMap<>();
+        for( BaselineData[] chunk : chunks ) {
+            if( chunk == null ) continue;
+            for( BaselineData baselineData : chunk ) {
+                merged.putIfAbsent(baselineData.metricId, baselineData);
+                parts.computeIfAbsent(baselineData.metricId, k -> new ArrayList<>()).add(baselineData.getTimesliceSeries());
+            }
+        }
+        for( Map.Entry<Long,BaselineData> entry : merged.entrySet() )
+            entry.getValue().setTimesliceSeries(MetricSeries.merge(parts.get(entry.getKey())));
+        return new ArrayList<>(merged.values());
+    }
 }
@@ -0,0 +1,31 @@
+package com.cisco.josouthe.metric;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BaselineDataCollector implements BaselineDataListener {
+    private List<BaselineData> baselineDataList = new ArrayList<>();
+
+    @Override
+    public void baselineStart(BaselineData baselineData) {
+        baselineData.dataTimeslices = new ArrayList<>();
+        baselineDataList.add(baselineData);
+    }
+
+    @Override
+    public void baselineTimeslice(BaselineData baselineData, BaselineTimeslice baselineTimeslice) {
+        baselineData.dataTimeslices.add(baselineTimeslice);
+    }
+
+    @Override
+    public void baselineEnd(BaselineData baselineData) {
+        if( baselineData.dataTimeslices == null ) { //response had no dataTimeslices array
+            baselineData.dataTimeslices = new ArrayList<>();
+            baselineDataList.add(baselineData);
+        }
+    }
+
+    public BaselineData[] getBaselineData() {
+        return baselineDataList.toArray(new BaselineData[0]);
+    }
+}
@@ -0,0 +1,14 @@
+package com.cisco.josouthe.metric;
+
+/*
+baselineStart is called when the dataTimeslices array is reached, timeslices without a metricValue are dropped
+by the decoder and never reach baselineTimeslice
+ */
+public interface BaselineDataListener {
+    public void baselineStart( BaselineData baselineData );
+    public void baselineTimeslice( BaselineData baselineData, BaselineTimeslice baselineTimeslice );
+    public void baselineEnd( BaselineData baselineData );
+
+    //a listener that copies what it needs lets the decoder reuse one timeslice for the whole response
+    public default boolean retainsTimeslices() { return true; }
+}
@@ -0,0 +1,43 @@
+package com.cisco.josouthe.metric;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//collects each BaselineData into a MetricSeries without keeping a BaselineTimeslice per timeslice
+public class BaselineSeriesCollector implements BaselineDataListener {
+    private List<BaselineData> baselineDataList = new ArrayList<>();
+    private BaselineData current;
+    private MetricSeries currentSeries;
+
+    @Override
+    public void baselineStart(BaselineData baselineData) {
+        current = baselineData;
+        currentSeries = new MetricSeries(true);
+        baselineData.setTimesliceSeries(currentSeries);
+        baselineDataList.add(baselineData);
+    }
+
+    @Override
+    public void baselineTimeslice(BaselineData baselineData, BaselineTimeslice baselineTimeslice) {
+        if( baselineData != current ) {
+            current = baselineData;
+            currentSeries = baselineData.getTimesliceSeries();
+        }
+        currentSeries.append(baselineTimeslice.startTime, baselineTimeslice.metricValue);
+    }
+
+    @Override
+    public void baselineEnd(BaselineData baselineData) {
+        if( baselineData.dataTimeslices == null ) { //response had no dataTimeslices array
+            baselineData.setTimesliceSeries(new MetricSeries(true));
+            baselineDataList.add(baselineData);
+        }
+    }
+
+    @Override
+    public boolean retainsTimeslices() { return false; }
+
+    public BaselineData[] getBaselineData() {
+        return baselineDataList.toArray(new BaselineData[0]);
+    }
+}
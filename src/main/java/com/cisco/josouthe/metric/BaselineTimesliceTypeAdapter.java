@@ -0,0 +1,44 @@
+package com.cisco.josouthe.metric;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+public class BaselineTimesliceTypeAdapter extends TypeAdapter<BaselineTimeslice> {
+    private MetricValueTypeAdapter metricValueTypeAdapter = new MetricValueTypeAdapter();
+
+    @Override
+    public void write(JsonWriter out, BaselineTimeslice baselineTimeslice) throws IOException {
+        if( baselineTimeslice == null ) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("startTime").value(baselineTimeslice.startTime);
+        out.name("metricValue");
+        metricValueTypeAdapter.write(out, baselineTimeslice.metricValue);
+        out.endObject();
+    }
+
+    @Override
+    public BaselineTimeslice read(JsonReader in) throws IOException {
+        if( in.peek() == JsonToken.NULL ) {
+            in.nextNull();
+            return null;
+        }
+        BaselineTimeslice baselineTimeslice = new BaselineTimeslice();
+        in.beginObject();
+        while( in.hasNext() ) {
+            switch (in.nextName()) {
+                case "startTime": { baselineTimeslice.startTime = MetricValueTypeAdapter.readLong(in); break; }
+                case "metricValue": { baselineTimeslice.metricValue = metricValueTypeAdapter.read(in); break; }
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return baselineTimeslice;
+    }
+}
@@ -0,0 +1,164 @@
+package com.cisco.josouthe.metric;
+
+/*
+reduces a series to about a target number of points for charting. LTTB keeps the point of each bucket that best keeps
+the shape of the line, MINMAX keeps the lowest and highest value of each bucket so spikes survive. one pass over the
+columns of the series, only the output is allocated. the baseline is cut into the same buckets, averaged per bucket
+and stamped with the timestamps of the metric points kept for that bucket, so the join lines them up again
+ */
+public class Downsampler {
+    public enum Method { LTTB, MINMAX }
+
+    public static class Result {
+        public MetricSeries metricSeries, baselineSeries;
+        public long baselineGranularityMillis; //0 once the baseline is stamped with the metric timestamps
+    }
+
+    private Method method;
+    private int points;
+
+    public Downsampler( Method method, int points ) {
+        this.method = method;
+        this.points = points;
+    }
+
+    public int getPoints() { return points; }
+
+    //series at or under the target are returned as they are, baselineSeries may be null
+    public Result downsample( MetricSeries metricSeries, MetricSeries baselineSeries, long baselineGranularityMillis ) {
+        Result result = new Result();
+        result.metricSeries = metricSeries;
+        result.baselineSeries = baselineSeries;
+        result.baselineGranularityMillis = baselineGranularityMillis;
+        if( metricSeries == null || points < 3 || metricSeries.size() <= points ) return result;
+        MetricSeries sorted = metricSeries.sortedByTimestamp();
+        BaselineBuckets baselineBuckets = baselineSeries == null || baselineSeries.isEmpty() ? null
+                : new BaselineBuckets(baselineSeries.sortedByTimestamp(), baselineGranularityMillis > 60000 ? baselineGranularityMillis : 0);
+        result.metricSeries = new MetricSeries(true);
+        if( baselineBuckets != null ) {
+            result.baselineSeries = new MetricSeries(true);
+            result.baselineGranularityMillis = 0;
+        }
+        if( method == Method.MINMAX ) {
+            minMax(sorted, baselineBuckets, result);
+        } else {
+            lttb(sorted, baselineBuckets, result);
+        }
+        return result;
+    }
+
+    private void lttb( MetricSeries series, BaselineBuckets baselineBuckets, Result result ) {
+        int size = series.size();
+        long origin = series.getTimestamp(0);
+        double every = (double) (size - 2) / (points - 2);
+        int selected = 0;
+        keep(series, 0, 0, 1, baselineBuckets, result);
+        for( int bucket=0; bucket < points - 2; bucket++ ) {
+            int from = (int) (bucket * every) + 1, to = (int) ((bucket + 1) * every) + 1;
+            int nextFrom = to, nextTo = Math.min((int) ((bucket + 2) * every) + 1, size);
+            double averageX = 0, averageY = 0;
+            for( int i=nextFrom; i < nextTo; i++ ) {
+                averageX += series.getTimestamp(i) - origin;
+                averageY += series.getValue(i);
+            }
+            averageX /= nextTo - nextFrom;
+            averageY /= nextTo - nextFrom;
+            double selectedX = series.getTimestamp(selected) - origin, selectedY = series.getValue(selected);
+            double maxArea = -1;
+            int next = from;
+            for( int i=from; i < to; i++ ) {
+                double area = Math.abs((selectedX - averageX) * (series.getValue(i) - selectedY)
+                        - (selectedX - (series.getTimestamp(i) - origin)) * (averageY - selectedY));
+                if( area > maxArea ) {
+                    maxArea = area;
+                    next = i;
+                }
+            }
+            keep(series, next, from, to, baselineBuckets, result);
+            selected = next;
+        }
+        keep(series, size - 1, size - 1, size, baselineBuckets, result);
+    }
+
+    private void minMax( MetricSeries series, BaselineBuckets baselineBuckets, Result result ) {
+        int size = series.size();
+        int buckets = Math.max(1, points / 2);
+        double every = (double) size / buckets;
+        for( int bucket=0; bucket < buckets; bucket++ ) {
+            int from = (int) (bucket * every), to = bucket == buckets - 1 ? size : (int) ((bucket + 1) * every);
+            if( from >= to ) continue;
+            int lowest = from, highest = from;
+            for( int i=from+1; i < to; i++ ) {
+                if( series.getValue(i) < series.getValue(lowest) ) lowest = i;
+                if( series.getValue(i) > series.getValue(highest) ) highest = i;
+            }
+            keep(series, Math.min(lowest, highest), from, to, baselineBuckets, result);
+            if( lowest != highest ) keep(series, Math.max(lowest, highest), from, to, baselineBuckets, result);
+        }
+    }
+
+    //the bucket is the index range from to to of the metric series, its baseline is the baseline over the same time
+    private static void keep( MetricSeries series, int index, int from, int to, BaselineBuckets baselineBuckets, Result result ) {
+        result.metricSeries.appendFrom(series, index);
+        if( baselineBuckets == null ) return;
+        long bucketEnd = to < series.size() ? series.getTimestamp(to) : Long.MAX_VALUE;
+        baselineBuckets.append(result.baselineSeries, series.getTimestamp(index), series.getTimestamp(from), bucketEnd);
+    }
+
+    //walks the baseline forward with the buckets, which only ever move forward in time
+    private static class BaselineBuckets {
+        private MetricSeries series;
+        private long granularityMillis;
+        private int position = 0;
+        private long lastFrom = Long.MIN_VALUE, lastTo = Long.MIN_VALUE;
+        private boolean lastFound;
+        private long lastValue, lastMin, lastMax, lastCount, lastSum;
+        private double lastStandardDeviation;
+
+        BaselineBuckets( MetricSeries series, long granularityMillis ) {
+            this.series = series;
+            this.granularityMillis = granularityMillis;
+        }
+
+        void append( MetricSeries out, long timestamp, long from, long to ) {
+            if( from != lastFrom || to != lastTo ) average(from, to);
+            if( lastFound ) out.append(timestamp, lastValue, lastMin, lastMax, lastCount, lastSum, lastStandardDeviation);
+        }
+
+        private void average( long from, long to ) {
+            lastFrom = from;
+            lastTo = to;
+            while( position < series.size() && series.getTimestamp(position) < from ) position++;
+            long valueTotal = 0, countTotal = 0, sumTotal = 0, min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+            double standardDeviationTotal = 0;
+            int slices = 0;
+            for( int i=position; i < series.size() && series.getTimestamp(i) < to; i++ ) {
+                valueTotal += series.getValue(i);
+                countTotal += series.getCount(i);
+                sumTotal += series.getSum(i);
+                min = Math.min(min, series.getMin(i));
+                max = Math.max(max, series.getMax(i));
+                standardDeviationTotal += series.getStandardDeviation(i);
+                slices++;
+            }
+            int covering = position - 1;
+            if( slices == 0 && covering >= 0 && from < series.getTimestamp(covering) + granularityMillis ) { //a coarse slice covering the whole bucket
+                valueTotal = series.getValue(covering);
+                countTotal = series.getCount(covering);
+                sumTotal = series.getSum(covering);
+                min = series.getMin(covering);
+                max = series.getMax(covering);
+                standardDeviationTotal = series.getStandardDeviation(covering);
+                slices = 1;
+            }
+            lastFound = slices > 0;
+            if( !lastFound ) return;
+            lastValue = Math.round((double) valueTotal / slices);
+            lastCount = countTotal;
+            lastSum = sumTotal;
+            lastMin = min;
+            lastMax = max;
+            lastStandardDeviation = standardDeviationTotal / slices;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.cisco.josouthe.metric;
+
+/*
+walks the metric values and the baseline timeslices together in one pass, both sides are visited in
+timestamp order so each next() is amortized constant time instead of a scan of the baseline. values are read
+from the columnar MetricSeries of each side, so nothing is allocated per value
+ */
+public class MetricBaselineJoin {
+    private MetricSeries metricSeries, baselineSeries;
+    private long baselineGranularityMillis;
+    private int metricPosition = -1, baselinePosition = 0, matchedBaseline = -1;
+
+    public MetricBaselineJoin( MetricData metricData, BaselineData baselineData ) {
+        this( metricData == null || metricData.metricValues == null ? null : metricData.getMetricSeries(),
+                baselineData == null || !baselineData.hasData() ? null : baselineData.getTimesliceSeries(),
+                baselineData == null ? 0 : baselineData.granularityMinutes * 60000L );
+    }
+
+    public MetricBaselineJoin( MetricSeries metricSeries, MetricSeries baselineSeries ) {
+        this(metricSeries, baselineSeries, 0);
+    }
+
+    //a baseline timeslice coarser than a minute matches every value inside it, otherwise only the same timestamp matches
+    public MetricBaselineJoin( MetricSeries metricSeries, MetricSeries baselineSeries, long baselineGranularityMillis ) {
+        this.metricSeries = metricSeries == null ? null : metricSeries.sortedByTimestamp();
+        this.baselineSeries = baselineSeries == null || baselineSeries.isEmpty() ? null : baselineSeries.sortedByTimestamp();
+        this.baselineGranularityMillis = baselineGranularityMillis > 60000 ? baselineGranularityMillis : 0;
+    }
+
+    public boolean next() {
+        matchedBaseline = -1;
+        if( metricSeries == null || ++metricPosition >= metricSeries.size() ) return false;
+        if( baselineSeries == null ) return true;
+        long timestamp = metricSeries.getTimestamp(metricPosition);
+        if( baselineGranularityMillis > 0 ) {
+            while( baselinePosition+1 < baselineSeries.size() && baselineSeries.getTimestamp(baselinePosition+1) <= timestamp ) baselinePosition++;
+            long baselineTimestamp = baselineSeries.getTimestamp(baselinePosition);
+            if( baselineTimestamp <= timestamp && timestamp < baselineTimestamp + baselineGranularityMillis )
+                matchedBaseline = baselinePosition;
+            return true;
+        }
+        while( baselinePosition < baselineSeries.size() && baselineSeries.getTimestamp(baselinePosition) < timestamp ) baselinePosition++;
+        if( baselinePosition < baselineSeries.size() && baselineSeries.getTimestamp(baselinePosition) == timestamp )
+            matchedBaseline = baselinePosition;
+        return true;
+    }
+
+    public boolean hasBaseline() { return matchedBaseline >= 0; }
+
+    public long getTimestamp() { return metricSeries.getTimestamp(metricPosition); }
+    public long getValue() { return metricSeries.getValue(metricPosition); }
+    public long getMin() { return metricSeries.getMin(metricPosition); }
+    public long getMax() { return metricSeries.getMax(metricPosition); }
+    public long getCount() { return metricSeries.getCount(metricPosition); }
+    public long getSum() { return metricSeries.getSum(metricPosition); }
+    public long getBaselineValue() { return baselineSeries.getValue(matchedBaseline); }
+    public double getBaselineStandardDeviation() { return baselineSeries.getStandardDeviation(matchedBaseline); }
+
+    public MetricValue getMetricValue() {
+        return metricSeries.getMetricValue(metricPosition);
+    }
+
+    public MetricValue getBaselineMetricValue() {
+        return hasBaseline() ? baselineSeries.getMetricValue(matchedBaseline) : null;
+    }
+}
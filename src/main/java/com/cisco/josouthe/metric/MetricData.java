@@ -2,7 +2,10 @@ package com.cisco.josouthe.metric;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class MetricData {
     public MetricData() {}
@@ -17,6 +20,36 @@ public class MetricData {
     public String metricName, metricPath, frequency, hostname;
     public transient URL url;
     public List<MetricValue> metricValues;
+    private transient MetricSeries metricSeries;
+    private transient List<MetricValue> metricSeriesView;
     public String controllerHostname;
     public String applicationName;
+
+    public void setMetricSeries( MetricSeries metricSeries ) {
+        this.metricSeries = metricSeries;
+        this.metricValues = metricSeries.asMetricValueList();
+        this.metricSeriesView = this.metricValues;
+    }
+
+    //columnar form of metricValues, a plain list is converted once and replaced by a view of the series
+    public MetricSeries getMetricSeries() {
+        if( metricSeries == null || metricValues != metricSeriesView ) setMetricSeries(MetricSeries.of(metricValues));
+        return metricSeries;
+    }
+
+    public static MetricData[] mergeChunks( List<MetricData[]> chunks ) {
+        Map<String,MetricData> merged = new LinkedHashMap<>();
+        Map<String,List<MetricSeries>> parts = new LinkedHashMap<>();
+        for( MetricData[] chunk : chunks ) {
+            if( chunk == null ) continue;
+            for( MetricData metricData : chunk ) {
+                String key = metricData.metricPath != null ? metricData.metricPath : metricData.metricName;
+                merged.putIfAbsent(key, metricData);
+                parts.computeIfAbsent(key, k -> new ArrayList<>()).add(metricData.getMetricSeries());
+            }
+        }
+        for( Map.Entry<String,MetricData> entry : merged.entrySet() )
+            entry.getValue().setMetricSeries(MetricSeries.merge(parts.get(entry.getKey())));
+        return merged.values().toArray(new MetricData[0]);
+    }
 }
@@ -0,0 +1,31 @@
+package com.cisco.josouthe.metric;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MetricDataCollector implements MetricDataListener {
+    private List<MetricData> metricDataList = new ArrayList<>();
+
+    @Override
+    public void metricStart(MetricData metricData) {
+        metricData.metricValues = new ArrayList<>();
+        metricDataList.add(metricData);
+    }
+
+    @Override
+    public void metricValue(MetricData metricData, MetricValue metricValue) {
+        metricData.metricValues.add(metricValue);
+    }
+
+    @Override
+    public void metricEnd(MetricData metricData) {
+        if( metricData.metricValues == null ) { //response had no metricValues array
+            metricData.metricValues = new ArrayList<>();
+            metricDataList.add(metricData);
+        }
+    }
+
+    public MetricData[] getMetricData() {
+        return metricDataList.toArray(new MetricData[0]);
+    }
+}
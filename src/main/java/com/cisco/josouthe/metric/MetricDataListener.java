@@ -0,0 +1,14 @@
+package com.cisco.josouthe.metric;
+
+/*
+metricStart is called when the metricValues array is reached, header fields that follow that array in the
+response are only guaranteed to be set by the time metricEnd is called
+ */
+public interface MetricDataListener {
+    public void metricStart( MetricData metricData );
+    public void metricValue( MetricData metricData, MetricValue metricValue );
+    public void metricEnd( MetricData metricData );
+
+    //a listener that copies what it needs lets the decoder reuse one MetricValue for the whole response
+    public default boolean retainsValues() { return true; }
+}
@@ -0,0 +1,153 @@
+package com.cisco.josouthe.metric;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+
+public class MetricDataStreamDecoder {
+    private MetricDataTypeAdapter metricDataTypeAdapter = new MetricDataTypeAdapter();
+    private MetricValueTypeAdapter metricValueTypeAdapter = new MetricValueTypeAdapter();
+
+    //decodes a MetricData[] response, returns the number of MetricData objects seen
+    public int decodeMetricData( Reader reader, MetricDataListener listener ) throws IOException {
+        JsonReader in = newJsonReader(reader);
+        int count = 0;
+        try {
+            if( isEmpty(in) ) return 0;
+            if( in.peek() == JsonToken.BEGIN_OBJECT ) { //single object instead of an array
+                metricDataTypeAdapter.read(in, listener);
+                return 1;
+            }
+            in.beginArray();
+            while( in.hasNext() ) {
+                if( in.peek() == JsonToken.NULL ) {
+                    in.nextNull();
+                    continue;
+                }
+                metricDataTypeAdapter.read(in, listener);
+                count++;
+            }
+            in.endArray();
+        } catch (IllegalStateException | NumberFormatException exception) {
+            throw new IOException("Malformed metric data response: "+ exception.getMessage(), exception);
+        }
+        return count;
+    }
+
+    //decodes a BaselineData[] response, returns the number of null timeslices dropped
+    public long decodeBaselineData( Reader reader, BaselineDataListener listener ) throws IOException {
+        JsonReader in = newJsonReader(reader);
+        long dropped = 0;
+        try {
+            if( isEmpty(in) ) return 0;
+            if( in.peek() == JsonToken.BEGIN_OBJECT ) return readBaselineData(in, listener);
+            in.beginArray();
+            while( in.hasNext() ) {
+                if( in.peek() == JsonToken.NULL ) {
+                    in.nextNull();
+                    continue;
+                }
+                dropped += readBaselineData(in, listener);
+            }
+            in.endArray();
+        } catch (IllegalStateException | NumberFormatException exception) {
+            throw new IOException("Malformed baseline data response: "+ exception.getMessage(), exception);
+        }
+        return dropped;
+    }
+
+    private long readBaselineData( JsonReader in, BaselineDataListener listener ) throws IOException {
+        BaselineData baselineData = new BaselineData();
+        BaselineTimeslice scratch = null;
+        if( !listener.retainsTimeslices() ) {
+            scratch = new BaselineTimeslice();
+            scratch.metricValue = new MetricValue();
+        }
+        boolean started = false;
+        long dropped = 0;
+        in.beginObject();
+        while( in.hasNext() ) {
+            switch (in.nextName()) {
+                case "metricId": { baselineData.metricId = MetricValueTypeAdapter.readLong(in); break; }
+                case "metricName": { baselineData.metricName = MetricValueTypeAdapter.readString(in); break; }
+                case "frequency": { baselineData.frequency = MetricValueTypeAdapter.readString(in); break; }
+                case "granularityMinutes": { baselineData.granularityMinutes = (int) MetricValueTypeAdapter.readLong(in); break; }
+                case "dataTimeslices": {
+                    if( in.peek() == JsonToken.NULL ) {
+                        in.nextNull();
+                        break;
+                    }
+                    if( !started ) {
+                        listener.baselineStart(baselineData);
+                        started = true;
+                    }
+                    in.beginArray();
+                    while( in.hasNext() ) {
+                        if( readTimeslice(in, baselineData, listener, scratch) ) continue;
+                        dropped++;
+                    }
+                    in.endArray();
+                    break;
+                }
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        listener.baselineEnd(baselineData);
+        return dropped;
+    }
+
+    //returns false when the timeslice had no metricValue and was dropped
+    private boolean readTimeslice( JsonReader in, BaselineData baselineData, BaselineDataListener listener, BaselineTimeslice scratch ) throws IOException {
+        if( in.peek() == JsonToken.NULL ) {
+            in.nextNull();
+            return false;
+        }
+        long startTime = 0;
+        MetricValue metricValue = null;
+        in.beginObject();
+        while( in.hasNext() ) {
+            switch (in.nextName()) {
+                case "startTime": { startTime = MetricValueTypeAdapter.readLong(in); break; }
+                case "metricValue": {
+                    if( in.peek() == JsonToken.NULL ) {
+                        in.nextNull();
+                        metricValue = null;
+                    } else {
+                        metricValue = metricValueTypeAdapter.read(in, scratch == null ? new MetricValue() : MetricDataTypeAdapter.reset(scratch.metricValue));
+                    }
+                    break;
+                }
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        if( metricValue == null ) return false;
+        BaselineTimeslice baselineTimeslice = scratch == null ? new BaselineTimeslice() : scratch;
+        baselineTimeslice.startTime = startTime;
+        baselineTimeslice.metricValue = metricValue;
+        listener.baselineTimeslice(baselineData, baselineTimeslice);
+        return true;
+    }
+
+    private static JsonReader newJsonReader( Reader reader ) {
+        JsonReader in = new JsonReader(reader);
+        in.setLenient(true); //match Gson.fromJson behavior
+        return in;
+    }
+
+    private static boolean isEmpty( JsonReader in ) throws IOException {
+        try {
+            if( in.peek() == JsonToken.NULL ) {
+                in.nextNull();
+                return true;
+            }
+            return false;
+        } catch (EOFException eofException) { //empty body
+            return true;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.cisco.josouthe.metric;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+public class MetricDataTypeAdapter extends TypeAdapter<MetricData> {
+    private MetricValueTypeAdapter metricValueTypeAdapter = new MetricValueTypeAdapter();
+
+    @Override
+    public void write(JsonWriter out, MetricData metricData) throws IOException {
+        if( metricData == null ) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("metricId").value(metricData.metricId);
+        out.name("metricName").value(metricData.metricName);
+        out.name("metricPath").value(metricData.metricPath);
+        out.name("frequency").value(metricData.frequency);
+        out.name("metricValues");
+        out.beginArray();
+        if( metricData.metricValues != null )
+            for( MetricValue metricValue : metricData.metricValues )
+                metricValueTypeAdapter.write(out, metricValue);
+        out.endArray();
+        out.endObject();
+    }
+
+    @Override
+    public MetricData read(JsonReader in) throws IOException {
+        if( in.peek() == JsonToken.NULL ) {
+            in.nextNull();
+            return null;
+        }
+        MetricDataCollector collector = new MetricDataCollector();
+        read(in, collector);
+        return collector.getMetricData()[0];
+    }
+
+    //streams one MetricData object, handing each value to the listener as it is parsed
+    public void read(JsonReader in, MetricDataListener listener) throws IOException {
+        MetricData metricData = new MetricData();
+        MetricValue scratch = listener.retainsValues() ? null : new MetricValue();
+        boolean started = false;
+        in.beginObject();
+        while( in.hasNext() ) {
+            switch (in.nextName()) {
+                case "metricId": { metricData.metricId = MetricValueTypeAdapter.readLong(in); break; }
+                case "applicationId": { metricData.applicationId = MetricValueTypeAdapter.readLong(in); break; }
+                case "metricName": { metricData.metricName = MetricValueTypeAdapter.readString(in); break; }
+                case "metricPath": { metricData.metricPath = MetricValueTypeAdapter.readString(in); break; }
+                case "frequency": { metricData.frequency = MetricValueTypeAdapter.readString(in); break; }
+                case "hostname": { metricData.hostname = MetricValueTypeAdapter.readString(in); break; }
+                case "controllerHostname": { metricData.controllerHostname = MetricValueTypeAdapter.readString(in); break; }
+                case "applicationName": { metricData.applicationName = MetricValueTypeAdapter.readString(in); break; }
+                case "metricValues": {
+                    if( in.peek() == JsonToken.NULL ) {
+                        in.nextNull();
+                        break;
+                    }
+                    if( !started ) {
+                        listener.metricStart(metricData);
+                        started = true;
+                    }
+                    in.beginArray();
+                    while( in.hasNext() ) {
+                        MetricValue metricValue = null;
+                        if( in.peek() == JsonToken.NULL ) {
+                            in.nextNull();
+                        } else {
+                            metricValue = metricValueTypeAdapter.read(in, scratch == null ? new MetricValue() : reset(scratch));
+                        }
+                        if( metricValue != null ) listener.metricValue(metricData, metricValue);
+                    }
+                    in.endArray();
+                    break;
+                }
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        if( !started ) metricData.metricValues = null;
+        listener.metricEnd(metricData);
+    }
+
+    static MetricValue reset( MetricValue metricValue ) {
+        metricValue.startTimeInMillis = metricValue.occurrences = metricValue.current = metricValue.min = metricValue.max = 0;
+        metricValue.count = metricValue.sum = metricValue.value = 0;
+        metricValue.useRange = false;
+        metricValue.standardDeviation = 0;
+        return metricValue;
+    }
+}
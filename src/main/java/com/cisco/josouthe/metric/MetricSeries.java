@@ -0,0 +1,339 @@
+package com.cisco.josouthe.metric;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/*
+struct of arrays storage for one metric series, each column is a list of primitive chunks so growing never copies
+more than the first chunk. occurrences, current and useRange are not kept, MetricValue views return them as zero
+ */
+public class MetricSeries {
+    private static final int CHUNK_SHIFT = 12, CHUNK_SIZE = 1 << CHUNK_SHIFT, CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private boolean deltaTimestamps;
+    private long[][] timestamps; //used when timestamps are not delta encoded
+    private long[] chunkBaseTimestamps; //used with timestampDeltas, each chunk is relative to its first timestamp
+    private int[][] timestampDeltas;
+    private long[][] values, mins, maxs, counts, sums;
+    private double[][] standardDeviations;
+    private int size = 0, capacity = 0;
+    private boolean sorted = true;
+
+    public MetricSeries() {
+        this(false);
+    }
+
+    public MetricSeries( boolean deltaTimestamps ) {
+        this.deltaTimestamps = deltaTimestamps;
+        int chunks = 1;
+        if( deltaTimestamps ) {
+            chunkBaseTimestamps = new long[chunks];
+            timestampDeltas = new int[chunks][];
+        } else {
+            timestamps = new long[chunks][];
+        }
+        values = new long[chunks][];
+        mins = new long[chunks][];
+        maxs = new long[chunks][];
+        counts = new long[chunks][];
+        sums = new long[chunks][];
+        standardDeviations = new double[chunks][];
+    }
+
+    public static MetricSeries of( List<MetricValue> metricValues ) {
+        MetricSeries metricSeries = new MetricSeries(true);
+        if( metricValues != null )
+            for( MetricValue metricValue : metricValues )
+                metricSeries.append(metricValue);
+        return metricSeries;
+    }
+
+    public static MetricSeries ofTimeslices( List<BaselineTimeslice> baselineTimeslices ) {
+        MetricSeries metricSeries = new MetricSeries(true);
+        if( baselineTimeslices != null )
+            for( BaselineTimeslice baselineTimeslice : baselineTimeslices )
+                if( baselineTimeslice.metricValue != null )
+                    metricSeries.append(baselineTimeslice.startTime, baselineTimeslice.metricValue);
+        return metricSeries;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public boolean isSorted() { return sorted; }
+    public boolean isDeltaTimestamps() { return deltaTimestamps; }
+
+    public void append( MetricValue metricValue ) {
+        append(metricValue.startTimeInMillis, metricValue);
+    }
+
+    public void append( long timestamp, MetricValue metricValue ) {
+        append(timestamp, metricValue.value, metricValue.min, metricValue.max, metricValue.count, metricValue.sum, metricValue.standardDeviation);
+    }
+
+    public void append( long timestamp, long value, long min, long max, long count, long sum, double standardDeviation ) {
+        ensureCapacity(size+1);
+        int chunk = size >>> CHUNK_SHIFT, offset = size & CHUNK_MASK;
+        if( size > 0 && timestamp < getTimestamp(size-1) ) sorted = false;
+        if( deltaTimestamps ) {
+            if( offset == 0 ) chunkBaseTimestamps[chunk] = timestamp;
+            long delta = timestamp - chunkBaseTimestamps[chunk];
+            if( delta > Integer.MAX_VALUE || delta < Integer.MIN_VALUE ) { //too sparse to delta encode, store full timestamps from here on
+                inflateTimestamps();
+                timestamps[chunk][offset] = timestamp;
+            } else {
+                timestampDeltas[chunk][offset] = (int) delta;
+            }
+        } else {
+            timestamps[chunk][offset] = timestamp;
+        }
+        values[chunk][offset] = value;
+        mins[chunk][offset] = min;
+        maxs[chunk][offset] = max;
+        counts[chunk][offset] = count;
+        sums[chunk][offset] = sum;
+        standardDeviations[chunk][offset] = standardDeviation;
+        size++;
+    }
+
+    public void appendFrom( MetricSeries other, int index ) {
+        append(other.getTimestamp(index), other.getValue(index), other.getMin(index), other.getMax(index), other.getCount(index), other.getSum(index), other.getStandardDeviation(index));
+    }
+
+    public long getTimestamp( int index ) {
+        if( deltaTimestamps ) return chunkBaseTimestamps[index >>> CHUNK_SHIFT] + timestampDeltas[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        return timestamps[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+    public long getValue( int index ) { return values[index >>> CHUNK_SHIFT][index & CHUNK_MASK]; }
+    public long getMin( int index ) { return mins[index >>> CHUNK_SHIFT][index & CHUNK_MASK]; }
+    public long getMax( int index ) { return maxs[index >>> CHUNK_SHIFT][index & CHUNK_MASK]; }
+    public long getCount( int index ) { return counts[index >>> CHUNK_SHIFT][index & CHUNK_MASK]; }
+    public long getSum( int index ) { return sums[index >>> CHUNK_SHIFT][index & CHUNK_MASK]; }
+    public double getStandardDeviation( int index ) { return standardDeviations[index >>> CHUNK_SHIFT][index & CHUNK_MASK]; }
+
+    public MetricValue getMetricValue( int index ) {
+        return fill(index, new MetricValue());
+    }
+
+    public MetricValue fill( int index, MetricValue metricValue ) {
+        metricValue.startTimeInMillis = getTimestamp(index);
+        metricValue.value = getValue(index);
+        metricValue.min = getMin(index);
+        metricValue.max = getMax(index);
+        metricValue.count = getCount(index);
+        metricValue.sum = getSum(index);
+        metricValue.standardDeviation = getStandardDeviation(index);
+        return metricValue;
+    }
+
+    public long sumValues() {
+        long total = 0;
+        for( int i=0; i < size; i++ ) total += getValue(i);
+        return total;
+    }
+
+    public long sumCounts() {
+        long total = 0;
+        for( int i=0; i < size; i++ ) total += getCount(i);
+        return total;
+    }
+
+    //position of the first value at this timestamp, or -1, binary search when sorted
+    public int indexOf( long timestamp ) {
+        if( !sorted ) {
+            for( int i=0; i < size; i++ )
+                if( getTimestamp(i) == timestamp ) return i;
+            return -1;
+        }
+        int low = 0, high = size-1;
+        while( low <= high ) {
+            int middle = (low + high) >>> 1;
+            long middleTimestamp = getTimestamp(middle);
+            if( middleTimestamp < timestamp ) {
+                low = middle+1;
+            } else if( middleTimestamp > timestamp || (middle > 0 && getTimestamp(middle-1) == timestamp) ) {
+                high = middle-1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    //copy in timestamp order with duplicate timestamps removed, returns this when already sorted and unique
+    public MetricSeries sortedByTimestamp() {
+        boolean unique = true;
+        for( int i=1; sorted && i < size; i++ )
+            if( getTimestamp(i) == getTimestamp(i-1) ) unique = false;
+        if( sorted && unique ) return this;
+        int[] order = new int[size];
+        long[] keys = new long[size];
+        for( int i=0; i < size; i++ ) {
+            order[i] = i;
+            keys[i] = getTimestamp(i);
+        }
+        mergeSort(order, new int[size], keys, 0, size);
+        MetricSeries result = new MetricSeries(deltaTimestamps);
+        for( int i=0; i < size; i++ ) {
+            if( i > 0 && keys[order[i]] == keys[order[i-1]] ) continue; //keep the first copy of a timestamp
+            result.appendFrom(this, order[i]);
+        }
+        return result;
+    }
+
+    //stable, so the first copy of a duplicated timestamp stays first
+    private static void mergeSort( int[] order, int[] scratch, long[] keys, int from, int to ) {
+        if( to - from < 2 ) return;
+        int middle = (from + to) >>> 1;
+        mergeSort(order, scratch, keys, from, middle);
+        mergeSort(order, scratch, keys, middle, to);
+        if( keys[order[middle-1]] <= keys[order[middle]] ) return;
+        System.arraycopy(order, from, scratch, from, to - from);
+        int left = from, right = middle, out = from;
+        while( left < middle && right < to ) order[out++] = keys[scratch[right]] < keys[scratch[left]] ? scratch[right++] : scratch[left++];
+        while( left < middle ) order[out++] = scratch[left++];
+        while( right < to ) order[out++] = scratch[right++];
+    }
+
+    //copy of the values with timestamps from start to end inclusive
+    public MetricSeries slice( long startTimestamp, long endTimestamp ) {
+        MetricSeries result = new MetricSeries(true);
+        for( int i=0; i < size; i++ ) {
+            long timestamp = getTimestamp(i);
+            if( timestamp >= startTimestamp && timestamp <= endTimestamp ) result.appendFrom(this, i);
+        }
+        return result;
+    }
+
+    //concatenates in timestamp order, dropping the duplicate values adjacent time slices share at their boundary
+    public static MetricSeries merge( List<MetricSeries> parts ) {
+        MetricSeries result = new MetricSeries(true);
+        for( MetricSeries part : parts ) {
+            if( part == null ) continue;
+            for( int i=0; i < part.size; i++ )
+                result.appendFrom(part, i);
+        }
+        return result.sortedByTimestamp();
+    }
+
+    public List<MetricValue> asMetricValueList() {
+        return new MetricValueView();
+    }
+
+    public List<BaselineTimeslice> asBaselineTimesliceList() {
+        return new BaselineTimesliceView();
+    }
+
+    private void ensureCapacity( int required ) {
+        if( required <= capacity ) return;
+        int chunk = (required-1) >>> CHUNK_SHIFT;
+        if( chunk == 0 ) { //the first chunk grows by doubling so short series stay small
+            int newCapacity = Math.min(CHUNK_SIZE, Math.max(INITIAL_CAPACITY, capacity*2));
+            if( deltaTimestamps ) {
+                timestampDeltas[0] = grow(timestampDeltas[0], newCapacity);
+            } else {
+                timestamps[0] = grow(timestamps[0], newCapacity);
+            }
+            values[0] = grow(values[0], newCapacity);
+            mins[0] = grow(mins[0], newCapacity);
+            maxs[0] = grow(maxs[0], newCapacity);
+            counts[0] = grow(counts[0], newCapacity);
+            sums[0] = grow(sums[0], newCapacity);
+            standardDeviations[0] = standardDeviations[0] == null ? new double[newCapacity] : Arrays.copyOf(standardDeviations[0], newCapacity);
+            capacity = newCapacity;
+            return;
+        }
+        if( chunk >= values.length ) {
+            int chunks = Math.max(chunk+1, values.length*2);
+            if( deltaTimestamps ) {
+                chunkBaseTimestamps = Arrays.copyOf(chunkBaseTimestamps, chunks);
+                timestampDeltas = Arrays.copyOf(timestampDeltas, chunks);
+            } else {
+                timestamps = Arrays.copyOf(timestamps, chunks);
+            }
+            values = Arrays.copyOf(values, chunks);
+            mins = Arrays.copyOf(mins, chunks);
+            maxs = Arrays.copyOf(maxs, chunks);
+            counts = Arrays.copyOf(counts, chunks);
+            sums = Arrays.copyOf(sums, chunks);
+            standardDeviations = Arrays.copyOf(standardDeviations, chunks);
+        }
+        if( deltaTimestamps ) {
+            timestampDeltas[chunk] = new int[CHUNK_SIZE];
+        } else {
+            timestamps[chunk] = new long[CHUNK_SIZE];
+        }
+        values[chunk] = new long[CHUNK_SIZE];
+        mins[chunk] = new long[CHUNK_SIZE];
+        maxs[chunk] = new long[CHUNK_SIZE];
+        counts[chunk] = new long[CHUNK_SIZE];
+        sums[chunk] = new long[CHUNK_SIZE];
+        standardDeviations[chunk] = new double[CHUNK_SIZE];
+        capacity = (chunk+1) * CHUNK_SIZE;
+    }
+
+    private static long[] grow( long[] array, int length ) {
+        return array == null ? new long[length] : Arrays.copyOf(array, length);
+    }
+
+    private static int[] grow( int[] array, int length ) {
+        return array == null ? new int[length] : Arrays.copyOf(array, length);
+    }
+
+    private void inflateTimestamps() {
+        long[][] inflated = new long[timestampDeltas.length][];
+        for( int chunk=0; chunk < timestampDeltas.length; chunk++ ) {
+            if( timestampDeltas[chunk] == null ) continue;
+            inflated[chunk] = new long[timestampDeltas[chunk].length];
+            for( int offset=0; offset < timestampDeltas[chunk].length; offset++ )
+                inflated[chunk][offset] = chunkBaseTimestamps[chunk] + timestampDeltas[chunk][offset];
+        }
+        timestamps = inflated;
+        timestampDeltas = null;
+        chunkBaseTimestamps = null;
+        deltaTimestamps = false;
+    }
+
+    //values are materialized on get, appending through the view appends to the series
+    private class MetricValueView extends AbstractList<MetricValue> implements RandomAccess {
+        @Override
+        public MetricValue get( int index ) {
+            if( index < 0 || index >= size ) throw new IndexOutOfBoundsException("Index: "+ index +" Size: "+ size);
+            return getMetricValue(index);
+        }
+
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public void add( int index, MetricValue metricValue ) {
+            if( index != size ) throw new UnsupportedOperationException("MetricSeries only supports appending");
+            append(metricValue);
+            modCount++;
+        }
+    }
+
+    private class BaselineTimesliceView extends AbstractList<BaselineTimeslice> implements RandomAccess {
+        @Override
+        public BaselineTimeslice get( int index ) {
+            if( index < 0 || index >= size ) throw new IndexOutOfBoundsException("Index: "+ index +" Size: "+ size);
+            BaselineTimeslice baselineTimeslice = new BaselineTimeslice();
+            baselineTimeslice.startTime = getTimestamp(index);
+            baselineTimeslice.metricValue = getMetricValue(index);
+            return baselineTimeslice;
+        }
+
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public void add( int index, BaselineTimeslice baselineTimeslice ) {
+            if( index != size ) throw new UnsupportedOperationException("MetricSeries only supports appending");
+            if( baselineTimeslice.metricValue == null ) return; //the series has no place for an empty timeslice
+            append(baselineTimeslice.startTime, baselineTimeslice.metricValue);
+            modCount++;
+        }
+    }
+}
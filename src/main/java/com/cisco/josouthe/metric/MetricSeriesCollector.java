@@ -0,0 +1,43 @@
+package com.cisco.josouthe.metric;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//collects each MetricData into a MetricSeries without keeping a MetricValue per value
+public class MetricSeriesCollector implements MetricDataListener {
+    private List<MetricData> metricDataList = new ArrayList<>();
+    private MetricData current;
+    private MetricSeries currentSeries;
+
+    @Override
+    public void metricStart(MetricData metricData) {
+        current = metricData;
+        currentSeries = new MetricSeries(true);
+        metricData.setMetricSeries(currentSeries);
+        metricDataList.add(metricData);
+    }
+
+    @Override
+    public void metricValue(MetricData metricData, MetricValue metricValue) {
+        if( metricData != current ) {
+            current = metricData;
+            currentSeries = metricData.getMetricSeries();
+        }
+        currentSeries.append(metricValue);
+    }
+
+    @Override
+    public void metricEnd(MetricData metricData) {
+        if( metricData.metricValues == null ) { //response had no metricValues array
+            metricData.setMetricSeries(new MetricSeries(true));
+            metricDataList.add(metricData);
+        }
+    }
+
+    @Override
+    public boolean retainsValues() { return false; }
+
+    public MetricData[] getMetricData() {
+        return metricDataList.toArray(new MetricData[0]);
+    }
+}
@@ -0,0 +1,32 @@
+package com.cisco.josouthe.metric;
+
+//sums every value of a response while it is decoded, nothing is kept per value
+public class MetricTotals implements MetricDataListener {
+    private long metricCount, valueCount;
+    private double totalValue, totalSum, totalCount;
+
+    @Override
+    public void metricStart(MetricData metricData) {
+        metricCount++;
+    }
+
+    @Override
+    public void metricValue(MetricData metricData, MetricValue metricValue) {
+        valueCount++;
+        totalValue += metricValue.value;
+        totalSum += metricValue.sum;
+        totalCount += metricValue.count;
+    }
+
+    @Override
+    public void metricEnd(MetricData metricData) { }
+
+    @Override
+    public boolean retainsValues() { return false; }
+
+    public long getMetricCount() { return metricCount; }
+    public long getValueCount() { return valueCount; }
+    public double getTotalValue() { return totalValue; }
+    public double getTotalSum() { return totalSum; }
+    public double getTotalCount() { return totalCount; }
+}
@@ -0,0 +1,98 @@
+package com.cisco.josouthe.metric;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+public class MetricValueTypeAdapter extends TypeAdapter<MetricValue> {
+
+    @Override
+    public void write(JsonWriter out, MetricValue metricValue) throws IOException {
+        if( metricValue == null ) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("startTimeInMillis").value(metricValue.startTimeInMillis);
+        out.name("occurrences").value(metricValue.occurrences);
+        out.name("current").value(metricValue.current);
+        out.name("min").value(metricValue.min);
+        out.name("max").value(metricValue.max);
+        out.name("useRange").value(metricValue.useRange);
+        out.name("count").value(metricValue.count);
+        out.name("sum").value(metricValue.sum);
+        out.name("value").value(metricValue.value);
+        out.name("standardDeviation").value(metricValue.standardDeviation);
+        out.endObject();
+    }
+
+    @Override
+    public MetricValue read(JsonReader in) throws IOException {
+        if( in.peek() == JsonToken.NULL ) {
+            in.nextNull();
+            return null;
+        }
+        return read(in, new MetricValue());
+    }
+
+    //fills in the given instance, so callers can decide whether to allocate per value
+    public MetricValue read(JsonReader in, MetricValue metricValue) throws IOException {
+        in.beginObject();
+        while( in.hasNext() ) {
+            switch (in.nextName()) {
+                case "startTimeInMillis": { metricValue.startTimeInMillis = readLong(in); break; }
+                case "occurrences": { metricValue.occurrences = readLong(in); break; }
+                case "current": { metricValue.current = readLong(in); break; }
+                case "min": { metricValue.min = readLong(in); break; }
+                case "max": { metricValue.max = readLong(in); break; }
+                case "count": { metricValue.count = readLong(in); break; }
+                case "sum": { metricValue.sum = readLong(in); break; }
+                case "value": { metricValue.value = readLong(in); break; }
+                case "useRange": { metricValue.useRange = readBoolean(in); break; }
+                case "standardDeviation": { metricValue.standardDeviation = readDouble(in); break; }
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return metricValue;
+    }
+
+    static long readLong( JsonReader in ) throws IOException {
+        if( in.peek() == JsonToken.NULL ) {
+            in.nextNull();
+            return 0;
+        }
+        try {
+            return in.nextLong();
+        } catch (NumberFormatException numberFormatException) { //fractional, the token is still buffered
+            return (long) in.nextDouble();
+        }
+    }
+
+    static double readDouble( JsonReader in ) throws IOException {
+        if( in.peek() == JsonToken.NULL ) {
+            in.nextNull();
+            return 0;
+        }
+        return in.nextDouble();
+    }
+
+    static boolean readBoolean( JsonReader in ) throws IOException {
+        if( in.peek() == JsonToken.NULL ) {
+            in.nextNull();
+            return false;
+        }
+        return in.nextBoolean();
+    }
+
+    static String readString( JsonReader in ) throws IOException {
+        if( in.peek() == JsonToken.NULL ) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
@@ -0,0 +1,46 @@
+package com.cisco.josouthe.metric;
+
+/*
+how finely to fetch a time range that will be shown as about targetPoints values. the metric-data api has no
+granularity parameter, the controller answers at the resolution it keeps for the range, so a small point count is met
+with one rolled up request per bucket and a large one with the controller's own resolution. the baseline api takes a
+granularityMinutes, the finest one that keeps the range within the point count is used
+ */
+public class ResolutionPlan {
+    public static final int MAX_ROLLUP_BUCKETS = 60;
+    private static final int[] BASELINE_GRANULARITY_MINUTES = { 1, 10, 60 };
+    public static final ResolutionPlan RAW = new ResolutionPlan(false, 0, 1);
+
+    public final boolean rollup;
+    public final long bucketMillis;
+    public final int baselineGranularityMinutes;
+
+    private ResolutionPlan( boolean rollup, long bucketMillis, int baselineGranularityMinutes ) {
+        this.rollup = rollup;
+        this.bucketMillis = bucketMillis;
+        this.baselineGranularityMinutes = baselineGranularityMinutes;
+    }
+
+    //targetPoints of 0 or less, or a range with no more minutes than points, is fetched raw
+    public static ResolutionPlan plan( long startTimestamp, long endTimestamp, int targetPoints ) {
+        long minutes = Math.max(1, (endTimestamp - startTimestamp) / 60000);
+        if( targetPoints <= 0 || minutes <= targetPoints ) return RAW;
+        long bucketMinutes = (minutes + targetPoints - 1) / targetPoints;
+        int baselineGranularityMinutes = BASELINE_GRANULARITY_MINUTES[BASELINE_GRANULARITY_MINUTES.length-1];
+        for( int granularityMinutes : BASELINE_GRANULARITY_MINUTES ) {
+            if( granularityMinutes >= bucketMinutes ) {
+                baselineGranularityMinutes = granularityMinutes;
+                break;
+            }
+        }
+        if( targetPoints <= MAX_ROLLUP_BUCKETS ) return new ResolutionPlan(true, bucketMinutes * 60000, baselineGranularityMinutes);
+        return new ResolutionPlan(false, 0, baselineGranularityMinutes);
+    }
+
+    public boolean isRaw() { return !rollup && baselineGranularityMinutes == 1; }
+
+    public String toString() {
+        if( rollup ) return String.format("rolled up %d minute buckets, baseline every %d minutes", bucketMillis/60000, baselineGranularityMinutes);
+        return String.format("controller resolution, baseline every %d minutes", baselineGranularityMinutes);
+    }
+}
@@ -10,6 +10,8 @@ public class Application {
     public Tier[] tiers;
     public Node[] nodes;
 
+    public boolean isTopologyLoaded() { return tiers != null && nodes != null; }
+
     public void filterTiersDown( String tierName, int minimumNodeCount ) {
         if( tierName == null && minimumNodeCount < 0 ) return;
         List<Tier> tierList = new ArrayList<>();
@@ -26,6 +28,7 @@ public class Application {
     }
 
     public String toString() {
+        if( !isTopologyLoaded() ) return String.format("Application '%s'(%d) Tiers: not loaded", name, id);
         return String.format("Application '%s'(%d) Tiers: %d Nodes: %d", name, id, tiers.length, nodes.length);
     }
 }
@@ -2,7 +2,7 @@ package com.cisco.josouthe.model;
 
 public class Model {
     private Application[] applications;
-    public Model( Application[] apps ) { this.applications=apps; }
+    public Model( Application[] apps ) { this.applications = apps == null ? new Application[0] : apps; }
     public Application getApplication( String name ) {
         for( Application application : applications )
             if( application.name.equals(name)) return application;
@@ -0,0 +1,64 @@
+package com.cisco.josouthe.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/*
+controller topology saved between runs, read back at startup while younger than the ttl
+ */
+public class ModelSnapshot {
+    private static final Logger logger = LogManager.getFormatterLogger(ModelSnapshot.class);
+    private static final Gson gson = new Gson();
+
+    public String controller;
+    public long savedTimestamp;
+    public Application[] applications;
+
+    public boolean isExpired( long ttlMillis ) {
+        return savedTimestamp + ttlMillis < System.currentTimeMillis();
+    }
+
+    public Application getApplication( long id ) {
+        if( applications == null ) return null;
+        for( Application application : applications )
+            if( application.id == id ) return application;
+        return null;
+    }
+
+    public static ModelSnapshot read( Path path, String controller ) {
+        if( !Files.exists(path) ) return null;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            ModelSnapshot modelSnapshot = gson.fromJson(reader, ModelSnapshot.class);
+            if( modelSnapshot == null || !controller.equals(modelSnapshot.controller) ) return null;
+            return modelSnapshot;
+        } catch (IOException | JsonParseException exception) {
+            logger.warn("Unreadable model snapshot %s, it will be fetched again, Exception: %s", path, exception.toString());
+            return null;
+        }
+    }
+
+    public void write( Path path ) {
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), "model", ".tmp");
+            try {
+                try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    gson.toJson(this, writer);
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write model snapshot %s Exception: %s", path, e.getMessage());
+        }
+    }
+}
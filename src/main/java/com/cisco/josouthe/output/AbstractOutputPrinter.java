@@ -0,0 +1,25 @@
+package com.cisco.josouthe.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public abstract class AbstractOutputPrinter implements OutputPrinter {
+    protected OutputBuffer out;
+
+    @Override
+    public void open( OutputStream outputStream ) throws IOException {
+        this.out = new OutputBuffer(outputStream);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if( out != null ) out.flush();
+    }
+
+    //the stream belongs to whoever opened the printer, it is flushed and left open
+    @Override
+    public void close() throws IOException {
+        if( out != null ) out.flush();
+        out = null;
+    }
+}
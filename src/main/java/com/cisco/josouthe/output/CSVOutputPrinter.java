@@ -0,0 +1,43 @@
+package com.cisco.josouthe.output;
+
+import com.cisco.josouthe.metric.BaselineData;
+import com.cisco.josouthe.metric.MetricData;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class CSVOutputPrinter extends AbstractOutputPrinter {
+    private byte[] seriesColumns;
+
+    @Override
+    public String getFormatName() { return "CSV"; }
+
+    @Override
+    public void open(OutputStream outputStream) throws IOException {
+        super.open(outputStream);
+        out.write("Controller,Application,Metric,Timestamp,Value,Min,Max,Average,StdDev\n");
+    }
+
+    @Override
+    public void beginSeries(MetricData metricData, BaselineData baselineData) throws IOException {
+        seriesColumns = String.format("%s,%s,%s,", OutputBuffer.escapeCsv(metricData.controllerHostname),
+                OutputBuffer.escapeCsv(metricData.applicationName), OutputBuffer.escapeCsv(metricData.metricName)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void value(long timestamp, long value, long min, long max, boolean hasBaseline, long baselineAverage, double baselineStandardDeviation) throws IOException {
+        out.write(seriesColumns);
+        out.write(timestamp).write(',').write(value).write(',').write(min).write(',').write(max).write(',');
+        if( hasBaseline ) {
+            out.write(baselineAverage).write(',').write(baselineStandardDeviation, 6);
+        } else {
+            out.write(',');
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void endSeries() throws IOException {
+    }
+}
@@ -0,0 +1,55 @@
+package com.cisco.josouthe.output;
+
+import com.github.luben.zstd.Zstd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/*
+how each block of an output file is compressed. every block is a complete gzip member or zstd frame, and the standard
+tools read a file of them back to back as one stream
+ */
+public enum Compression {
+    NONE(""),
+    GZIP(".gz") {
+        @Override
+        public byte[] compress( byte[] block, int length ) throws IOException {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 64);
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed, 65536)) {
+                gzipOutputStream.write(block, 0, length);
+            }
+            return compressed.toByteArray();
+        }
+    },
+    ZSTD(".zst") {
+        @Override
+        public byte[] compress( byte[] block, int length ) throws IOException {
+            byte[] compressed = new byte[(int) Zstd.compressBound(length)];
+            long size = Zstd.compressByteArray(compressed, 0, compressed.length, block, 0, length, Zstd.defaultCompressionLevel());
+            if( Zstd.isError(size) ) throw new IOException("zstd compression failed: "+ Zstd.getErrorName(size));
+            byte[] frame = new byte[(int) size];
+            System.arraycopy(compressed, 0, frame, 0, frame.length);
+            return frame;
+        }
+    };
+
+    private String extension;
+
+    Compression( String extension ) {
+        this.extension = extension;
+    }
+
+    public byte[] compress( byte[] block, int length ) throws IOException {
+        byte[] copy = new byte[length];
+        System.arraycopy(block, 0, copy, 0, length);
+        return copy;
+    }
+
+    //by the file name, .gz or .zst, anything else is written as is
+    public static Compression forFile( String fileName ) {
+        for( Compression compression : values() )
+            if( compression != NONE && fileName.toLowerCase().endsWith(compression.extension) ) return compression;
+        return NONE;
+    }
+}
@@ -0,0 +1,71 @@
+package com.cisco.josouthe.output;
+
+import com.cisco.josouthe.metric.BaselineData;
+import com.cisco.josouthe.metric.Downsampler;
+import com.cisco.josouthe.metric.MetricBaselineJoin;
+import com.cisco.josouthe.metric.MetricData;
+import com.cisco.josouthe.telemetry.Telemetry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+stage in front of another printer that downsamples each series and its baseline before it is printed, the metric and
+baseline data passed in are left as they are
+ */
+public class DownsamplingOutputPrinter implements OutputPrinter {
+    private OutputPrinter outputPrinter;
+    private Downsampler downsampler;
+
+    public DownsamplingOutputPrinter( OutputPrinter outputPrinter, Downsampler downsampler ) {
+        this.outputPrinter = outputPrinter;
+        this.downsampler = downsampler;
+    }
+
+    @Override
+    public String getFormatName() { return outputPrinter.getFormatName(); }
+
+    @Override
+    public void open( OutputStream outputStream ) throws IOException { outputPrinter.open(outputStream); }
+
+    @Override
+    public void beginSeries( MetricData metricData, BaselineData baselineData ) throws IOException { outputPrinter.beginSeries(metricData, baselineData); }
+
+    @Override
+    public void value( long timestamp, long value, long min, long max, boolean hasBaseline, long baselineAverage, double baselineStandardDeviation ) throws IOException {
+        outputPrinter.value(timestamp, value, min, max, hasBaseline, baselineAverage, baselineStandardDeviation);
+    }
+
+    @Override
+    public void endSeries() throws IOException { outputPrinter.endSeries(); }
+
+    @Override
+    public void flush() throws IOException { outputPrinter.flush(); }
+
+    @Override
+    public void close() throws IOException { outputPrinter.close(); }
+
+    @Override
+    public void printSeries( MetricData metricData, BaselineData baselineData ) throws IOException {
+        if( metricData == null || metricData.metricValues == null ) {
+            outputPrinter.printSeries(metricData, baselineData);
+            return;
+        }
+        long startNanos = System.nanoTime(), values = 0;
+        Downsampler.Result result = downsampler.downsample(metricData.getMetricSeries(),
+                baselineData == null || !baselineData.hasData() ? null : baselineData.getTimesliceSeries(),
+                baselineData == null ? 0 : baselineData.granularityMinutes * 60000L);
+        outputPrinter.beginSeries(metricData, baselineData);
+        MetricBaselineJoin join = new MetricBaselineJoin(result.metricSeries, result.baselineSeries, result.baselineGranularityMillis);
+        while( join.next() ) {
+            values++;
+            if( join.hasBaseline() ) {
+                outputPrinter.value(join.getTimestamp(), join.getValue(), join.getMin(), join.getMax(), true, join.getBaselineValue(), join.getBaselineStandardDeviation());
+            } else {
+                outputPrinter.value(join.getTimestamp(), join.getValue(), join.getMin(), join.getMax(), false, 0, 0);
+            }
+        }
+        outputPrinter.endSeries();
+        Telemetry.get().seriesEmitted(values, System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,56 @@
+package com.cisco.josouthe.output;
+
+import com.cisco.josouthe.metric.BaselineData;
+import com.cisco.josouthe.metric.MetricData;
+
+import java.io.IOException;
+
+//one JSON object per series per line, so output can be appended to and read a series at a time
+public class JSONOutputPrinter extends AbstractOutputPrinter {
+    private boolean firstValue;
+
+    @Override
+    public String getFormatName() { return "JSON"; }
+
+    @Override
+    public void beginSeries(MetricData metricData, BaselineData baselineData) throws IOException {
+        out.write("{");
+        writeField("controller", metricData.controllerHostname);
+        writeField("application", metricData.applicationName);
+        writeField("metricName", metricData.metricName);
+        writeField("metricPath", metricData.metricPath);
+        out.write("\"metricId\":").write(metricData.metricId).write(',');
+        if( baselineData != null && baselineData.baseline != null ) writeField("baseline", baselineData.baseline.name);
+        out.write("\"values\":[");
+        firstValue = true;
+    }
+
+    private void writeField( String name, String value ) throws IOException {
+        out.write('"').write(name).write("\":");
+        if( value == null ) {
+            out.write("null,");
+        } else {
+            out.write('"').write(OutputBuffer.escapeJson(value)).write("\",");
+        }
+    }
+
+    @Override
+    public void value(long timestamp, long value, long min, long max, boolean hasBaseline, long baselineAverage, double baselineStandardDeviation) throws IOException {
+        if( !firstValue ) out.write(',');
+        firstValue = false;
+        out.write("{\"timestamp\":").write(timestamp);
+        out.write(",\"value\":").write(value);
+        out.write(",\"min\":").write(min);
+        out.write(",\"max\":").write(max);
+        if( hasBaseline ) {
+            out.write(",\"average\":").write(baselineAverage);
+            out.write(",\"stdDev\":").write(baselineStandardDeviation, 6);
+        }
+        out.write('}');
+    }
+
+    @Override
+    public void endSeries() throws IOException {
+        out.write("]}\n");
+    }
+}
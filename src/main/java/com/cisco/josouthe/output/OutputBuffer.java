@@ -0,0 +1,140 @@
+package com.cisco.josouthe.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+byte buffer in front of the output stream, numbers are written digit by digit so printing a value allocates nothing
+ */
+public class OutputBuffer {
+    private static final int DEFAULT_SIZE = 64*1024;
+    private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L };
+    private OutputStream outputStream;
+    private byte[] buffer;
+    private int position = 0;
+    private byte[] digits = new byte[20];
+
+    public OutputBuffer( OutputStream outputStream ) {
+        this(outputStream, DEFAULT_SIZE);
+    }
+
+    public OutputBuffer( OutputStream outputStream, int size ) {
+        this.outputStream = outputStream;
+        this.buffer = new byte[size];
+    }
+
+    public OutputBuffer write( byte b ) throws IOException {
+        if( position == buffer.length ) flushBuffer();
+        buffer[position++] = b;
+        return this;
+    }
+
+    public OutputBuffer write( char c ) throws IOException {
+        if( c < 0x80 ) return write((byte) c);
+        return write(String.valueOf(c).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public OutputBuffer write( byte[] bytes ) throws IOException {
+        if( bytes.length > buffer.length - position ) {
+            flushBuffer();
+            if( bytes.length > buffer.length ) {
+                outputStream.write(bytes);
+                return this;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+        return this;
+    }
+
+    //ascii is copied char by char, anything else is encoded as UTF-8
+    public OutputBuffer write( String string ) throws IOException {
+        if( string == null ) return this;
+        for( int i=0; i < string.length(); i++ ) {
+            if( string.charAt(i) >= 0x80 ) return write(string.getBytes(StandardCharsets.UTF_8));
+        }
+        for( int i=0; i < string.length(); i++ ) {
+            if( position == buffer.length ) flushBuffer();
+            buffer[position++] = (byte) string.charAt(i);
+        }
+        return this;
+    }
+
+    public OutputBuffer write( long value ) throws IOException {
+        if( value == Long.MIN_VALUE ) return write(Long.toString(value));
+        if( value < 0 ) {
+            write((byte) '-');
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while( value > 0 );
+        if( length > buffer.length - position ) flushBuffer();
+        while( length > 0 ) buffer[position++] = digits[--length];
+        return this;
+    }
+
+    //fixed point, the same digits as String.format("%.Nf") for values that fit in a long once scaled
+    public OutputBuffer write( double value, int decimals ) throws IOException {
+        if( Double.isNaN(value) || Double.isInfinite(value) ) return write(Double.toString(value));
+        long scale = POWERS_OF_TEN[decimals];
+        double scaled = Math.abs(value) * scale;
+        if( scaled >= Long.MAX_VALUE ) return write(String.format("%."+ decimals +"f", value));
+        long rounded = Math.round(scaled);
+        if( value < 0 && rounded != 0 ) write((byte) '-');
+        write(rounded / scale);
+        if( decimals == 0 ) return this;
+        write((byte) '.');
+        long fraction = rounded % scale;
+        for( long pad = scale/10; pad > 1 && fraction < pad; pad /= 10 ) write((byte) '0');
+        return write(fraction);
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        outputStream.flush();
+    }
+
+    private void flushBuffer() throws IOException {
+        if( position == 0 ) return;
+        outputStream.write(buffer, 0, position);
+        position = 0;
+    }
+
+    public static String escapeXml( String s ) {
+        if( s == null ) return "";
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    public static String escapeJson( String s ) {
+        if( s == null ) return null;
+        StringBuilder sb = new StringBuilder(s.length()+2);
+        for( int i=0; i < s.length(); i++ ) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': { sb.append("\\\""); break; }
+                case '\\': { sb.append("\\\\"); break; }
+                case '\n': { sb.append("\\n"); break; }
+                case '\r': { sb.append("\\r"); break; }
+                case '\t': { sb.append("\\t"); break; }
+                default: {
+                    if( c < 0x20 ) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    public static String escapeCsv( String s ) {
+        if( s == null ) return "";
+        if( s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0 ) return s;
+        return "\""+ s.replace("\"", "\"\"") +"\"";
+    }
+}
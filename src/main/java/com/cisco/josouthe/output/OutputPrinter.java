@@ -1,12 +1,40 @@
 package com.cisco.josouthe.output;
 
 import com.cisco.josouthe.metric.BaselineData;
+import com.cisco.josouthe.metric.MetricBaselineJoin;
 import com.cisco.josouthe.metric.MetricData;
+import com.cisco.josouthe.telemetry.Telemetry;
 
-import java.io.PrintStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
+/*
+push style printer, implementations are found with ServiceLoader by getFormatName. a run calls open once, then
+beginSeries, value for each point and endSeries for every series, then close. close flushes the stream but does not
+close it, the caller that passed it to open still owns it
+ */
 public interface OutputPrinter {
-    public void setMetricData( MetricData metricData );
-    public void setBaseLineData(BaselineData baseLineData );
-    public void print(PrintStream printStream);
+    public String getFormatName();
+    public void open( OutputStream outputStream ) throws IOException;
+    public void beginSeries( MetricData metricData, BaselineData baselineData ) throws IOException;
+    public void value( long timestamp, long value, long min, long max, boolean hasBaseline, long baselineAverage, double baselineStandardDeviation ) throws IOException;
+    public void endSeries() throws IOException;
+    public void flush() throws IOException;
+    public void close() throws IOException;
+
+    public default void printSeries( MetricData metricData, BaselineData baselineData ) throws IOException {
+        long startNanos = System.nanoTime(), values = 0;
+        beginSeries(metricData, baselineData);
+        MetricBaselineJoin join = new MetricBaselineJoin(metricData, baselineData);
+        while( join.next() ) {
+            values++;
+            if( join.hasBaseline() ) {
+                value(join.getTimestamp(), join.getValue(), join.getMin(), join.getMax(), true, join.getBaselineValue(), join.getBaselineStandardDeviation());
+            } else {
+                value(join.getTimestamp(), join.getValue(), join.getMin(), join.getMax(), false, 0, 0);
+            }
+        }
+        endSeries();
+        Telemetry.get().seriesEmitted(values, System.nanoTime() - startNanos);
+    }
 }
@@ -0,0 +1,22 @@
+package com.cisco.josouthe.output;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+public class OutputPrinterFactory {
+
+    //a new instance on every call, printers hold per run state
+    public static OutputPrinter getOutputPrinter( String formatName ) {
+        for( OutputPrinter outputPrinter : ServiceLoader.load(OutputPrinter.class) )
+            if( outputPrinter.getFormatName().equalsIgnoreCase(formatName) ) return outputPrinter;
+        return null;
+    }
+
+    public static List<String> getFormatNames() {
+        List<String> formatNames = new ArrayList<>();
+        for( OutputPrinter outputPrinter : ServiceLoader.load(OutputPrinter.class) )
+            formatNames.add(outputPrinter.getFormatName());
+        return formatNames;
+    }
+}
@@ -0,0 +1,114 @@
+package com.cisco.josouthe.output;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+splits what is written into fixed size blocks and compresses them on a pool of threads, the compressed blocks are
+written in the order they were filled. a few blocks per thread may be waiting at once, past that the writer waits for
+the oldest, so memory stays bounded when the disk or the compression can not keep up. flush ends the current block
+early, so follow mode output can be read up to the last poll
+ */
+public class ParallelCompressingOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1024*1024;
+
+    private OutputStream outputStream;
+    private Compression compression;
+    private ExecutorService executorService;
+    private ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private ArrayDeque<byte[]> pendingBlocks = new ArrayDeque<>(), freeBlocks = new ArrayDeque<>();
+    private int maxPending, position = 0;
+    private byte[] block;
+    private boolean closed = false;
+
+    public ParallelCompressingOutputStream( OutputStream outputStream, Compression compression, int threads ) {
+        this(outputStream, compression, threads, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ParallelCompressingOutputStream( OutputStream outputStream, Compression compression, int threads, int blockSize ) {
+        this.outputStream = outputStream;
+        this.compression = compression;
+        this.block = new byte[blockSize];
+        this.maxPending = Math.max(1, threads) * 2;
+        AtomicInteger counter = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "OutputCompressor-"+ counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void write( int b ) throws IOException {
+        if( position == block.length ) submitBlock();
+        block[position++] = (byte) b;
+    }
+
+    @Override
+    public void write( byte[] bytes, int offset, int length ) throws IOException {
+        while( length > 0 ) {
+            if( position == block.length ) submitBlock();
+            int copied = Math.min(length, block.length - position);
+            System.arraycopy(bytes, offset, block, position, copied);
+            position += copied;
+            offset += copied;
+            length -= copied;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if( closed ) return;
+        submitBlock();
+        while( !pending.isEmpty() ) writeOldest();
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if( closed ) return;
+        try {
+            flush();
+        } finally {
+            closed = true;
+            executorService.shutdownNow();
+            outputStream.close();
+        }
+    }
+
+    //the filled block is handed to the pool and a new one started, blocks that are done are written as they come in
+    private void submitBlock() throws IOException {
+        if( closed ) throw new IOException("Stream closed");
+        if( position == 0 ) return;
+        byte[] filled = block;
+        int length = position;
+        pending.add(executorService.submit(() -> compression.compress(filled, length)));
+        pendingBlocks.add(filled);
+        block = freeBlocks.isEmpty() ? new byte[filled.length] : freeBlocks.poll();
+        position = 0;
+        while( !pending.isEmpty() && (pending.size() > maxPending || pending.peek().isDone()) ) writeOldest();
+    }
+
+    private void writeOldest() throws IOException {
+        Future<byte[]> compressed = pending.poll();
+        byte[] input = pendingBlocks.poll();
+        try {
+            outputStream.write(compressed.get());
+            freeBlocks.add(input); //its compression is done, so it can be filled again
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a compressed block");
+        } catch (ExecutionException executionException) {
+            Throwable cause = executionException.getCause();
+            if( cause instanceof IOException ) throw (IOException) cause;
+            throw new IOException("Compressing a block failed: "+ cause, cause);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.cisco.josouthe.output;
+
+import com.cisco.josouthe.metric.BaselineData;
+import com.cisco.josouthe.metric.MetricData;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/*
+one csv row per timestamp with a column for each metric and one for its baseline. no row can be written until every
+series is in, so values are buffered per column and, once they pass the memory budget, merged into a run sorted by
+timestamp and column and spilled to a temp file. close merges the runs and what is still buffered with a priority
+queue on timestamp, k-way, and writes the rows as the merge passes each timestamp
+ */
+public class WideCSVOutputPrinter extends AbstractOutputPrinter {
+    private static final Logger logger = LogManager.getFormatterLogger(WideCSVOutputPrinter.class);
+    private static final long NO_VALUE = Long.MIN_VALUE;
+    private static final int BYTES_PER_VALUE = 24; //timestamp, value and baseline, as buffered
+
+    private long memoryBudgetBytes = 256L*1024*1024, bufferedBytes = 0;
+    private int spillCount = 0;
+    private List<Column> columns = new ArrayList<>();
+    private List<Run> runs = new ArrayList<>();
+    private Column current;
+
+    @Override
+    public String getFormatName() { return "WIDE"; }
+
+    int getSpillCount() { return spillCount; }
+
+    public void setMemoryBudget( long memoryBudgetBytes ) {
+        this.memoryBudgetBytes = Math.max(1024, memoryBudgetBytes);
+    }
+
+    @Override
+    public void beginSeries(MetricData metricData, BaselineData baselineData) throws IOException {
+        current = new Column(columns.size(), metricData.controllerHostname, metricData.metricName, baselineData != null && baselineData.hasData());
+        columns.add(current);
+    }
+
+    @Override
+    public void value(long timestamp, long value, long min, long max, boolean hasBaseline, long baselineAverage, double baselineStandardDeviation) throws IOException {
+        bufferedBytes += current.add(timestamp, value, hasBaseline ? baselineAverage : NO_VALUE);
+        if( bufferedBytes > memoryBudgetBytes ) spill();
+    }
+
+    @Override
+    public void endSeries() throws IOException {
+        current = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if( out == null ) return;
+        List<Cursor> cursors = new ArrayList<>();
+        try {
+            writeHeader();
+            for( Run run : runs ) cursors.add(run.open());
+            for( Column column : columns ) if( column.size > 0 ) cursors.add(column.cursor());
+            writeRows(cursors);
+        } finally {
+            for( Cursor cursor : cursors ) {
+                try {
+                    cursor.close();
+                } catch (IOException e) {
+                    logger.warn("Could not close spilled run Exception: %s", e.getMessage());
+                }
+            }
+            for( Run run : runs ) run.delete();
+            runs.clear();
+            columns.clear();
+            bufferedBytes = 0;
+            super.close();
+        }
+    }
+
+    //the metric name heads each column, with the controller in front when the series came from more than one
+    private void writeHeader() throws IOException {
+        Set<String> controllers = new HashSet<>();
+        for( Column column : columns ) controllers.add(column.controller);
+        out.write("Timestamp");
+        for( Column column : columns ) {
+            String name = controllers.size() > 1 ? column.controller +"|"+ column.metricName : column.metricName;
+            out.write(',').write(OutputBuffer.escapeCsv(name));
+            if( column.hasBaseline ) out.write(',').write(OutputBuffer.escapeCsv(name +" Baseline"));
+        }
+        out.write('\n');
+    }
+
+    //cells are only valid for the row their stamp matches, so nothing is cleared between rows
+    private void writeRows( List<Cursor> cursors ) throws IOException {
+        int columnCount = columns.size();
+        long[] values = new long[columnCount], baselines = new long[columnCount];
+        int[] stamps = new int[columnCount];
+        boolean[] hasBaseline = new boolean[columnCount];
+        for( Column column : columns ) hasBaseline[column.index] = column.hasBaseline;
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, cursors.size()), Cursor::compareTo);
+        for( Cursor cursor : cursors ) if( cursor.next() ) queue.add(cursor);
+        int row = 0;
+        long rowTimestamp = 0;
+        while( !queue.isEmpty() ) {
+            Cursor cursor = queue.poll();
+            if( row == 0 || cursor.timestamp != rowTimestamp ) {
+                if( row > 0 ) writeRow(rowTimestamp, row, values, baselines, stamps, hasBaseline);
+                row++;
+                rowTimestamp = cursor.timestamp;
+            }
+            values[cursor.column] = cursor.value;
+            baselines[cursor.column] = cursor.baseline;
+            stamps[cursor.column] = row;
+            if( cursor.next() ) queue.add(cursor);
+        }
+        if( row > 0 ) writeRow(rowTimestamp, row, values, baselines, stamps, hasBaseline);
+        logger.debug("Wrote %d rows of %d metrics merged from %d spilled runs", row, columnCount, spillCount);
+    }
+
+    private void writeRow( long timestamp, int row, long[] values, long[] baselines, int[] stamps, boolean[] hasBaseline ) throws IOException {
+        out.write(timestamp);
+        for( int i=0; i < values.length; i++ ) {
+            boolean set = stamps[i] == row;
+            out.write(',');
+            if( set ) out.write(values[i]);
+            if( !hasBaseline[i] ) continue;
+            out.write(',');
+            if( set && baselines[i] != NO_VALUE ) out.write(baselines[i]);
+        }
+        out.write('\n');
+    }
+
+    //everything buffered becomes one run on disk, in the order the final merge reads it
+    private void spill() throws IOException {
+        Path path = Files.createTempFile("wide-run-", ".bin");
+        long records = 0;
+        List<Cursor> cursors = new ArrayList<>();
+        for( Column column : columns ) if( column.size > 0 ) cursors.add(column.cursor());
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, cursors.size()), Cursor::compareTo);
+        for( Cursor cursor : cursors ) if( cursor.next() ) queue.add(cursor);
+        try (DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 256*1024))) {
+            while( !queue.isEmpty() ) {
+                Cursor cursor = queue.poll();
+                dataOutputStream.writeLong(cursor.timestamp);
+                dataOutputStream.writeInt(cursor.column);
+                dataOutputStream.writeLong(cursor.value);
+                dataOutputStream.writeLong(cursor.baseline);
+                records++;
+                if( cursor.next() ) queue.add(cursor);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        runs.add(new Run(path, records));
+        spillCount++;
+        for( Column column : columns ) column.clear();
+        logger.debug("Spilled %d values to %s, run %d", records, path, runs.size());
+        bufferedBytes = 0;
+    }
+
+    private static class Column {
+        final int index;
+        final String controller, metricName;
+        final boolean hasBaseline;
+        long[] timestamps, values, baselines;
+        int size = 0;
+        boolean sorted = true;
+
+        Column( int index, String controller, String metricName, boolean hasBaseline ) {
+            this.index = index;
+            this.controller = controller;
+            this.metricName = metricName;
+            this.hasBaseline = hasBaseline;
+            clear();
+        }
+
+        //returns the bytes the buffers grew by
+        long add( long timestamp, long value, long baseline ) {
+            long grown = 0;
+            if( size == timestamps.length ) {
+                int capacity = timestamps.length * 2;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                values = Arrays.copyOf(values, capacity);
+                baselines = Arrays.copyOf(baselines, capacity);
+                grown = (long) (capacity - size) * BYTES_PER_VALUE;
+            }
+            if( size > 0 && timestamp < timestamps[size-1] ) sorted = false;
+            timestamps[size] = timestamp;
+            values[size] = value;
+            baselines[size] = baseline;
+            size++;
+            return grown;
+        }
+
+        void clear() {
+            timestamps = new long[16];
+            values = new long[16];
+            baselines = new long[16];
+            size = 0;
+            sorted = true;
+        }
+
+        Cursor cursor() {
+            if( !sorted ) sort();
+            return new Cursor(index) {
+                int position = -1;
+                boolean next() {
+                    if( ++position >= size ) return false;
+                    timestamp = timestamps[position];
+                    value = values[position];
+                    baseline = baselines[position];
+                    return true;
+                }
+            };
+        }
+
+        private void sort() {
+            Integer[] order = new Integer[size];
+            for( int i=0; i < size; i++ ) order[i] = i;
+            Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+            long[] sortedTimestamps = new long[timestamps.length], sortedValues = new long[values.length], sortedBaselines = new long[baselines.length];
+            for( int i=0; i < size; i++ ) {
+                sortedTimestamps[i] = timestamps[order[i]];
+                sortedValues[i] = values[order[i]];
+                sortedBaselines[i] = baselines[order[i]];
+            }
+            timestamps = sortedTimestamps;
+            values = sortedValues;
+            baselines = sortedBaselines;
+            sorted = true;
+        }
+    }
+
+    private static class Run {
+        final Path path;
+        final long records;
+
+        Run( Path path, long records ) {
+            this.path = path;
+            this.records = records;
+        }
+
+        Cursor open() throws IOException {
+            DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64*1024));
+            return new Cursor(-1) {
+                long remaining = records;
+                boolean next() throws IOException {
+                    if( remaining-- <= 0 ) return false;
+                    timestamp = dataInputStream.readLong();
+                    column = dataInputStream.readInt();
+                    value = dataInputStream.readLong();
+                    baseline = dataInputStream.readLong();
+                    return true;
+                }
+                void close() throws IOException {
+                    dataInputStream.close();
+                }
+            };
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn("Could not delete spilled run %s Exception: %s", path, e.getMessage());
+            }
+        }
+    }
+
+    //a position in a column or a run, ordered by timestamp and then column
+    private static abstract class Cursor {
+        long timestamp, value, baseline;
+        int column;
+
+        Cursor( int column ) {
+            this.column = column;
+        }
+
+        abstract boolean next() throws IOException;
+
+        void close() throws IOException {}
+
+        int compareTo( Cursor other ) {
+            int compare = Long.compare(timestamp, other.timestamp);
+            return compare != 0 ? compare : Integer.compare(column, other.column);
+        }
+    }
+}
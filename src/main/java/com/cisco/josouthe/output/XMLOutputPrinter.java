@@ -1,48 +1,62 @@
 package com.cisco.josouthe.output;
 
 import com.cisco.josouthe.metric.BaselineData;
-import com.cisco.josouthe.metric.BaselineTimeslice;
 import com.cisco.josouthe.metric.MetricData;
-import com.cisco.josouthe.metric.MetricValue;
 
-import java.io.PrintStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
-public class XMLOutputPrinter implements OutputPrinter {
-    MetricData metricData;
-    BaselineData baselineData;
+/*
+one document per run, a <MetricExport> root with a <Metrics> element for each series
+ */
+public class XMLOutputPrinter extends AbstractOutputPrinter {
+    private byte[] nameElement;
 
     public XMLOutputPrinter() {
 
     }
 
     @Override
-    public void setMetricData(MetricData metricData) {
-        this.metricData=metricData;
+    public String getFormatName() { return "XML"; }
+
+    @Override
+    public void open( OutputStream outputStream ) throws IOException {
+        super.open(outputStream);
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<MetricExport>\n");
     }
 
     @Override
-    public void setBaseLineData(BaselineData baseLineData) {
-        this.baselineData=baseLineData;
+    public void beginSeries(MetricData metricData, BaselineData baselineData) throws IOException {
+        out.write("<Metrics>\n");
+        if( metricData.controllerHostname != null )
+            out.write("<Controller>").write(OutputBuffer.escapeXml(metricData.controllerHostname)).write("</Controller>\n");
+        out.write("<Application>").write(OutputBuffer.escapeXml(metricData.applicationName)).write("</Application>\n");
+        nameElement = ("<Name>"+ OutputBuffer.escapeXml(metricData.metricName) +"</Name>").getBytes(StandardCharsets.UTF_8);
     }
 
     @Override
-    public void print(PrintStream printStream) {
-        printStream.println("<Metrics>");
-        printStream.println(String.format("<Application>%s</Application>", metricData.applicationName));
-        for( MetricValue metricValue : metricData.metricValues ) {
-            printStream.print("<Metric>");
-            printStream.print(String.format("<Name>%s</Name>", metricData.metricName));
-            printStream.print(String.format("<Timestamp>%d</Timestamp>", metricValue.startTimeInMillis));
-            printStream.print(String.format("<Value>%d</Value>", metricValue.value));
-            printStream.print(String.format("<Min>%d</Min>", metricValue.min));
-            printStream.print(String.format("<Max>%d</Max>", metricValue.max));
-            MetricValue baseline = baselineData.getTimeSlice(metricValue.startTimeInMillis);
-            if( baseline != null ) {
-                printStream.print(String.format("<Average>%d</Average>", baseline.value));
-                printStream.print(String.format("<StdDev>%f</StdDev>", baseline.standardDeviation));
-            }
-            printStream.println("</Metric>");
+    public void value(long timestamp, long value, long min, long max, boolean hasBaseline, long baselineAverage, double baselineStandardDeviation) throws IOException {
+        out.write("<Metric>").write(nameElement);
+        out.write("<Timestamp>").write(timestamp).write("</Timestamp>");
+        out.write("<Value>").write(value).write("</Value>");
+        out.write("<Min>").write(min).write("</Min>");
+        out.write("<Max>").write(max).write("</Max>");
+        if( hasBaseline ) {
+            out.write("<Average>").write(baselineAverage).write("</Average>");
+            out.write("<StdDev>").write(baselineStandardDeviation, 6).write("</StdDev>");
         }
-        printStream.println("</Metrics>");
+        out.write("</Metric>\n");
+    }
+
+    @Override
+    public void endSeries() throws IOException {
+        out.write("</Metrics>\n");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if( out != null ) out.write("</MetricExport>\n");
+        super.close();
     }
 }
@@ -0,0 +1,14 @@
+package com.cisco.josouthe.telemetry;
+
+import java.util.concurrent.atomic.LongAdder;
+
+//counters for one kind of controller request, latency is until the response headers, decode is reading the body
+public class EndpointStats {
+    public final String name;
+    public final LatencyHistogram latency = new LatencyHistogram();
+    public final LongAdder requests = new LongAdder(), failures = new LongAdder(), responseBytes = new LongAdder(), decodeNanos = new LongAdder();
+
+    public EndpointStats( String name ) {
+        this.name = name;
+    }
+}
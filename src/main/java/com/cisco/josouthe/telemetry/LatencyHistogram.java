@@ -0,0 +1,63 @@
+package com.cisco.josouthe.telemetry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+log linear histogram of microseconds in the style of HdrHistogram, 32 sub buckets per power of two so any value is
+within about 3% of where it is counted. recording is a leading zeros count and an atomic increment, no locks and no
+allocation, and the whole histogram is a fixed array of counters
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5, SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private AtomicLong count = new AtomicLong(), totalMicros = new AtomicLong(), maxMicros = new AtomicLong();
+
+    public void recordNanos( long nanos ) {
+        record(Math.max(0, nanos / 1000));
+    }
+
+    public void record( long micros ) {
+        counts.incrementAndGet(indexOf(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max;
+        while( micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros) ) { /* another thread raised it */ }
+    }
+
+    public long getCount() { return count.get(); }
+    public long getMaxMicros() { return maxMicros.get(); }
+
+    public double getMeanMicros() {
+        long count = this.count.get();
+        return count == 0 ? 0 : (double) totalMicros.get() / count;
+    }
+
+    //the highest value counted in the same bucket as the value at this percentile
+    public long getPercentileMicros( double percentile ) {
+        long count = this.count.get();
+        if( count == 0 ) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for( int i=0; i < BUCKETS; i++ ) {
+            seen += counts.get(i);
+            if( seen >= rank ) return Math.min(highestEquivalent(i), maxMicros.get());
+        }
+        return maxMicros.get();
+    }
+
+    static int indexOf( long value ) {
+        if( value < SUB_BUCKET_COUNT * 2 ) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    static long highestEquivalent( int index ) {
+        if( index < SUB_BUCKET_COUNT * 2 ) return index;
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index - (long) shift * SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,173 @@
+package com.cisco.josouthe.telemetry;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+counters for the whole run, shared by every controller: requests by endpoint, retries, token refreshes and what the
+printers wrote. published as an MXBean while running and summarized as json at exit
+ */
+public class Telemetry implements TelemetryMXBean {
+    private static final Logger logger = LogManager.getFormatterLogger(Telemetry.class);
+    private static final Telemetry instance = new Telemetry();
+
+    private long startTimestamp = System.currentTimeMillis();
+    private AtomicBoolean summaryWritten = new AtomicBoolean();
+    private ConcurrentHashMap<String,EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private LongAdder inFlight = new LongAdder(), retries = new LongAdder(), tokenRefreshes = new LongAdder();
+    private LongAdder seriesEmitted = new LongAdder(), valuesEmitted = new LongAdder(), outputNanos = new LongAdder();
+
+    public static Telemetry get() { return instance; }
+
+    public EndpointStats endpoint( String uri ) {
+        return endpoints.computeIfAbsent(getEndpointName(uri), EndpointStats::new);
+    }
+
+    //the last path segment that is not an id, so every application's metric-data requests count together
+    public static String getEndpointName( String uri ) {
+        if( uri == null ) return "unknown";
+        int end = uri.indexOf('?');
+        String path = end < 0 ? uri : uri.substring(0, end);
+        String[] segments = path.split("/");
+        for( int i=segments.length-1; i >= 0; i-- ) {
+            String segment = segments[i];
+            if( segment.isEmpty() || segment.matches("-?\\d+") ) continue;
+            return segment;
+        }
+        return "unknown";
+    }
+
+    public void requestStarted() { inFlight.increment(); }
+    public void requestFinished() { inFlight.decrement(); }
+    public void retried() { retries.increment(); }
+    public void tokenRefreshed() { tokenRefreshes.increment(); }
+
+    public void seriesEmitted( long values, long nanos ) {
+        seriesEmitted.increment();
+        valuesEmitted.add(values);
+        outputNanos.add(nanos);
+    }
+
+    @Override
+    public long getUptimeSeconds() { return (System.currentTimeMillis() - startTimestamp) / 1000; }
+
+    @Override
+    public long getRequests() {
+        long total = 0;
+        for( EndpointStats endpointStats : endpoints.values() ) total += endpointStats.requests.sum();
+        return total;
+    }
+
+    @Override
+    public long getFailedRequests() {
+        long total = 0;
+        for( EndpointStats endpointStats : endpoints.values() ) total += endpointStats.failures.sum();
+        return total;
+    }
+
+    @Override
+    public long getRequestsInFlight() { return inFlight.sum(); }
+
+    @Override
+    public long getRetries() { return retries.sum(); }
+
+    @Override
+    public long getResponseBytes() {
+        long total = 0;
+        for( EndpointStats endpointStats : endpoints.values() ) total += endpointStats.responseBytes.sum();
+        return total;
+    }
+
+    @Override
+    public long getTokenRefreshes() { return tokenRefreshes.sum(); }
+
+    @Override
+    public long getSeriesEmitted() { return seriesEmitted.sum(); }
+
+    @Override
+    public long getValuesEmitted() { return valuesEmitted.sum(); }
+
+    @Override
+    public String getSummaryJson() {
+        return new GsonBuilder().setPrettyPrinting().create().toJson(getSummary());
+    }
+
+    public Map<String,Object> getSummary() {
+        Map<String,Object> summary = new LinkedHashMap<>();
+        summary.put("startTimestamp", startTimestamp);
+        summary.put("elapsedMillis", System.currentTimeMillis() - startTimestamp);
+        summary.put("requests", getRequests());
+        summary.put("failedRequests", getFailedRequests());
+        summary.put("retries", getRetries());
+        summary.put("tokenRefreshes", getTokenRefreshes());
+        summary.put("responseBytes", getResponseBytes());
+        summary.put("seriesEmitted", getSeriesEmitted());
+        summary.put("valuesEmitted", getValuesEmitted());
+        summary.put("outputMillis", outputNanos.sum() / 1000000);
+        Map<String,Object> endpointSummaries = new TreeMap<>();
+        for( EndpointStats endpointStats : endpoints.values() ) {
+            Map<String,Object> endpointSummary = new LinkedHashMap<>();
+            endpointSummary.put("requests", endpointStats.requests.sum());
+            endpointSummary.put("failures", endpointStats.failures.sum());
+            endpointSummary.put("responseBytes", endpointStats.responseBytes.sum());
+            endpointSummary.put("decodeMillis", endpointStats.decodeNanos.sum() / 1000000);
+            Map<String,Object> latency = new LinkedHashMap<>();
+            latency.put("count", endpointStats.latency.getCount());
+            latency.put("meanMillis", round(endpointStats.latency.getMeanMicros() / 1000));
+            latency.put("p50Millis", round(endpointStats.latency.getPercentileMicros(50) / 1000.0));
+            latency.put("p90Millis", round(endpointStats.latency.getPercentileMicros(90) / 1000.0));
+            latency.put("p99Millis", round(endpointStats.latency.getPercentileMicros(99) / 1000.0));
+            latency.put("maxMillis", round(endpointStats.latency.getMaxMicros() / 1000.0));
+            endpointSummary.put("latency", latency);
+            endpointSummaries.put(endpointStats.name, endpointSummary);
+        }
+        summary.put("endpoints", endpointSummaries);
+        return summary;
+    }
+
+    private static double round( double value ) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    public void registerMBean() {
+        try {
+            ObjectName objectName = new ObjectName("com.cisco.josouthe:type=Telemetry");
+            if( !ManagementFactory.getPlatformMBeanServer().isRegistered(objectName) )
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception exception) {
+            logger.warn("Could not register the telemetry MXBean, Exception: %s", exception.toString());
+        }
+    }
+
+    //the summary goes to the file when one is given, otherwise it is logged on one line. only the first call writes it,
+    //so the end of a run and the shutdown hook do not both
+    public void writeSummary( Path path ) {
+        if( !summaryWritten.compareAndSet(false, true) ) return;
+        if( path == null ) {
+            logger.info("Telemetry: %s", new Gson().toJson(getSummary()));
+            return;
+        }
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(getSummaryJson());
+            writer.write('\n');
+        } catch (IOException e) {
+            logger.warn("Could not write telemetry summary %s Exception: %s", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.cisco.josouthe.telemetry;
+
+public interface TelemetryMXBean {
+    public long getUptimeSeconds();
+    public long getRequests();
+    public long getFailedRequests();
+    public long getRequestsInFlight();
+    public long getRetries();
+    public long getResponseBytes();
+    public long getTokenRefreshes();
+    public long getSeriesEmitted();
+    public long getValuesEmitted();
+    public String getSummaryJson();
+}
@@ -0,0 +1,83 @@
+package com.cisco.josouthe.cache;
+
+import com.cisco.josouthe.metric.MetricSeries;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SeriesCodecTest {
+
+    @Test
+    public void emptyAndSingleValue() {
+        assertRoundTrip(new MetricSeries());
+        MetricSeries metricSeries = new MetricSeries();
+        metricSeries.append(1700000000000L, 5, 1, 9, 3, 15, 1.5);
+        assertRoundTrip(metricSeries);
+    }
+
+    //each delta of delta lands on either side of a bucket edge, down to the 64 bit escape past the int range
+    @Test
+    public void deltaOfDeltaBucketEdges() {
+        long[] deltaOfDeltas = { 0, 63, 64, -64, -65, 255, 256, -256, -257,
+                Integer.MAX_VALUE, (long) Integer.MAX_VALUE + 1, Integer.MIN_VALUE, (long) Integer.MIN_VALUE - 1, 0, 1, -1 };
+        MetricSeries metricSeries = new MetricSeries();
+        long timestamp = 1700000000000L, delta = 60000;
+        metricSeries.append(timestamp, 0, 0, 0, 0, 0, 0);
+        for( long deltaOfDelta : deltaOfDeltas ) {
+            delta += deltaOfDelta;
+            timestamp += delta;
+            metricSeries.append(timestamp, 0, 0, 0, 0, 0, 0);
+        }
+        assertRoundTrip(metricSeries);
+    }
+
+    @Test
+    public void xorEdges() {
+        long[] values = { 0, 0, Long.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, -1, 1, 1, Long.MIN_VALUE, 0, 42, 42, 42 };
+        double[] standardDeviations = { Double.NaN, Double.NaN, 0.0, -0.0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, 1.25, 1.25, 1.25, Double.NaN };
+        MetricSeries metricSeries = new MetricSeries();
+        for( int i=0; i < values.length; i++ )
+            metricSeries.append(1700000000000L + i*60000L, values[i], values[values.length-1-i], ~values[i], values[i] >>> 1, -values[i], standardDeviations[i]);
+        assertRoundTrip(metricSeries);
+    }
+
+    @Test
+    public void randomRoundTrip() {
+        Random random = new Random(42);
+        for( int run=0; run < 20; run++ ) {
+            MetricSeries metricSeries = new MetricSeries();
+            long timestamp = random.nextLong() >>> 20;
+            int size = random.nextInt(5000);
+            for( int i=0; i < size; i++ ) {
+                timestamp += random.nextInt(4) == 0 ? random.nextInt(1000000) : 60000;
+                long value = random.nextInt(3) == 0 ? random.nextLong() : random.nextInt(100);
+                metricSeries.append(timestamp, value, value - random.nextInt(10), value + random.nextInt(10), random.nextInt(50), value * 3,
+                        random.nextInt(5) == 0 ? Double.NaN : random.nextDouble() * 100);
+            }
+            assertRoundTrip(metricSeries);
+        }
+    }
+
+    private static void assertRoundTrip( MetricSeries expected ) {
+        byte[] encoded = SeriesCodec.encode(expected);
+        //decoded at an offset into a larger buffer, as it is from a segment
+        ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 16);
+        buffer.position(7);
+        buffer.put(encoded);
+        MetricSeries actual = SeriesCodec.decode(buffer, 7, expected.size());
+        assertEquals(expected.size(), actual.size());
+        for( int i=0; i < expected.size(); i++ ) {
+            assertEquals("timestamp "+ i, expected.getTimestamp(i), actual.getTimestamp(i));
+            assertEquals("value "+ i, expected.getValue(i), actual.getValue(i));
+            assertEquals("min "+ i, expected.getMin(i), actual.getMin(i));
+            assertEquals("max "+ i, expected.getMax(i), actual.getMax(i));
+            assertEquals("count "+ i, expected.getCount(i), actual.getCount(i));
+            assertEquals("sum "+ i, expected.getSum(i), actual.getSum(i));
+            assertEquals("standard deviation "+ i, Double.doubleToRawLongBits(expected.getStandardDeviation(i)), Double.doubleToRawLongBits(actual.getStandardDeviation(i)));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.cisco.josouthe.cache;
+
+import com.cisco.josouthe.metric.MetricSeries;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TimeSeriesCacheTest {
+    private static final long HOUR = 60*60*1000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void segmentRoundTrip() throws IOException {
+        TimeSeriesCache timeSeriesCache = TimeSeriesCache.open(temporaryFolder.getRoot().toPath(), 1024*1024, HOUR, 0);
+        timeSeriesCache.write("controller", "App", "Folder|Metric", null, 0, HOUR, Collections.singletonList(newEntry(7, "Metric")));
+        List<SegmentEntry> entries = timeSeriesCache.read("controller", "App", "Folder|Metric", null, 0);
+        assertNotNull(entries);
+        assertEquals(1, entries.size());
+        assertEquals(7, entries.get(0).metricId);
+        assertEquals("Metric", entries.get(0).metricName);
+        assertEquals(60, entries.get(0).series.size());
+        assertEquals(59, entries.get(0).series.getValue(59));
+        assertNull(timeSeriesCache.read("controller", "App", "Folder|Metric", "Default", 0));
+    }
+
+    //a segment found under another key's file name, a hash collision or a stray file, is not returned for that key
+    @Test
+    public void segmentKeyMismatch() throws IOException {
+        TimeSeriesCache timeSeriesCache = TimeSeriesCache.open(temporaryFolder.getRoot().toPath(), 1024*1024, HOUR, 0);
+        timeSeriesCache.write("controller", "App", "Metric A", null, 0, HOUR, Collections.singletonList(newEntry(1, "Metric A")));
+        Path segmentA = getSegments().get(0);
+        byte[] bytesA = Files.readAllBytes(segmentA);
+        timeSeriesCache.write("controller", "App", "Metric B", null, 0, HOUR, Collections.singletonList(newEntry(2, "Metric B")));
+        for( Path segment : getSegments() )
+            if( !segment.equals(segmentA) ) Files.write(segment, bytesA);
+        assertNull(timeSeriesCache.read("controller", "App", "Metric B", null, 0));
+        assertEquals(1, timeSeriesCache.read("controller", "App", "Metric A", null, 0).get(0).metricId);
+    }
+
+    private List<Path> getSegments() throws IOException {
+        try (Stream<Path> paths = Files.walk(temporaryFolder.getRoot().toPath().resolve("segments"))) {
+            return paths.filter(path -> path.toString().endsWith(".seg")).collect(Collectors.toList());
+        }
+    }
+
+    private static SegmentEntry newEntry( long metricId, String metricName ) {
+        SegmentEntry entry = new SegmentEntry();
+        entry.metricId = metricId;
+        entry.metricName = metricName;
+        entry.series = new MetricSeries();
+        for( int i=0; i < 60; i++ ) entry.series.append(i*60000L, i, i, i, 1, i, 0);
+        return entry;
+    }
+}
@@ -0,0 +1,101 @@
+package com.cisco.josouthe.output;
+
+import com.cisco.josouthe.metric.BaselineData;
+import com.cisco.josouthe.metric.MetricData;
+import com.cisco.josouthe.metric.MetricSeries;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WideCSVOutputPrinterTest {
+    private static final int VALUES = 2000;
+
+    @Test
+    public void spilledRunsMergeToTheSameRows() throws IOException {
+        WideCSVOutputPrinter inMemory = new WideCSVOutputPrinter();
+        String expected = print(inMemory);
+        assertEquals(0, inMemory.getSpillCount());
+        assertEquals(expectedCsv(), expected);
+
+        WideCSVOutputPrinter spilling = new WideCSVOutputPrinter();
+        spilling.setMemoryBudget(1024);
+        assertEquals(expected, print(spilling));
+        assertTrue("expected several spilled runs, got "+ spilling.getSpillCount(), spilling.getSpillCount() > 10);
+    }
+
+    @Test
+    public void noSeriesWritesOnlyTheHeader() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        WideCSVOutputPrinter printer = new WideCSVOutputPrinter();
+        printer.open(outputStream);
+        printer.close();
+        assertEquals("Timestamp\n", outputStream.toString(StandardCharsets.UTF_8.name()));
+    }
+
+    /*
+    three columns: "Even" has every other minute in shuffled order with a baseline, "All" has every minute in order, and
+    "Late" starts halfway through and runs past the end of the others
+     */
+    private static String print( WideCSVOutputPrinter printer ) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        printer.open(outputStream);
+        List<Integer> evenMinutes = new ArrayList<>();
+        for( int minute=0; minute < VALUES; minute += 2 ) evenMinutes.add(minute);
+        Collections.shuffle(evenMinutes, new Random(7));
+        printer.beginSeries(newMetricData("Even"), newBaselineData());
+        for( int minute : evenMinutes ) printer.value(minute*60000L, minute, 0, 0, true, minute*10, 0);
+        printer.endSeries();
+        printer.beginSeries(newMetricData("All"), null);
+        for( int minute=0; minute < VALUES; minute++ ) printer.value(minute*60000L, -minute, 0, 0, false, 0, 0);
+        printer.endSeries();
+        printer.beginSeries(newMetricData("Late"), null);
+        for( int minute=VALUES/2; minute < VALUES+100; minute++ ) printer.value(minute*60000L, minute+100000, 0, 0, false, 0, 0);
+        printer.endSeries();
+        printer.close();
+        return outputStream.toString(StandardCharsets.UTF_8.name());
+    }
+
+    private static String expectedCsv() {
+        Map<Long,String[]> rows = new TreeMap<>();
+        for( int minute=0; minute < VALUES+100; minute++ ) {
+            String[] cells = { "", "", "", "" };
+            if( minute < VALUES && minute % 2 == 0 ) {
+                cells[0] = String.valueOf(minute);
+                cells[1] = String.valueOf(minute*10);
+            }
+            if( minute < VALUES ) cells[2] = String.valueOf(-minute);
+            if( minute >= VALUES/2 ) cells[3] = String.valueOf(minute+100000);
+            rows.put(minute*60000L, cells);
+        }
+        StringBuilder csv = new StringBuilder("Timestamp,Even,Even Baseline,All,Late\n");
+        for( Map.Entry<Long,String[]> row : rows.entrySet() )
+            csv.append(row.getKey()).append(',').append(String.join(",", row.getValue())).append('\n');
+        return csv.toString();
+    }
+
+    private static MetricData newMetricData( String metricName ) {
+        MetricData metricData = new MetricData();
+        metricData.metricName = metricName;
+        metricData.controllerHostname = "controller";
+        return metricData;
+    }
+
+    private static BaselineData newBaselineData() {
+        BaselineData baselineData = new BaselineData();
+        MetricSeries timeslices = new MetricSeries();
+        timeslices.append(0, 0, 0, 0, 1, 0, 0);
+        baselineData.setTimesliceSeries(timeslices);
+        return baselineData;
+    }
+}